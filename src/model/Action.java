@@ -0,0 +1,53 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Enumeration of the inputs that drive a Tetris game.
+ * Each value corresponds to one of the public movement methods of Board.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public enum Action {
+
+    /**
+     * Move the piece left.
+     */
+    LEFT,
+
+    /**
+     * Move the piece right.
+     */
+    RIGHT,
+
+    /**
+     * Move the piece down, freezing it if it cannot move.
+     */
+    DOWN,
+
+    /**
+     * Drop the piece to its landing row and freeze it.
+     */
+    DROP,
+
+    /**
+     * Rotate the piece clockwise.
+     */
+    ROTATE_CW,
+
+    /**
+     * Rotate the piece counter-clockwise.
+     */
+    ROTATE_CCW,
+
+    /**
+     * Advance the game by one gravity step.
+     */
+    STEP;
+
+}
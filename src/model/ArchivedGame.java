@@ -0,0 +1,269 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A game stored in a ReplayArchive: its board size, piece sequence and inputs,
+ * with the seed, final score and lines kept in the archive index.
+ *
+ * The record is a read-only view of the mapped archive segment, so reading
+ * a piece or an input reads the mapped bytes directly; nothing is copied
+ * until getPieces() or getActions() results are copied by the caller.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class ArchivedGame {
+
+    /**
+     * The offset of the board width in a record.
+     */
+    static final int WIDTH_OFFSET = 0;
+
+    /**
+     * The offset of the board height in a record.
+     */
+    static final int HEIGHT_OFFSET = 2;
+
+    /**
+     * The offset of the piece count in a record.
+     */
+    static final int PIECES_OFFSET = 4;
+
+    /**
+     * The offset of the action count in a record.
+     */
+    static final int ACTIONS_OFFSET = 8;
+
+    /**
+     * The size of the fixed part of a record; the piece ordinals follow,
+     * then the action ordinals, one byte each.
+     */
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * The TetrisPiece values indexed by ordinal.
+     */
+    private static final TetrisPiece[] PIECES = TetrisPiece.values();
+
+    /**
+     * The Action values indexed by ordinal.
+     */
+    private static final Action[] ACTIONS = Action.values();
+
+    /**
+     * The id of the game in the archive.
+     */
+    private final long myId;
+
+    /**
+     * The seed the game was played from.
+     */
+    private final long mySeed;
+
+    /**
+     * The final score.
+     */
+    private final long myScore;
+
+    /**
+     * The rows cleared.
+     */
+    private final long myLines;
+
+    /**
+     * The record bytes, starting at index 0.
+     */
+    private final ByteBuffer myRecord;
+
+    /**
+     * Constructs a view of a record.
+     *
+     * @param theId the id of the game.
+     * @param theSeed the seed.
+     * @param theScore the final score.
+     * @param theLines the rows cleared.
+     * @param theRecord the record bytes, starting at index 0.
+     */
+    ArchivedGame(final long theId, final long theSeed, final long theScore,
+                 final long theLines, final ByteBuffer theRecord) {
+        myId = theId;
+        mySeed = theSeed;
+        myScore = theScore;
+        myLines = theLines;
+        myRecord = theRecord;
+    }
+
+    /**
+     * Returns the id of the game in the archive.
+     *
+     * @return the id.
+     */
+    public long getId() {
+        return myId;
+    }
+
+    /**
+     * Returns the seed the game was played from.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return mySeed;
+    }
+
+    /**
+     * Returns the final score.
+     *
+     * @return the score.
+     */
+    public long getScore() {
+        return myScore;
+    }
+
+    /**
+     * Returns the number of rows cleared.
+     *
+     * @return the lines.
+     */
+    public long getLines() {
+        return myLines;
+    }
+
+    /**
+     * Returns the board width.
+     *
+     * @return the width.
+     */
+    public int getWidth() {
+        return myRecord.getShort(WIDTH_OFFSET);
+    }
+
+    /**
+     * Returns the board height.
+     *
+     * @return the height.
+     */
+    public int getHeight() {
+        return myRecord.getShort(HEIGHT_OFFSET);
+    }
+
+    /**
+     * Returns the length of the piece sequence.
+     *
+     * @return the number of pieces.
+     */
+    public int getPieceCount() {
+        return myRecord.getInt(PIECES_OFFSET);
+    }
+
+    /**
+     * Returns a piece of the sequence.
+     *
+     * @param theIndex the index in the sequence.
+     * @return the piece.
+     * @throws IndexOutOfBoundsException if the index is not in the sequence.
+     */
+    public TetrisPiece getPiece(final int theIndex) {
+        checkIndex(theIndex, getPieceCount());
+        return PIECES[myRecord.get(HEADER_SIZE + theIndex)];
+    }
+
+    /**
+     * Returns the number of inputs.
+     *
+     * @return the number of inputs.
+     */
+    public int getActionCount() {
+        return myRecord.getInt(ACTIONS_OFFSET);
+    }
+
+    /**
+     * Returns an input.
+     *
+     * @param theIndex the index of the input.
+     * @return the input.
+     * @throws IndexOutOfBoundsException if there is no input at the index.
+     */
+    public Action getAction(final int theIndex) {
+        checkIndex(theIndex, getActionCount());
+        return ACTIONS[myRecord.get(HEADER_SIZE + getPieceCount() + theIndex)];
+    }
+
+    /**
+     * Returns the piece sequence as a list reading the record.
+     *
+     * @return an unmodifiable view of the pieces.
+     */
+    public List<TetrisPiece> getPieces() {
+        return new AbstractList<TetrisPiece>() {
+            @Override
+            public TetrisPiece get(final int theIndex) {
+                return getPiece(theIndex);
+            }
+
+            @Override
+            public int size() {
+                return getPieceCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the inputs as a list reading the record.
+     *
+     * @return an unmodifiable view of the inputs.
+     */
+    public List<Action> getActions() {
+        return new AbstractList<Action>() {
+            @Override
+            public Action get(final int theIndex) {
+                return getAction(theIndex);
+            }
+
+            @Override
+            public int size() {
+                return getActionCount();
+            }
+        };
+    }
+
+    /**
+     * Creates a player for this game.
+     *
+     * @param theInterval the number of pieces between checkpoints.
+     * @return the player, positioned before the first input.
+     */
+    public ReplayPlayer createPlayer(final int theInterval) {
+        return new ReplayPlayer(getWidth(), getHeight(), getPieces(), getActions(),
+                                theInterval);
+    }
+
+    /**
+     * Checks an index into a part of the record.
+     *
+     * @param theIndex the index.
+     * @param theCount the number of entries in the part.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    private static void checkIndex(final int theIndex, final int theCount) {
+        if (theIndex < 0 || theIndex >= theCount) {
+            throw new IndexOutOfBoundsException("Index " + theIndex + ", size " + theCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Game " + myId + ": " + getWidth() + "x" + getHeight() + ", "
+               + getPieceCount() + " pieces, " + getActionCount() + " inputs, score "
+               + myScore + ", lines " + myLines;
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bot that plays Tetris with a two piece lookahead.
+ *
+ * For every move the player enumerates the reachable placements of the current
+ * piece and scores the position each one leaves with an Evaluator. The best
+ * placements (the beam) are then searched one piece deeper with the preview
+ * piece, and a placement is worth the best position its follow-up can reach.
+ * The lookahead searches run on an optional thread pool. When the per-move time
+ * budget runs out, the choice is made among the placements whose search finished,
+ * or by the one piece score if none did.
+ *
+ * The player can drive a Board directly with move(), or act as the InputSource
+ * of a headless TetrisEngine. A player used as an InputSource keeps the plan of
+ * the current piece, so it must not be shared between games played at the same time.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class AutoPlayer implements InputSource {
+
+    /**
+     * The default number of placements searched with the preview piece.
+     */
+    public static final int DEFAULT_BEAM_WIDTH = 8;
+
+    /**
+     * The score of a placement that ends the game.
+     */
+    private static final double LOSS = -1e9;
+
+    /**
+     * Scores every position it is asked about.
+     */
+    private final Evaluator myEvaluator;
+
+    /**
+     * Runs the lookahead searches, or null to run them on the calling thread.
+     */
+    private final ExecutorService myPool;
+
+    /**
+     * The time budget of a move in nanoseconds.
+     */
+    private final long myBudget;
+
+    /**
+     * The number of placements searched with the preview piece.
+     */
+    private final int myBeamWidth;
+
+    /**
+     * Caches lookahead scores by position hash, or null for none.
+     */
+    private final TranspositionTable<Double> myTable;
+
+    /**
+     * The search buffers of each thread.
+     */
+    private final ThreadLocal<Scratch> myScratch;
+
+    /**
+     * The inputs planned for the current piece when used as an InputSource.
+     */
+    private List<Action> myPlan;
+
+    /**
+     * The index of the next planned input.
+     */
+    private int myPlanIndex;
+
+    /**
+     * The engine the plan was made for.
+     */
+    private TetrisEngine myPlanEngine;
+
+    /**
+     * The action count the engine will have when the next planned input is asked for.
+     */
+    private long myPlanActions;
+
+    /**
+     * Constructs a single threaded player with the default evaluator
+     * and no time limit.
+     */
+    public AutoPlayer() {
+        this(Evaluator.DEFAULT, null, Long.MAX_VALUE, DEFAULT_BEAM_WIDTH);
+    }
+
+    /**
+     * Constructs a player without a transposition table.
+     *
+     * @param theEvaluator scores positions.
+     * @param thePool runs the lookahead searches, or null to run them
+     *        on the calling thread.
+     * @param theBudgetNanos the time budget of a move in nanoseconds.
+     * @param theBeamWidth the number of placements searched with the preview piece.
+     * @throws IllegalArgumentException if the budget or beam width is not positive.
+     */
+    public AutoPlayer(final Evaluator theEvaluator, final ExecutorService thePool,
+                      final long theBudgetNanos, final int theBeamWidth) {
+        this(theEvaluator, thePool, theBudgetNanos, theBeamWidth, null);
+    }
+
+    /**
+     * Constructs a player.
+     *
+     * @param theEvaluator scores positions.
+     * @param thePool runs the lookahead searches, or null to run them
+     *        on the calling thread.
+     * @param theBudgetNanos the time budget of a move in nanoseconds.
+     * @param theBeamWidth the number of placements searched with the preview piece.
+     * @param theTable caches lookahead scores by position hash, or null for none;
+     *        a table may be shared by players with the same evaluator and board size.
+     * @throws IllegalArgumentException if the budget or beam width is not positive.
+     */
+    public AutoPlayer(final Evaluator theEvaluator, final ExecutorService thePool,
+                      final long theBudgetNanos, final int theBeamWidth,
+                      final TranspositionTable<Double> theTable) {
+        if (theBudgetNanos < 1 || theBeamWidth < 1) {
+            throw new IllegalArgumentException("Budget and beam width must be positive");
+        }
+        myEvaluator = theEvaluator;
+        myPool = thePool;
+        myBudget = theBudgetNanos;
+        myBeamWidth = theBeamWidth;
+        myTable = theTable;
+        myScratch = new ThreadLocal<Scratch>();
+        myPlan = new ArrayList<Action>();
+    }
+
+    /**
+     * Chooses a placement for the current piece of a board and plays it as one
+     * batch of inputs, so observers are notified once per placement.
+     *
+     * @param theBoard the board to play.
+     */
+    public void move(final Board theBoard) {
+        final List<Action> plan = choose(theBoard.getEngine());
+        theBoard.apply(plan.toArray(new Action[plan.size()]));
+    }
+
+    @Override
+    public Action nextAction(final TetrisEngine theEngine) {
+        if (theEngine != myPlanEngine || theEngine.getActions() != myPlanActions
+            || myPlanIndex >= myPlan.size()) {
+            myPlan = choose(theEngine);
+            myPlanIndex = 0;
+            myPlanEngine = theEngine;
+        }
+        myPlanActions = theEngine.getActions() + 1;
+        return myPlan.get(myPlanIndex++);
+    }
+
+    /**
+     * Chooses a placement for the current piece of a game.
+     *
+     * @param theEngine the game to play.
+     * @return the inputs that play the chosen placement, ending with DROP.
+     */
+    public List<Action> choose(final TetrisEngine theEngine) {
+        final long deadline = System.nanoTime() + Math.min(myBudget, Long.MAX_VALUE / 2);
+        final Scratch scratch = scratch(theEngine.getGrid());
+        final PlacementFinder finder = scratch.myFinder;
+        final int count = finder.search(theEngine);
+        List<Action> result = Arrays.asList(Action.DROP);
+        if (count > 0) {
+            final int[] shapes = new int[count];
+            final int[] xs = new int[count];
+            final int[] ys = new int[count];
+            final double[] scores = new double[count];
+            for (int i = 0; i < count; i++) {
+                shapes[i] = finder.getShape(i);
+                xs[i] = finder.getX(i);
+                ys[i] = finder.getY(i);
+                scores[i] = score(theEngine.getGrid(), scratch.myFirst, scratch,
+                                  shapes[i], xs[i], ys[i], 0);
+            }
+            final int[] beam = beam(scores);
+            int best = beam[0];
+            final TetrisPiece next = theEngine.getNextPiece();
+            if (next != null) {
+                best = lookahead(searchGrid(theEngine.getGrid()), next, beam,
+                                 shapes, xs, ys, deadline);
+            }
+            // the lookahead may have reused this thread's finder, so search again
+            finder.search(theEngine);
+            result = finder.getPath(best);
+        }
+        return result;
+    }
+
+    /**
+     * Searches the beam placements one piece deeper and picks the best of them.
+     * Only placements whose search finished in time are compared, since a two
+     * piece score is not comparable with a one piece score.
+     *
+     * @param theGrid the frozen blocks before the current piece.
+     * @param theNext the preview piece.
+     * @param theBeam the placement indexes to search, best one piece score first.
+     * @param theShapes the shape of each placement.
+     * @param theXs the x position of each placement.
+     * @param theYs the y position of each placement.
+     * @param theDeadline the System.nanoTime() by which the move must be chosen.
+     * @return the index of the chosen placement; the best one piece placement
+     *         if no search finished.
+     */
+    private int lookahead(final BitBoard theGrid, final TetrisPiece theNext,
+                          final int[] theBeam, final int[] theShapes, final int[] theXs,
+                          final int[] theYs, final long theDeadline) {
+        final List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(theBeam.length);
+        for (final int i : theBeam) {
+            tasks.add(new Lookahead(theGrid, theNext, theShapes[i], theXs[i], theYs[i],
+                                    theDeadline));
+        }
+        final Double[] results = new Double[theBeam.length];
+        if (myPool == null) {
+            for (int b = 0; b < theBeam.length && System.nanoTime() < theDeadline; b++) {
+                results[b] = ((Lookahead) tasks.get(b)).call();
+            }
+        } else {
+            try {
+                final List<Future<Double>> futures =
+                    myPool.invokeAll(tasks, theDeadline - System.nanoTime(),
+                                     TimeUnit.NANOSECONDS);
+                for (int b = 0; b < theBeam.length; b++) {
+                    results[b] = result(futures.get(b));
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int best = 0;
+        for (int b = 1; b < theBeam.length; b++) {
+            if (results[b] != null
+                && (results[best] == null || results[b] > results[best])) {
+                best = b;
+            }
+        }
+        return theBeam[best];
+    }
+
+    /**
+     * Returns the board the lookahead searches read. Searches on the pool may
+     * outlive a move that ran out of time, so they get a private copy.
+     *
+     * @param theGrid the frozen blocks of the game.
+     * @return the board to search.
+     */
+    private BitBoard searchGrid(final BitBoard theGrid) {
+        BitBoard result = theGrid;
+        if (myPool != null) {
+            result = new BitBoard(theGrid.getWidth(), theGrid.getHeight());
+            result.copyFrom(theGrid);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indexes of the best scores, best first.
+     *
+     * @param theScores the scores.
+     * @return the indexes of at most myBeamWidth best scores.
+     */
+    private int[] beam(final double[] theScores) {
+        final int size = Math.min(myBeamWidth, theScores.length);
+        final int[] result = new int[size];
+        final boolean[] taken = new boolean[theScores.length];
+        for (int b = 0; b < size; b++) {
+            int best = -1;
+            for (int i = 0; i < theScores.length; i++) {
+                if (!taken[i] && (best < 0 || theScores[i] > theScores[best])) {
+                    best = i;
+                }
+            }
+            taken[best] = true;
+            result[b] = best;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the result of a lookahead on the pool.
+     *
+     * @param theFuture the lookahead.
+     * @return the score, or null if the lookahead did not finish in time.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    private static Double result(final Future<Double> theFuture)
+        throws InterruptedException {
+        Double result = null;
+        try {
+            if (theFuture.isDone() && !theFuture.isCancelled()) {
+                result = theFuture.get();
+            }
+        } catch (final CancellationException e) {
+            result = null;
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the search buffers of the calling thread for boards like the given one.
+     *
+     * @param theGrid a board of the size to search.
+     * @return the buffers.
+     */
+    private Scratch scratch(final BitBoard theGrid) {
+        Scratch result = myScratch.get();
+        if (result == null || result.myFirst.getWidth() != theGrid.getWidth()
+            || result.myFirst.getHeight() != theGrid.getHeight()) {
+            result = new Scratch(theGrid.getWidth(), theGrid.getHeight());
+            myScratch.set(result);
+        }
+        return result;
+    }
+
+    /**
+     * Plays a placement on a copy of a board and scores the position it leaves.
+     *
+     * @param theGrid the board to copy.
+     * @param theTarget receives the position after the placement.
+     * @param theScratch the buffers of the calling thread.
+     * @param theShape the shape of the placement.
+     * @param theX the x position of the placement.
+     * @param theY the y position of the placement.
+     * @param theLines the rows cleared before this placement.
+     * @return the score of the position, or LOSS if the placement ends the game.
+     */
+    private double score(final BitBoard theGrid, final BitBoard theTarget,
+                         final Scratch theScratch, final int theShape,
+                         final int theX, final int theY, final int theLines) {
+        theTarget.copyFrom(theGrid);
+        double result = LOSS;
+        if (theTarget.place(theShape, theX, theY)) {
+            theScratch.myLines = theLines + theTarget.clearFullRows(theScratch.myCleared);
+            result = myEvaluator.evaluate(theTarget, theScratch.myLines);
+        }
+        return result;
+    }
+
+
+    // Inner classes
+
+    /**
+     * The search buffers of one thread.
+     */
+    private static final class Scratch {
+
+        /**
+         * Enumerates placements.
+         */
+        private final PlacementFinder myFinder;
+
+        /**
+         * The position after the current piece.
+         */
+        private final BitBoard myFirst;
+
+        /**
+         * The position after the preview piece.
+         */
+        private final BitBoard mySecond;
+
+        /**
+         * Receives cleared row indexes.
+         */
+        private final int[] myCleared;
+
+        /**
+         * The rows cleared by the last scored placement, including earlier ones.
+         */
+        private int myLines;
+
+        /**
+         * Constructs buffers for boards of the given size.
+         *
+         * @param theWidth Width of the boards.
+         * @param theHeight Height of the boards.
+         */
+        Scratch(final int theWidth, final int theHeight) {
+            myFinder = new PlacementFinder(theWidth, theHeight);
+            myFirst = new BitBoard(theWidth, theHeight);
+            mySecond = new BitBoard(theWidth, theHeight);
+            myCleared = new int[theHeight];
+        }
+    }
+
+    /**
+     * Scores a placement of the current piece by the best placement of the
+     * preview piece that follows it.
+     */
+    private final class Lookahead implements Callable<Double> {
+
+        /**
+         * The frozen blocks before the current piece.
+         */
+        private final BitBoard myGrid;
+
+        /**
+         * The preview piece.
+         */
+        private final TetrisPiece myNext;
+
+        /**
+         * The shape of the placement.
+         */
+        private final int myShape;
+
+        /**
+         * The x position of the placement.
+         */
+        private final int myX;
+
+        /**
+         * The y position of the placement.
+         */
+        private final int myY;
+
+        /**
+         * The System.nanoTime() after which the search gives up.
+         */
+        private final long myDeadline;
+
+        /**
+         * Constructs the lookahead of one placement.
+         *
+         * @param theGrid the frozen blocks before the current piece.
+         * @param theNext the preview piece.
+         * @param theShape the shape of the placement.
+         * @param theX the x position of the placement.
+         * @param theY the y position of the placement.
+         * @param theDeadline the System.nanoTime() after which the search gives up.
+         */
+        Lookahead(final BitBoard theGrid, final TetrisPiece theNext, final int theShape,
+                  final int theX, final int theY, final long theDeadline) {
+            myGrid = theGrid;
+            myNext = theNext;
+            myShape = theShape;
+            myX = theX;
+            myY = theY;
+            myDeadline = theDeadline;
+        }
+
+        /**
+         * Runs the search.
+         *
+         * @return the score, or null if the deadline passed.
+         */
+        @Override
+        public Double call() {
+            final Scratch scratch = scratch(myGrid);
+            Double result = LOSS;
+            if (score(myGrid, scratch.myFirst, scratch, myShape, myX, myY, 0) > LOSS) {
+                final int lines = scratch.myLines;
+                final long key = scratch.myFirst.getHash() ^ Zobrist.nextKey(myNext)
+                                 ^ Zobrist.countKey(lines);
+                result = null;
+                if (myTable != null) {
+                    result = myTable.get(key);
+                }
+                if (result == null) {
+                    result = followUp(scratch, lines);
+                    if (result != null && myTable != null) {
+                        myTable.put(key, result);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Finds the best placement of the preview piece after this placement.
+         *
+         * @param theScratch the buffers holding the position after this placement.
+         * @param theLines the rows cleared by this placement.
+         * @return the best score, or null if the deadline passed.
+         */
+        private Double followUp(final Scratch theScratch, final int theLines) {
+            // the spawn column really depends on the piece after the preview
+            final int shape = PieceTable.shape(myNext, Rotation.NONE);
+            final int x = (myGrid.getWidth() - myNext.getWidth()) / 2;
+            int y = myGrid.getHeight() - 1;
+            if (myNext == TetrisPiece.I) {
+                y--;
+            }
+            final PlacementFinder finder = theScratch.myFinder;
+            final int count = finder.search(theScratch.myFirst, shape, x, y);
+            // a preview piece with no placement cannot even enter the board
+            double best = LOSS;
+            for (int j = 0; j < count && System.nanoTime() < myDeadline; j++) {
+                best = Math.max(best, score(theScratch.myFirst, theScratch.mySecond,
+                                            theScratch, finder.getShape(j),
+                                            finder.getX(j), finder.getY(j), theLines));
+            }
+            Double result = null;
+            if (System.nanoTime() < myDeadline) {
+                result = best;
+            }
+            return result;
+        }
+    }
+}
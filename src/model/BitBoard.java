@@ -0,0 +1,545 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bitboard storage for the frozen blocks of a Tetris board.
+ *
+ * Each row is stored as a long occupancy mask (bit x set when column x is filled)
+ * alongside a compact color plane holding the Block ordinal of every cell.
+ * Collision and full row checks are single mask operations.
+ *
+ * Color rows are never written once they are stored: a row that changes is
+ * replaced by a new row, and every empty row is the one shared empty row. Any
+ * board can therefore share its color rows with a fork by reference. The masks,
+ * column heights and hash are small and are copied outright, so a fork costs a
+ * few array copies, and each board allocates one color row per row it changes.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+final class BitBoard {
+
+    /**
+     * The widest board that fits in a single row mask.
+     */
+    static final int MAX_WIDTH = Long.SIZE;
+
+    /**
+     * The Block values indexed by ordinal, cached to avoid cloning values().
+     */
+    private static final Block[] BLOCKS = Block.values();
+
+    /**
+     * Width of the board.
+     */
+    private final int myWidth;
+
+    /**
+     * Height of the board.
+     */
+    private final int myHeight;
+
+    /**
+     * The mask of a completely filled row.
+     */
+    private final long myFullRow;
+
+    /**
+     * The occupancy mask of every row, bottom row first.
+     */
+    private final long[] myRows;
+
+    /**
+     * The Block ordinal of every cell, bottom row first; zero (EMPTY) for open cells.
+     * The rows are never written and may be shared with other boards.
+     */
+    private final byte[][] myColors;
+
+    /**
+     * An empty color row, shared by this board and its forks and never written.
+     */
+    private final byte[] myEmptyRow;
+
+    /**
+     * The height of every column: one more than its highest occupied row,
+     * or zero for an empty column.
+     */
+    private final int[] myColumnHeights;
+
+    /**
+     * The XOR of the Zobrist keys of all rows.
+     */
+    private long myHash;
+
+    /**
+     * Constructs an empty bitboard.
+     *
+     * @param theWidth the width of the board.
+     * @param theHeight the height of the board.
+     * @throws IllegalArgumentException if the width does not fit in a row mask
+     *         or the height is not positive.
+     */
+    BitBoard(final int theWidth, final int theHeight) {
+        checkSize(theWidth, theHeight);
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myFullRow = fullRowMask(theWidth);
+        myRows = new long[theHeight];
+        myColors = new byte[theHeight][];
+        myEmptyRow = new byte[theWidth];
+        myColumnHeights = new int[theWidth];
+        Arrays.fill(myColors, myEmptyRow);
+    }
+
+    /**
+     * Constructs a fork of a board. The parent is only read, so several
+     * threads may fork the same board; every color row is shared by reference.
+     *
+     * @param theParent the board to fork.
+     */
+    private BitBoard(final BitBoard theParent) {
+        myWidth = theParent.myWidth;
+        myHeight = theParent.myHeight;
+        myFullRow = theParent.myFullRow;
+        myRows = theParent.myRows.clone();
+        myColors = theParent.myColors.clone();
+        myEmptyRow = theParent.myEmptyRow;
+        myColumnHeights = theParent.myColumnHeights.clone();
+        myHash = theParent.myHash;
+    }
+
+    /**
+     * Checks that a bitboard can be made in a size.
+     *
+     * @param theWidth the width of the board.
+     * @param theHeight the height of the board.
+     * @throws IllegalArgumentException if the width does not fit in a row mask
+     *         or the height is not positive.
+     */
+    static void checkSize(final int theWidth, final int theHeight) {
+        if (theHeight < 1) {
+            throw new IllegalArgumentException("Board height must be positive: "
+                                               + theHeight);
+        }
+        fullRowMask(theWidth);
+    }
+
+    /**
+     * Returns the mask of a completely filled row.
+     *
+     * @param theWidth the width of the board.
+     * @return the full row mask.
+     * @throws IllegalArgumentException if the width does not fit in a row mask.
+     */
+    private static long fullRowMask(final int theWidth) {
+        if (theWidth < 1 || theWidth > MAX_WIDTH) {
+            throw new IllegalArgumentException("Board width must be between 1 and "
+                                               + MAX_WIDTH + ": " + theWidth);
+        }
+        long result = -1L;
+        if (theWidth < MAX_WIDTH) {
+            result = (1L << theWidth) - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Removes all blocks from the board.
+     */
+    void clear() {
+        Arrays.fill(myRows, 0L);
+        Arrays.fill(myColors, myEmptyRow);
+        Arrays.fill(myColumnHeights, 0);
+        myHash = 0L;
+    }
+
+    /**
+     * Creates an independent copy of this board without changing it. The two
+     * boards share every color row until one of them replaces it.
+     *
+     * @return the fork.
+     */
+    BitBoard fork() {
+        return new BitBoard(this);
+    }
+
+    /**
+     * Makes this board a copy of another board of the same size.
+     *
+     * @param theOther the board to copy.
+     */
+    void copyFrom(final BitBoard theOther) {
+        System.arraycopy(theOther.myRows, 0, myRows, 0, myHeight);
+        System.arraycopy(theOther.myColors, 0, myColors, 0, myHeight);
+        System.arraycopy(theOther.myColumnHeights, 0, myColumnHeights, 0, myWidth);
+        myHash = theOther.myHash;
+    }
+
+    /**
+     * Returns the number of rows up to and including the highest occupied row.
+     *
+     * @return the height of the tallest column.
+     */
+    int getTop() {
+        int result = 0;
+        for (final int height : myColumnHeights) {
+            result = Math.max(result, height);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the lowest rows into compact arrays.
+     *
+     * @param theRows receives the occupancy masks of the lowest theRows.length rows.
+     * @param theColors receives the Block ordinals of the same rows, row by row.
+     */
+    void saveRows(final long[] theRows, final byte[] theColors) {
+        System.arraycopy(myRows, 0, theRows, 0, theRows.length);
+        for (int y = 0; y < theRows.length; y++) {
+            System.arraycopy(myColors[y], 0, theColors, y * myWidth, myWidth);
+        }
+    }
+
+    /**
+     * Replaces the blocks with rows saved by saveRows; the rows above them are emptied.
+     * Column heights and the hash are rebuilt.
+     *
+     * @param theRows the saved occupancy masks.
+     * @param theColors the saved Block ordinals.
+     * @throws IllegalArgumentException if there are more rows than the board
+     *         has; the board is left unchanged.
+     */
+    void restoreRows(final long[] theRows, final byte[] theColors) {
+        if (theRows.length > myHeight || theColors.length < theRows.length * myWidth) {
+            throw new IllegalArgumentException("The rows do not fit the board");
+        }
+        clear();
+        System.arraycopy(theRows, 0, myRows, 0, theRows.length);
+        for (int y = 0; y < theRows.length; y++) {
+            if (theRows[y] != 0L) {
+                myColors[y] = Arrays.copyOfRange(theColors, y * myWidth, (y + 1) * myWidth);
+            }
+            myHash ^= Zobrist.rowKey(y, theRows[y]);
+        }
+        for (int x = 0; x < myWidth; x++) {
+            final long bit = 1L << x;
+            int height = theRows.length;
+            while (height > 0 && (myRows[height - 1] & bit) == 0) {
+                height--;
+            }
+            myColumnHeights[x] = height;
+        }
+    }
+
+    /**
+     * Returns the Zobrist hash of the frozen blocks, maintained as rows change.
+     *
+     * @return the hash; zero for an empty board.
+     */
+    long getHash() {
+        return myHash;
+    }
+
+    /**
+     * Returns the width of the board.
+     *
+     * @return the width.
+     */
+    int getWidth() {
+        return myWidth;
+    }
+
+    /**
+     * Returns the height of the board.
+     *
+     * @return the height.
+     */
+    int getHeight() {
+        return myHeight;
+    }
+
+    /**
+     * Returns the height of a column.
+     *
+     * @param theX the column.
+     * @return one more than the highest occupied row, or zero if the column is empty.
+     */
+    int getColumnHeight(final int theX) {
+        return myColumnHeights[theX];
+    }
+
+    /**
+     * Returns the occupancy mask of a row. Rows above the board are empty.
+     *
+     * @param theY the row.
+     * @return the occupancy mask of the row.
+     */
+    long getRow(final int theY) {
+        long result = 0L;
+        if (theY < myHeight) {
+            result = myRows[theY];
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether a cell is occupied. The caller is responsible for the
+     * horizontal and lower bounds; cells above the board are never occupied.
+     *
+     * @param theX the column.
+     * @param theY the row.
+     * @return true if a frozen block occupies the cell.
+     */
+    boolean isOccupied(final int theX, final int theY) {
+        return theY < myHeight && (myRows[theY] & (1L << theX)) != 0;
+    }
+
+    /**
+     * Tests whether a shape placed at a board position lies within the side and
+     * bottom walls without overlapping any frozen block. Cells above the board
+     * are open.
+     *
+     * @param theShape the PieceTable shape index.
+     * @param theX the x position of the shape.
+     * @param theY the y position of the shape.
+     * @return true if the shape fits.
+     */
+    boolean fits(final int theShape, final int theX, final int theY) {
+        boolean result = theX + PieceTable.minX(theShape) >= 0
+                         && theX + PieceTable.maxX(theShape) < myWidth
+                         && theY + PieceTable.minY(theShape) >= 0;
+        final int top = Math.min(PieceTable.maxY(theShape), myHeight - 1 - theY);
+        for (int row = PieceTable.minY(theShape); result && row <= top; row++) {
+            final long mask = PieceTable.rowMask(theShape, row);
+            final long shifted;
+            if (theX >= 0) {
+                shifted = mask << theX;
+            } else {
+                shifted = mask >>> -theX;
+            }
+            result = (myRows[theY + row] & shifted) == 0;
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many rows a shape can fall from a legal position before it
+     * lands. When every column of the shape is above the column heights the
+     * answer comes straight from the height index; a shape tucked under an
+     * overhang falls back to probing row by row.
+     *
+     * @param theShape the PieceTable shape index.
+     * @param theX the x position of the shape.
+     * @param theY the y position of the shape.
+     * @return the number of rows the shape can move down.
+     */
+    int dropDistance(final int theShape, final int theX, final int theY) {
+        int result = Integer.MAX_VALUE;
+        boolean underSurface = false;
+        for (int column = PieceTable.minX(theShape);
+                        column <= PieceTable.maxX(theShape); column++) {
+            final int bottom = PieceTable.columnBottom(theShape, column);
+            if (bottom < PieceTable.SIZE) {
+                final int gap = theY + bottom - myColumnHeights[theX + column];
+                if (gap < 0) {
+                    underSurface = true;
+                } else {
+                    result = Math.min(result, gap);
+                }
+            }
+        }
+        if (underSurface) {
+            result = 0;
+            while (fits(theShape, theX, theY - result - 1)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Freezes a shape into the board. Blocks outside the board are dropped.
+     * Each row the shape covers is replaced by one new color row.
+     *
+     * @param theShape the PieceTable shape index.
+     * @param theX the x position of the shape.
+     * @param theY the y position of the shape.
+     * @return true if every block landed on the board.
+     */
+    boolean place(final int theShape, final int theX, final int theY) {
+        boolean result = true;
+        for (int row = PieceTable.minY(theShape); row <= PieceTable.maxY(theShape); row++) {
+            result &= placeRow(theShape, theX, theY, row);
+        }
+        return result;
+    }
+
+    /**
+     * Freezes the blocks of one row of a shape into the board, replacing the
+     * color row they land in. Blocks outside the board are dropped.
+     *
+     * @param theShape the PieceTable shape index.
+     * @param theX the x position of the shape.
+     * @param theY the y position of the shape.
+     * @param theRow the row of the shape, relative to its position.
+     * @return true if every block of the row landed on the board.
+     */
+    private boolean placeRow(final int theShape, final int theX, final int theY,
+                             final int theRow) {
+        final int y = theY + theRow;
+        boolean result = y >= 0 && y < myHeight;
+        if (result) {
+            final byte ordinal = (byte) PieceTable.piece(theShape).getBlock().ordinal();
+            final byte[] colors = myColors[y].clone();
+            for (int i = 0; i < PieceTable.BLOCKS; i++) {
+                final int x = theX + PieceTable.blockX(theShape, i);
+                if (PieceTable.blockY(theShape, i) == theRow && isOnBoard(x, y)) {
+                    colors[x] = ordinal;
+                    fill(x, y);
+                } else if (PieceTable.blockY(theShape, i) == theRow) {
+                    result = false;
+                }
+            }
+            myColors[y] = colors;
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether a cell lies inside the frozen area of the board.
+     *
+     * @param theX the column.
+     * @param theY the row.
+     * @return true if the cell is on the board.
+     */
+    boolean isOnBoard(final int theX, final int theY) {
+        return theX >= 0 && theX < myWidth && theY >= 0 && theY < myHeight;
+    }
+
+    /**
+     * Returns the Block at a cell.
+     *
+     * @param theX the column.
+     * @param theY the row.
+     * @return the Block at the cell or null if the cell is empty.
+     */
+    Block get(final int theX, final int theY) {
+        return toBlock(myColors[theY][theX]);
+    }
+
+    /**
+     * Marks a cell occupied in the row mask, the hash and the column height;
+     * the caller stores its color.
+     *
+     * @param theX the column.
+     * @param theY the row.
+     */
+    private void fill(final int theX, final int theY) {
+        final long old = myRows[theY];
+        myRows[theY] |= 1L << theX;
+        myHash ^= Zobrist.rowKey(theY, old) ^ Zobrist.rowKey(theY, myRows[theY]);
+        if (theY >= myColumnHeights[theX]) {
+            myColumnHeights[theX] = theY + 1;
+        }
+    }
+
+    /**
+     * Removes every complete row, shifting the rows above down and
+     * filling the top of the board with empty rows. Only the keys of the rows
+     * from the lowest cleared row up are rehashed.
+     *
+     * @param theCleared receives the original indexes of the cleared rows
+     *        in ascending order; must hold at least getHeight() entries.
+     * @return the number of rows cleared.
+     */
+    int clearFullRows(final int[] theCleared) {
+        int count = 0;
+        int dest = 0;
+        for (int y = 0; y < myHeight; y++) {
+            if (count > 0 || myRows[y] == myFullRow) {
+                // row y has not been overwritten yet: remove its old key
+                myHash ^= Zobrist.rowKey(y, myRows[y]);
+            }
+            if (myRows[y] == myFullRow) {
+                theCleared[count++] = y;
+            } else {
+                if (dest != y) {
+                    myColors[dest] = myColors[y];
+                    myRows[dest] = myRows[y];
+                }
+                dest++;
+            }
+        }
+        for (int y = dest; y < myHeight; y++) {
+            myRows[y] = 0L;
+            myColors[y] = myEmptyRow;
+        }
+        if (count > 0) {
+            for (int y = theCleared[0]; y < dest; y++) {
+                myHash ^= Zobrist.rowKey(y, myRows[y]);
+            }
+            updateColumnHeights(count);
+        }
+        return count;
+    }
+
+    /**
+     * Lowers the column heights after rows were cleared. Every cleared row was
+     * full, so it lies below the old top of each column; the old top cell moved
+     * down by the number of cleared rows unless it was cleared itself.
+     *
+     * @param theCleared the number of rows cleared.
+     */
+    private void updateColumnHeights(final int theCleared) {
+        for (int x = 0; x < myWidth; x++) {
+            final long bit = 1L << x;
+            int height = myColumnHeights[x] - theCleared;
+            while (height > 0 && (myRows[height - 1] & bit) == 0) {
+                height--;
+            }
+            myColumnHeights[x] = height;
+        }
+    }
+
+    /**
+     * Appends a copy of every row, bottom row first, to a list of Block rows.
+     * Empty cells are represented by null.
+     *
+     * @param theRows the list to append to.
+     */
+    void copyRows(final List<Block[]> theRows) {
+        for (int y = 0; y < myHeight; y++) {
+            final Block[] row = new Block[myWidth];
+            if (myRows[y] != 0L) {
+                final byte[] colors = myColors[y];
+                for (int x = 0; x < myWidth; x++) {
+                    row[x] = toBlock(colors[x]);
+                }
+            }
+            theRows.add(row);
+        }
+    }
+
+    /**
+     * Converts a stored ordinal back into a Block.
+     *
+     * @param theOrdinal the stored ordinal.
+     * @return the Block or null for an empty cell.
+     */
+    private static Block toBlock(final byte theOrdinal) {
+        Block result = null;
+        if (theOrdinal != 0) {
+            result = BLOCKS[theOrdinal];
+        }
+        return result;
+    }
+}
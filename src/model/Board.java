@@ -1,27 +1,34 @@
 /*
  * TCSS 305
- * 
+ *
  * An implementation of the classic game "Tetris".
  */
 
 package model;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Observable;
-import model.wallkicks.WallKick;
+import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a Tetris board.
- * 
+ *
+ * The rules of the game are implemented by a TetrisEngine;
+ * the Board notifies registered listeners and Observers of every change.
+ * Each kind of event has its own listener type, kept in a copy-on-write
+ * registry, and an event payload is only built when some listener or
+ * Observer will receive it.
+ *
  * @author Alan Fowler
  * @version 1.2
  */
 public class Board extends Observable {
 
     // Class constants
-    
+
     /**
      * Default width of a Tetris game board.
      */
@@ -32,9 +39,14 @@ public class Board extends Observable {
      */
     private static final int DEFAULT_HEIGHT = 20;
 
-    
+    /**
+     * Number of hidden rows above the board included in the board data.
+     */
+    private static final int HIDDEN_ROWS = 4;
+
+
     // Instance fields
-    
+
     /**
      * Width of the game board.
      */
@@ -44,44 +56,72 @@ public class Board extends Observable {
      * Height of the game board.
      */
     private final int myHeight;
-    
+
     /**
-     * The frozen blocks on the board.
+     * The game rules and state.
      */
-    private final List<Block[]> myFrozenBlocks;
-    
+    private final TetrisEngine myEngine;
+
     /**
-     * The game over state.
+     * Whether observers receive BoardDelta events instead of full board data.
      */
-    private boolean myGameOver;
+    private boolean myDeltaEvents;
 
     /**
-     * Contains a non random sequence of TetrisPieces to loop through.
+     * Tracks the board data published to observers in delta mode.
      */
-    private List<TetrisPiece> myNonRandomPieces;
+    private final DeltaTracker myDeltaTracker;
 
     /**
-     * The current index in the non random piece sequence.
+     * Records the inputs of this board, or null when not recording.
      */
-    private int mySequenceIndex;
-    
+    private ReplayRecorder myRecorder;
+
     /**
-     * Piece that is next to play.
+     * Whether notifications to observers are suppressed.
      */
-    private TetrisPiece myNextPiece;
-    
+    private boolean myQuiet;
+
     /**
-     * Piece that is currently movable.
+     * Collects the events of the inputs being applied by apply(), or null.
      */
-    private MovableTetrisPiece myCurrentPiece;
+    private InputBatch myBatch;
 
     /**
-     * A flag to indicate when moving a piece down is part of a drop operation.
-     * This is used to prevent the Board from notifying observers for each incremental
-     * down movement in the drop.
+     * The last frame built by getFrame(), whose unchanged rows the next frame shares.
      */
-    private boolean myDrop;
-    
+    private BoardFrame myFrame;
+
+    /**
+     * The registered board data listeners.
+     */
+    private final CopyOnWriteArrayList<BoardChangeListener> myChangeListeners =
+        new CopyOnWriteArrayList<BoardChangeListener>();
+
+    /**
+     * The registered board delta listeners.
+     */
+    private final CopyOnWriteArrayList<BoardDeltaListener> myDeltaListeners =
+        new CopyOnWriteArrayList<BoardDeltaListener>();
+
+    /**
+     * The registered row clear listeners.
+     */
+    private final CopyOnWriteArrayList<RowsClearedListener> myClearListeners =
+        new CopyOnWriteArrayList<RowsClearedListener>();
+
+    /**
+     * The registered next piece listeners.
+     */
+    private final CopyOnWriteArrayList<NextPieceListener> myPieceListeners =
+        new CopyOnWriteArrayList<NextPieceListener>();
+
+    /**
+     * The registered game over listeners.
+     */
+    private final CopyOnWriteArrayList<GameOverListener> myGameOverListeners =
+        new CopyOnWriteArrayList<GameOverListener>();
+
     // Constructors
 
     /**
@@ -94,30 +134,73 @@ public class Board extends Observable {
 
     /**
      * Tetris board constructor for non-default sized boards.
-     * 
+     * Pieces are drawn uniformly from an unpredictable seed.
+     *
      * @param theWidth Width of the Tetris game board.
      * @param theHeight Height of the Tetris game board.
+     * @throws IllegalArgumentException if the width is not between 1 and 64
+     *         or the height is not positive.
      */
     public Board(final int theWidth, final int theHeight) {
+        this(theWidth, theHeight, new PieceGenerator());
+    }
+
+    /**
+     * Tetris board constructor for reproducible games.
+     * Pieces are drawn uniformly from the given seed.
+     *
+     * @param theWidth Width of the Tetris game board.
+     * @param theHeight Height of the Tetris game board.
+     * @param theSeed the seed for the piece sequence.
+     * @throws IllegalArgumentException if the width is not between 1 and 64
+     *         or the height is not positive.
+     */
+    public Board(final int theWidth, final int theHeight, final long theSeed) {
+        this(theWidth, theHeight, new PieceGenerator(theSeed, PieceGenerator.Mode.UNIFORM));
+    }
+
+    /**
+     * Tetris board constructor with a piece generator.
+     *
+     * @param theWidth Width of the Tetris game board.
+     * @param theHeight Height of the Tetris game board.
+     * @param theGenerator the source of random pieces, used only by this board.
+     * @throws IllegalArgumentException if the width is not between 1 and 64
+     *         or the height is not positive.
+     */
+    public Board(final int theWidth, final int theHeight,
+                 final PieceGenerator theGenerator) {
         super();
         myWidth = theWidth;
         myHeight = theHeight;
-        myFrozenBlocks = new LinkedList<Block[]>();
-         
-        myNonRandomPieces = new ArrayList<TetrisPiece>();
-        mySequenceIndex = 0;
-        
-        /*  myNextPiece and myCurrentPiece
+        myEngine = new TetrisEngine(theWidth, theHeight, theGenerator, new EngineEvents());
+        myDeltaTracker = new DeltaTracker(theWidth, theHeight, theHeight + HIDDEN_ROWS);
+
+        /*  The next piece and the current piece
          *  are initialized by the newGame() method.
          */
     }
-    
+
+    /**
+     * Constructs a quiet fork of a board.
+     *
+     * @param theParent the board to fork.
+     */
+    private Board(final Board theParent) {
+        super();
+        myWidth = theParent.myWidth;
+        myHeight = theParent.myHeight;
+        myEngine = theParent.myEngine.fork(new EngineEvents());
+        myDeltaTracker = new DeltaTracker(myWidth, myHeight, myHeight + HIDDEN_ROWS);
+        myQuiet = true;
+    }
+
 
     // public queries
-    
+
     /**
      * Get the width of the board.
-     * 
+     *
      * @return Width of the board.
      */
     public int getWidth() {
@@ -126,13 +209,160 @@ public class Board extends Observable {
 
     /**
      * Get the height of the board.
-     * 
+     *
      * @return Height of the board.
      */
     public int getHeight() {
         return myHeight;
     }
-    
+
+    /**
+     * Returns a copy of the board data: the frozen blocks followed by the hidden
+     * rows, with the current piece drawn in. This is the same data observers
+     * receive when delta events are off.
+     *
+     * @return a copy of the board data, bottom row first.
+     */
+    public List<Block[]> getBoardSnapshot() {
+        return new BoardData().getBoardData();
+    }
+
+    /**
+     * Chooses the board change notifications sent to observers.
+     * When enabled, observers receive a BoardDelta listing only the cells that
+     * changed instead of a full copy of the board data. Enabling delta events
+     * makes the next notification a reset describing the whole board.
+     *
+     * @param theDeltaEvents true to send BoardDelta events.
+     */
+    public void setDeltaEvents(final boolean theDeltaEvents) {
+        myDeltaEvents = theDeltaEvents;
+        myDeltaTracker.reset();
+    }
+
+    /**
+     * Adds an observer. The next board delta is a reset, so an observer
+     * receiving delta events starts from the whole board.
+     *
+     * @param theObserver the observer.
+     */
+    @Override
+    public synchronized void addObserver(final Observer theObserver) {
+        super.addObserver(theObserver);
+        myDeltaTracker.reset();
+    }
+
+    /**
+     * Registers a listener for the board data. Like addObserver(), registering a
+     * listener twice has no effect; the same holds for the other listener types.
+     *
+     * @param theListener the listener.
+     */
+    public void addBoardChangeListener(final BoardChangeListener theListener) {
+        myChangeListeners.addIfAbsent(theListener);
+    }
+
+    /**
+     * Unregisters a board data listener.
+     *
+     * @param theListener the listener.
+     */
+    public void removeBoardChangeListener(final BoardChangeListener theListener) {
+        myChangeListeners.remove(theListener);
+    }
+
+    /**
+     * Registers a listener for board deltas. The next delta is a reset, so the
+     * new listener starts from the whole board.
+     *
+     * @param theListener the listener.
+     */
+    public void addBoardDeltaListener(final BoardDeltaListener theListener) {
+        myDeltaListeners.addIfAbsent(theListener);
+        myDeltaTracker.reset();
+    }
+
+    /**
+     * Unregisters a board delta listener.
+     *
+     * @param theListener the listener.
+     */
+    public void removeBoardDeltaListener(final BoardDeltaListener theListener) {
+        myDeltaListeners.remove(theListener);
+    }
+
+    /**
+     * Registers a listener for cleared rows.
+     *
+     * @param theListener the listener.
+     */
+    public void addRowsClearedListener(final RowsClearedListener theListener) {
+        myClearListeners.addIfAbsent(theListener);
+    }
+
+    /**
+     * Unregisters a cleared rows listener.
+     *
+     * @param theListener the listener.
+     */
+    public void removeRowsClearedListener(final RowsClearedListener theListener) {
+        myClearListeners.remove(theListener);
+    }
+
+    /**
+     * Registers a listener for next pieces.
+     *
+     * @param theListener the listener.
+     */
+    public void addNextPieceListener(final NextPieceListener theListener) {
+        myPieceListeners.addIfAbsent(theListener);
+    }
+
+    /**
+     * Unregisters a next piece listener.
+     *
+     * @param theListener the listener.
+     */
+    public void removeNextPieceListener(final NextPieceListener theListener) {
+        myPieceListeners.remove(theListener);
+    }
+
+    /**
+     * Registers a listener for the end of games.
+     *
+     * @param theListener the listener.
+     */
+    public void addGameOverListener(final GameOverListener theListener) {
+        myGameOverListeners.addIfAbsent(theListener);
+    }
+
+    /**
+     * Unregisters a game over listener.
+     *
+     * @param theListener the listener.
+     */
+    public void removeGameOverListener(final GameOverListener theListener) {
+        myGameOverListeners.remove(theListener);
+    }
+
+    /**
+     * Attaches a recorder that captures the games played on this board.
+     * The board size and any piece sequence are recorded right away; each
+     * following game is recorded from its newGame() call, so the recorder
+     * should be attached before the game it is meant to capture.
+     *
+     * @param theRecorder the recorder, or null to stop recording.
+     */
+    public void setRecorder(final ReplayRecorder theRecorder) {
+        myRecorder = theRecorder;
+        if (theRecorder != null) {
+            theRecorder.board(myWidth, myHeight);
+            if (!myEngine.getPieceSequence().isEmpty()) {
+                theRecorder.pieceSequence(myEngine.getPieceSequence());
+            }
+        }
+    }
+
 
 
     /**
@@ -141,35 +371,35 @@ public class Board extends Observable {
      * and before each new game.
      */
     public void newGame() {
-        
-        mySequenceIndex = 0;
-        myFrozenBlocks.clear();
-        for (int h = 0; h < myHeight; h++) {
-            myFrozenBlocks.add(new Block[myWidth]);
-        }
+        startGame();
+    }
 
-        myGameOver = false;
-        myCurrentPiece = nextMovablePiece(true);
-        myDrop = false;
-        
-        setChanged();
-        notifyObservers(new BoardData().getBoardData());
+    /**
+     * Reseeds the random pieces and resets the board for a new game,
+     * so the game can be replayed from the same seed.
+     *
+     * @param theSeed the seed for the piece sequence.
+     */
+    public void newGame(final long theSeed) {
+        myEngine.getGenerator().reset(theSeed);
+        startGame();
     }
 
     /**
      * Sets a non random sequence of pieces to loop through.
-     * 
+     *
      * @param thePieces the List of non random TetrisPieces.
      */
     public void setPieceSequence(final List<TetrisPiece> thePieces) {
-        myNonRandomPieces = new ArrayList<TetrisPiece>(thePieces);
-        mySequenceIndex = 0;
-        myCurrentPiece = nextMovablePiece(true);
+        if (myRecorder != null) {
+            myRecorder.pieceSequence(thePieces);
+        }
+        myEngine.setPieceSequence(thePieces);
     }
-    
+
     /**
      * Advances the board by one 'step'.
-     * 
+     *
      * This could include
      * - moving the current piece down 1 line
      * - freezing the current piece if appropriate
@@ -182,33 +412,28 @@ public class Board extends Observable {
          * However, more code could be added to this method
          * to implement additional functionality
          */
-        down();
+        record(Action.STEP);
+        moveDown();
     }
-    
+
     /**
      * Try to move the movable piece down.
      * Freeze the Piece in position if down tries to move into an illegal state.
      * Clear full lines.
      */
     public void down() {
-        if (!move(myCurrentPiece.down())) {
-            // the piece froze, so clear lines and update current piece
-            addPieceToBoardData(myFrozenBlocks, myCurrentPiece);
-            checkRows();
-            if (!myGameOver) {
-                myCurrentPiece = nextMovablePiece(false);
-            }
-            setChanged();
-            notifyObservers(new BoardData().getBoardData());
-        }
+        record(Action.DOWN);
+        moveDown();
     }
 
     /**
      * Try to move the movable piece left.
      */
     public void left() {
-        if (myCurrentPiece != null) {
-            move(myCurrentPiece.left());
+        record(Action.LEFT);
+        if (myEngine.left()) {
+            setChanged();
+            notifyBoardChanged();
         }
     }
 
@@ -216,8 +441,10 @@ public class Board extends Observable {
      * Try to move the movable piece right.
      */
     public void right() {
-        if (myCurrentPiece != null) {
-            move(myCurrentPiece.right());
+        record(Action.RIGHT);
+        if (myEngine.right()) {
+            setChanged();
+            notifyBoardChanged();
         }
     }
 
@@ -225,73 +452,264 @@ public class Board extends Observable {
      * Try to rotate the movable piece in the clockwise direction.
      */
     public void rotateCW() {
-        if (myCurrentPiece != null) {
-            if (myCurrentPiece.getTetrisPiece() == TetrisPiece.O) {
-                move(myCurrentPiece.rotateCW());
-            } else {
-                final MovableTetrisPiece cwPiece = myCurrentPiece.rotateCW();
-                final Point[] offsets = WallKick.getWallKicks(cwPiece.getTetrisPiece(),
-                                                    myCurrentPiece.getRotation(),
-                                                    cwPiece.getRotation());
-                for (final Point p : offsets) {
-                    final Point offsetLocation = cwPiece.getPosition().transform(p);
-                    final MovableTetrisPiece temp = cwPiece.setPosition(offsetLocation);
-                    if (move(temp)) {
-                        break;
-                    }
-                }
-            }
+        record(Action.ROTATE_CW);
+        if (myEngine.rotateCW()) {
+            setChanged();
+            notifyBoardChanged();
         }
     }
-    
+
     /**
      * Try to rotate the movable piece in the counter-clockwise direction.
      */
     public void rotateCCW() {
-        if (myCurrentPiece != null) {
-            if (myCurrentPiece.getTetrisPiece() == TetrisPiece.O) {
-                move(myCurrentPiece.rotateCCW());
-            } else {
-                final MovableTetrisPiece ccwPiece = myCurrentPiece.rotateCCW();
-                final Point[] offsets = WallKick.getWallKicks(ccwPiece.getTetrisPiece(),
-                                                    myCurrentPiece.getRotation(),
-                                                    ccwPiece.getRotation());
-                for (final Point p : offsets) {
-                    final Point offsetLocation = ccwPiece.getPosition().transform(p);
-                    final MovableTetrisPiece temp = ccwPiece.setPosition(offsetLocation);
-                    if (move(temp)) {
-                        break;
-                    }
-                }
-            }
+        record(Action.ROTATE_CCW);
+        if (myEngine.rotateCCW()) {
+            setChanged();
+            notifyBoardChanged();
         }
     }
 
     /**
      * Drop the piece until piece is set.
+     * The piece jumps straight to its landing row, so observers are only
+     * notified once it freezes.
      */
     public void drop() {
-        if (!myGameOver) {
-            myDrop = true;
-            while (isPieceLegal(myCurrentPiece.down())) {
-                down();  // move down as far as possible
+        record(Action.DROP);
+        if (!myEngine.isGameOver() && hasPiece()) {
+            myEngine.drop();
+            setChanged();
+            notifyBoardChanged();
+        }
+    }
+
+    /**
+     * Applies a sequence of inputs, such as a burst from a network client or a
+     * bot, as one update. Observers receive a single InputBatch after the last
+     * input instead of a notification for each input, so the board data is built
+     * once. Listeners receive the row clears, next pieces and game over of the
+     * inputs in order after the last input, followed by one board change.
+     * An attached recorder still records every input.
+     *
+     * @param theActions the inputs, in order.
+     */
+    public void apply(final Action... theActions) {
+        if (myQuiet) {
+            for (final Action action : theActions) {
+                perform(action);
+            }
+        } else {
+            final InputBatch batch = new InputBatch(theActions.length);
+            myBatch = batch;
+            try {
+                for (final Action action : theActions) {
+                    perform(action);
+                }
+            } finally {
+                myBatch = null;
+            }
+            for (final Integer[] rows : batch.getClears()) {
+                fireRowsCleared(toInts(rows), rows.length);
+            }
+            for (final TetrisPiece piece : batch.getPieces()) {
+                fireNextPiece(piece);
+            }
+            if (batch.isGameOver()) {
+                fireGameOver();
+            }
+            final Object board = fireBoardChanged();
+            if (countObservers() > 0) {
+                batch.setBoard(board);
+                setChanged();
+                notifyObservers(batch);
             }
-            myDrop = false;
-            down();  // move down one more time to freeze in place
         }
     }
-    
+
+    /**
+     * Returns how many rows the current piece can fall before it lands.
+     *
+     * @return the drop distance, or 0 if there is no piece in play.
+     */
+    public int dropDistance() {
+        return myEngine.dropDistance();
+    }
+
+    /**
+     * Returns a 64-bit Zobrist hash of the game state: the frozen blocks,
+     * the current piece and its position, and the next piece.
+     *
+     * @return the state hash.
+     */
+    public long getHash() {
+        return myEngine.getHash();
+    }
+
+    /**
+     * Returns whether the game is over.
+     *
+     * @return true once a frozen piece has ended the game.
+     */
+    public boolean isGameOver() {
+        return myEngine.isGameOver();
+    }
+
+    /**
+     * Returns the score of the game, computed as the score panel does
+     * for a game started at level 1.
+     *
+     * @return the score.
+     */
+    public long getScore() {
+        return myEngine.getScore();
+    }
+
+    /**
+     * Returns the level of the game.
+     *
+     * @return the level.
+     */
+    public int getLevel() {
+        return myEngine.getLevel();
+    }
+
+    /**
+     * Returns the number of rows cleared in the game.
+     *
+     * @return the lines cleared.
+     */
+    public long getLinesCleared() {
+        return myEngine.getLinesCleared();
+    }
+
+    /**
+     * Returns the number of rows left to clear for the next level.
+     *
+     * @return the lines to the next level.
+     */
+    public int getLinesToNextLevel() {
+        return myEngine.getLinesToNextLevel();
+    }
+
+    /**
+     * Changes the level of the game, as the difficulty slider does; the score
+     * is kept. No notifications are sent.
+     *
+     * @param theLevel the new level.
+     * @throws IllegalArgumentException if the level is not positive.
+     */
+    public void setLevel(final int theLevel) {
+        myEngine.setLevel(theLevel);
+    }
+
+    /**
+     * Returns an immutable picture of the game for drawing on another thread.
+     * The rows that did not change since the previous frame of this board are
+     * shared with it, so building a frame costs only the changed rows.
+     *
+     * @return the frame.
+     */
+    public BoardFrame getFrame() {
+        final BoardFrame previous = myFrame;
+        final Block[][] rows = new Block[myHeight + HIDDEN_ROWS][];
+        final Block[] row = new Block[myWidth];
+        for (int y = 0; y < rows.length; y++) {
+            fillRow(row, y);
+            if (previous != null && equalsRow(previous, y, row)) {
+                rows[y] = previous.getRow(y);
+            } else {
+                rows[y] = row.clone();
+            }
+        }
+        myFrame = new BoardFrame(rows, myEngine.getNextPiece(), myEngine.getScore(),
+                                 myEngine.getLinesCleared(), myEngine.getLevel(),
+                                 myEngine.getLinesToNextLevel(), myEngine.isGameOver());
+        return myFrame;
+    }
+
+    /**
+     * Encodes the game in a compact binary snapshot: the frozen rows, the current
+     * piece with its position and rotation, the next piece, the position of the
+     * random piece stream, and the score and level.
+     *
+     * @return the snapshot.
+     */
+    public byte[] saveSnapshot() {
+        return myEngine.saveSnapshot();
+    }
+
+    /**
+     * Returns the game to a snapshot and sends observers the restored board
+     * data and next piece.
+     *
+     * @param theSnapshot a snapshot taken from a board of the same size.
+     * @throws IllegalArgumentException if the snapshot is not valid or was taken
+     *         from a board of another size or piece generator mode.
+     */
+    public void restoreSnapshot(final byte[] theSnapshot) {
+        myEngine.restoreSnapshot(theSnapshot);
+        publishFrame();
+    }
+
+    /**
+     * Creates an independent copy of the game for trying moves, such as a bot
+     * search or a hint. The fork has no observers and never notifies any, has
+     * no recorder, and shares the frozen rows with this board by reference:
+     * rows are replaced rather than written, so a fork costs a few small array
+     * copies plus one new row per row either board changes afterwards.
+     *
+     * @return the fork.
+     */
+    public Board fork() {
+        return new Board(this);
+    }
+
+    /**
+     * Returns the current piece.
+     *
+     * @return a view of the current piece, or null if there is no piece in play.
+     */
+    public MovableTetrisPiece getCurrentPiece() {
+        MovableTetrisPiece result = null;
+        if (hasPiece()) {
+            result = new MovableTetrisPiece(myEngine.getPiece());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the board points the current piece would occupy if it were dropped,
+     * for drawing a ghost piece.
+     *
+     * @return the landing points of the current piece, or an empty array
+     *         if there is no piece in play.
+     */
+    public Point[] getGhostPoints() {
+        Point[] result = new Point[0];
+        if (hasPiece() && !myEngine.isGameOver()) {
+            final int shape = myEngine.getShape();
+            final int x = myEngine.getX();
+            final int y = myEngine.getY() - myEngine.dropDistance();
+            result = new Point[PieceTable.BLOCKS];
+            for (int i = 0; i < PieceTable.BLOCKS; i++) {
+                result[i] = new Point(x + PieceTable.blockX(shape, i),
+                                      y + PieceTable.blockY(shape, i));
+            }
+        }
+        return result;
+    }
+
 
 
     @Override
     public String toString() {
         final List<Block[]> board = getBoard();
-        board.add(new Block[myWidth]);
-        board.add(new Block[myWidth]);
-        board.add(new Block[myWidth]);
-        board.add(new Block[myWidth]);
-        if (myCurrentPiece != null) {
-            addPieceToBoardData(board, myCurrentPiece);
+        for (int h = 0; h < HIDDEN_ROWS; h++) {
+            board.add(new Block[myWidth]);
+        }
+        if (hasPiece()) {
+            addPieceToBoardData(board);
         }
         final StringBuilder sb = new StringBuilder();
         for (int i = board.size() - 1; i >= 0; i--) {
@@ -321,220 +739,361 @@ public class Board extends Observable {
         return sb.toString();
     }
 
-    
-    // private helper methods
-    
-    /**
-     * Helper function to check if the current piece can be shifted to the
-     * specified position.
-     * 
-     * @param theMovedPiece the position to attempt to shift the current piece
-     * @return True if the move succeeded
-     */
-    private boolean move(final MovableTetrisPiece theMovedPiece) {
-        boolean result = false;
-        if (isPieceLegal(theMovedPiece)) {
-            myCurrentPiece = theMovedPiece;
-            result = true;
-            if (!myDrop) {
+
+    // package-private helpers
+
+    /**
+     * Returns the engine holding the game state, for the bots in this package.
+     *
+     * @return the engine.
+     */
+    TetrisEngine getEngine() {
+        return myEngine;
+    }
+
+    /**
+     * Applies an input by calling the matching board method.
+     *
+     * @param theAction the input.
+     */
+    void perform(final Action theAction) {
+        switch (theAction) {
+            case LEFT:
+                left();
+                break;
+            case RIGHT:
+                right();
+                break;
+            case ROTATE_CW:
+                rotateCW();
+                break;
+            case ROTATE_CCW:
+                rotateCCW();
+                break;
+            case DROP:
+                drop();
+                break;
+            case STEP:
+                step();
+                break;
+            default:
+                down();
+        }
+    }
+
+    /**
+     * Suppresses or resumes notifications to observers. While quiet the board
+     * builds no notification payloads; publishFrame() brings observers up to date.
+     *
+     * @param theQuiet true to suppress notifications.
+     */
+    void setQuiet(final boolean theQuiet) {
+        myQuiet = theQuiet;
+        clearChanged();
+    }
+
+    /**
+     * Sends observers the current board data and next piece, for example after
+     * a run of quiet moves or a restored state.
+     */
+    void publishFrame() {
+        myDeltaTracker.reset();
+        setChanged();
+        notifyBoardChanged();
+        if (myEngine.getNextPiece() != null && !myQuiet) {
+            fireNextPiece(myEngine.getNextPiece());
+            if (countObservers() > 0) {
                 setChanged();
+                notifyObservers(myEngine.getNextPiece());
             }
-            notifyObservers(new BoardData().getBoardData());
         }
-        return result;
     }
 
     /**
-     * Helper function to test if the piece is in a legal state.
-     * 
-     * Illegal states:
-     * - points of the piece exceed the bounds of the board
-     * - points of the piece collide with frozen blocks on the board
-     * 
-     * @param thePiece MovableTetrisPiece to test.
-     * @return Returns true if the piece is in a legal state; false otherwise
+     * Captures the game state.
+     *
+     * @return the state.
      */
-    private boolean isPieceLegal(final MovableTetrisPiece thePiece) {
-        boolean result = true;
-        
-        for (final Point p : thePiece.getBoardPoints()) {
-            if (p.x() < 0 || p.x() >= myWidth) {
-                result = false;
-            }
-            if (p.y() < 0) {
-                result = false;
-            }
+    TetrisEngine.State saveState() {
+        return myEngine.saveState();
+    }
+
+    /**
+     * Returns the game to a saved state without notifying observers.
+     *
+     * @param theState a state saved from a board of the same size and generator mode.
+     */
+    void restoreState(final TetrisEngine.State theState) {
+        myEngine.restoreState(theState);
+        myDeltaTracker.reset();
+    }
+
+
+    // private helper methods
+
+    /**
+     * Records the start of a game and resets the board for it.
+     */
+    private void startGame() {
+        if (myRecorder != null) {
+            myRecorder.newGame(myEngine.getGenerator());
         }
-        return result && !collision(thePiece);      
+        myEngine.newGame();
+        myDeltaTracker.reset();
+
+        setChanged();
+        notifyBoardChanged();
     }
 
     /**
-     * Adds a movable Tetris piece into a list of board data.
-     * 
-     * Allows a single data structure to represent the current piece
-     * and the frozen blocks.
-     * 
-     * @param theFrozenBlocks Board to set the piece on.
-     * @param thePiece Piece to set on the board.
+     * Moves the current piece down, freezing it if it cannot move.
      */
-    private void addPieceToBoardData(final List<Block[]> theFrozenBlocks,
-                                     final MovableTetrisPiece thePiece) {
-        for (final Point p : thePiece.getBoardPoints()) {
-            setPoint(theFrozenBlocks, p, thePiece.getTetrisPiece().getBlock());
+    private void moveDown() {
+        if (hasPiece()) {
+            myEngine.down();
+            setChanged();
+            notifyBoardChanged();
         }
     }
 
     /**
-     * Checks the board for complete rows.
+     * Passes an input to the recorder, if one is attached.
+     *
+     * @param theAction the input.
      */
-    private void checkRows() {
-        final List<Integer> completeRows = new ArrayList<>();
-        for (final Block[] row : myFrozenBlocks) {
-            boolean complete = true;
-            for (final Block b : row) {
-                if (b == null) {
-                    complete = false;
-                    break;
-                }
+    private void record(final Action theAction) {
+        if (myRecorder != null) {
+            myRecorder.record(theAction);
+        }
+    }
+
+    /**
+     * Whether a current piece is in play.
+     *
+     * @return true once the first piece has been created.
+     */
+    private boolean hasPiece() {
+        return myEngine.getShape() >= 0;
+    }
+
+    /**
+     * Notifies listeners and observers of a board change if the board is marked
+     * as changed.
+     */
+    private void notifyBoardChanged() {
+        if (hasChanged() && !myQuiet && myBatch == null) {
+            final Object board = fireBoardChanged();
+            if (countObservers() > 0) {
+                notifyObservers(board);
             }
-            if (complete) {
-                completeRows.add(myFrozenBlocks.indexOf(row));
-                setChanged();
+            clearChanged();
+        }
+    }
+
+    /**
+     * Whether board deltas are tracked: when observers receive delta events or
+     * a delta listener is registered. Tracking restarts with a reset.
+     *
+     * @return true if deltas are tracked.
+     */
+    private boolean isTrackingDeltas() {
+        return myDeltaEvents && countObservers() > 0 || !myDeltaListeners.isEmpty();
+    }
+
+    /**
+     * Sends a board change to the board data and delta listeners. Each payload
+     * is built only if someone receives it; the payload for observers is built
+     * too when there are observers.
+     *
+     * @return the payload for observers: the board data, or a BoardDelta when
+     *         delta events are on; null if there are no observers.
+     */
+    private Object fireBoardChanged() {
+        final boolean observed = countObservers() > 0;
+        BoardDelta delta = null;
+        if (observed && myDeltaEvents || !myDeltaListeners.isEmpty()) {
+            delta = myDeltaTracker.publish(myEngine.getGrid(), myEngine.getShape(),
+                                           myEngine.getX(), myEngine.getY());
+            for (final BoardDeltaListener listener : myDeltaListeners) {
+                listener.boardChanged(delta);
             }
         }
-        // loop through list backwards removing items by index
-        if (!completeRows.isEmpty()) {
-            for (int i = completeRows.size() - 1; i >= 0; i--) {
-                final Block[] row = myFrozenBlocks.get(completeRows.get(i));
-                myFrozenBlocks.remove(row);
-                myFrozenBlocks.add(new Block[myWidth]);
+        List<Block[]> data = null;
+        if (observed && !myDeltaEvents || !myChangeListeners.isEmpty()) {
+            data = new BoardData().getBoardData();
+            for (final BoardChangeListener listener : myChangeListeners) {
+                listener.boardChanged(data);
             }
         }
-        notifyObservers(completeRows.toArray(new Integer[completeRows.size()]));
+        Object result = data;
+        if (myDeltaEvents) {
+            result = delta;
+        }
+        return result;
     }
-    
+
     /**
-     * Helper function to copy the board.
-     * 
-     * @return A new copy of the board.
+     * Sends cleared rows to the row clear listeners, each in its own array.
+     *
+     * @param theRows the cleared row indexes.
+     * @param theCount the number of cleared rows.
      */
-    private List<Block[]> getBoard() {
-        final List<Block[]> board = new ArrayList<Block[]>();
-        for (final Block[] row : myFrozenBlocks) {
-            board.add(row.clone());
+    private void fireRowsCleared(final int[] theRows, final int theCount) {
+        for (final RowsClearedListener listener : myClearListeners) {
+            listener.rowsCleared(Arrays.copyOf(theRows, theCount));
         }
-        return board;
     }
 
     /**
-     * Determines if a point is on the game board.
-     * 
-     * @param theBoard Board to test.
-     * @param thePoint Point to test.
-     * @return True if the point is on the board otherwise false.
+     * Boxes cleared row indexes for observers.
+     *
+     * @param theRows the cleared row indexes.
+     * @param theCount the number of cleared rows.
+     * @return the boxed indexes.
      */
-    private boolean isPointOnBoard(final List<Block[]> theBoard, final Point thePoint) {
-        return thePoint.x() >= 0 && thePoint.x() < myWidth && thePoint.y() >= 0
-               && thePoint.y() < theBoard.size();
+    private static Integer[] toIntegers(final int[] theRows, final int theCount) {
+        final Integer[] result = new Integer[theCount];
+        for (int i = 0; i < theCount; i++) {
+            result[i] = theRows[i];
+        }
+        return result;
     }
 
     /**
-     * Sets a block at a board point.
-     * 
-     * @param theBoard Board to set the point on.
-     * @param thePoint Board point.
-     * @param theBlock Block to set at board point.
+     * Unboxes cleared row indexes for listeners.
+     *
+     * @param theRows the boxed indexes.
+     * @return the indexes.
      */
-    private void setPoint(final List<Block[]> theBoard,
-                          final Point thePoint,
-                          final Block theBlock) {
-        
-        if (isPointOnBoard(theBoard, thePoint)) { 
-            final Block[] row = theBoard.get(thePoint.y());
-            row[thePoint.x()] = theBlock;
-        } else if (!myGameOver) {
-            myGameOver = true;
-            setChanged();
-            notifyObservers(myGameOver);
+    private static int[] toInts(final Integer[] theRows) {
+        final int[] result = new int[theRows.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = theRows[i];
         }
+        return result;
     }
 
     /**
-     * Returns the block at a specific board point.
-     * 
-     * @param thePoint the specific Point to check
-     * @return the Block type at point or null if no block exists.
+     * Sends a next piece to the next piece listeners.
+     *
+     * @param thePiece the next piece.
      */
-    private Block getPoint(final Point thePoint) {
-        Block b = null;
-        if (isPointOnBoard(myFrozenBlocks, thePoint)) {
-            b = myFrozenBlocks.get(thePoint.y())[thePoint.x()];
+    private void fireNextPiece(final TetrisPiece thePiece) {
+        for (final NextPieceListener listener : myPieceListeners) {
+            listener.nextPiece(thePiece);
         }
-        return b;
     }
 
     /**
-     * Helper function to determine of a movable block has collided with set
-     * blocks.
-     * 
-     * @param theTest movable TetrisPiece to test for collision.
-     * @return Returns true if any of the blocks has collided with a set board
-     *         block.
+     * Tells the game over listeners that the game ended.
      */
-    private boolean collision(final MovableTetrisPiece theTest) {
-        boolean res = false;
-        for (final Point p : theTest.getBoardPoints()) {
-            if (getPoint(p) != null) {
-                res = true;
-            }
+    private void fireGameOver() {
+        for (final GameOverListener listener : myGameOverListeners) {
+            listener.gameOver();
         }
-        return res;
     }
 
     /**
-     * Gets the next MovableTetrisPiece.
-     * 
-     * @param theRestart Restart the non random cycle.
-     * @return A new MovableTetrisPiece.
+     * Fills a row with the frozen blocks and the current piece blocks in it.
+     *
+     * @param theRow the row to fill.
+     * @param theY the row index, counted from the bottom.
      */
-    private MovableTetrisPiece nextMovablePiece(final boolean theRestart) {
-        
-        if (myNextPiece == null || theRestart) {
-            prepareNextMovablePiece();
+    private void fillRow(final Block[] theRow, final int theY) {
+        for (int x = 0; x < myWidth; x++) {
+            theRow[x] = null;
+            if (theY < myHeight) {
+                theRow[x] = myEngine.getGrid().get(x, theY);
+            }
         }
-        
-        final TetrisPiece next = myNextPiece;
-        
-        int startY = myHeight - 1;
-        if (myNextPiece == TetrisPiece.I) {
-            startY--; 
+        if (hasPiece()) {
+            final long piece = myEngine.getPiece();
+            for (int i = 0; i < PieceTable.BLOCKS; i++) {
+                final int x = PieceState.blockX(piece, i);
+                if (PieceState.blockY(piece, i) == theY && x >= 0 && x < myWidth) {
+                    theRow[x] = PieceState.piece(piece).getBlock();
+                }
+            }
         }
-        
-        prepareNextMovablePiece();
-        return new MovableTetrisPiece(
-                       next,
-                       new Point((myWidth - myNextPiece.getWidth()) / 2, startY));
     }
-    
+
     /**
-     * Prepares the Next movable piece for preview.
+     * Whether a row of a frame holds the given blocks.
+     *
+     * @param theFrame the frame.
+     * @param theY the row index.
+     * @param theRow the blocks.
+     * @return true if the row is the same.
      */
-    private void prepareNextMovablePiece() {
-        
-        final boolean share = myNextPiece != null;
-        if (myNonRandomPieces == null || myNonRandomPieces.isEmpty()) {
-            myNextPiece = TetrisPiece.getRandomPiece();
-        } else {
-            mySequenceIndex %= myNonRandomPieces.size();
-            myNextPiece = myNonRandomPieces.get(mySequenceIndex++);
+    private static boolean equalsRow(final BoardFrame theFrame, final int theY,
+                                     final Block[] theRow) {
+        boolean result = theY < theFrame.getRowCount();
+        for (int x = 0; result && x < theRow.length; x++) {
+            result = theFrame.getBlock(x, theY) == theRow[x];
         }
-        if (share && !myGameOver) {
-            setChanged();
-            notifyObservers(myNextPiece);
+        return result;
+    }
+
+    /**
+     * Adds the current piece into a list of board data.
+     *
+     * Allows a single data structure to represent the current piece
+     * and the frozen blocks.
+     *
+     * @param theFrozenBlocks Board to set the piece on.
+     */
+    private void addPieceToBoardData(final List<Block[]> theFrozenBlocks) {
+        final long piece = myEngine.getPiece();
+        final Block block = PieceState.piece(piece).getBlock();
+        for (int i = 0; i < PieceTable.BLOCKS; i++) {
+            setPoint(theFrozenBlocks, PieceState.blockX(piece, i), PieceState.blockY(piece, i),
+                     block);
         }
-    }    
+    }
+
+    /**
+     * Helper function to copy the board.
+     *
+     * @return A new copy of the board.
+     */
+    private List<Block[]> getBoard() {
+        final List<Block[]> board = new ArrayList<Block[]>(myHeight + HIDDEN_ROWS);
+        myEngine.getGrid().copyRows(board);
+        return board;
+    }
+
+    /**
+     * Determines if a point is on the game board.
+     *
+     * @param theBoard Board to test.
+     * @param theX X coordinate to test.
+     * @param theY Y coordinate to test.
+     * @return True if the point is on the board otherwise false.
+     */
+    private boolean isPointOnBoard(final List<Block[]> theBoard,
+                                   final int theX, final int theY) {
+        return theX >= 0 && theX < myWidth && theY >= 0 && theY < theBoard.size();
+    }
+
+    /**
+     * Sets a block at a board point. Points off the board are ignored.
+     *
+     * @param theBoard Board to set the point on.
+     * @param theX Board x coordinate.
+     * @param theY Board y coordinate.
+     * @param theBlock Block to set at board point.
+     */
+    private void setPoint(final List<Block[]> theBoard,
+                          final int theX, final int theY,
+                          final Block theBlock) {
+
+        if (isPointOnBoard(theBoard, theX, theY)) {
+            final Block[] row = theBoard.get(theY);
+            row[theX] = theBlock;
+        }
+    }
+
 
-    
     // Inner classes
 
     /**
@@ -542,7 +1101,7 @@ public class Board extends Observable {
      * The board data includes the current piece and the frozen blocks.
      */
     protected final class BoardData {
-        
+
         /**
          * The board data to pass to observers.
          */
@@ -553,18 +1112,17 @@ public class Board extends Observable {
          */
         protected BoardData() {
             myBoardData = getBoard();
-            myBoardData.add(new Block[myWidth]);
-            myBoardData.add(new Block[myWidth]);
-            myBoardData.add(new Block[myWidth]);
-            myBoardData.add(new Block[myWidth]);
-            if (myCurrentPiece != null) {
-                addPieceToBoardData(myBoardData, myCurrentPiece);
+            for (int h = 0; h < HIDDEN_ROWS; h++) {
+                myBoardData.add(new Block[myWidth]);
+            }
+            if (hasPiece()) {
+                addPieceToBoardData(myBoardData);
             }
         }
 
         /**
          * Copy and return the board's data.
-         * 
+         *
          * @return Copy of the Board Data.
          */
         protected List<Block[]> getBoardData() {
@@ -574,8 +1132,72 @@ public class Board extends Observable {
             }
             return board;
         }
-        
+
     } // end inner class BoardData
 
-    
+    /**
+     * Turns the events of the engine into notifications to registered Observers,
+     * in the order the events happen.
+     */
+    private final class EngineEvents implements EngineListener {
+
+        @Override
+        public void gameOver() {
+            if (myBatch != null) {
+                myBatch.gameOver();
+            } else if (!myQuiet) {
+                fireGameOver();
+                if (countObservers() > 0) {
+                    setChanged();
+                    notifyObservers(Boolean.TRUE);
+                }
+            }
+        }
+
+        @Override
+        public void pieceFrozen(final int theShape, final int theX, final int theY) {
+            if (isTrackingDeltas()) {
+                myDeltaTracker.pieceFrozen(theShape, theX, theY);
+            }
+        }
+
+        @Override
+        public void rowsCleared(final int[] theRows, final int theCount) {
+            if (!myQuiet) {
+                if (isTrackingDeltas()) {
+                    myDeltaTracker.rowsCleared(theRows, theCount);
+                }
+                if (myBatch != null) {
+                    myBatch.rowsCleared(toIntegers(theRows, theCount));
+                } else {
+                    fireRowsCleared(theRows, theCount);
+                    if (countObservers() > 0) {
+                        setChanged();
+                        notifyObservers(toIntegers(theRows, theCount));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void nextPiece(final TetrisPiece thePiece) {
+            if (myBatch != null) {
+                myBatch.nextPiece(thePiece);
+            } else if (!myQuiet) {
+                fireNextPiece(thePiece);
+                if (countObservers() > 0) {
+                    setChanged();
+                    notifyObservers(thePiece);
+                }
+            }
+        }
+
+        @Override
+        public void pieceSpawned() {
+            myDeltaTracker.pieceSpawned();
+        }
+
+    } // end inner class EngineEvents
+
+
 }
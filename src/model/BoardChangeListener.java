@@ -0,0 +1,28 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.List;
+
+/**
+ * Receives the board data of a Board each time it changes: the frozen rows
+ * followed by the hidden rows, bottom row first, with the current piece drawn in.
+ * The board data is only built while a BoardChangeListener is registered.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface BoardChangeListener {
+
+    /**
+     * Called after the board changes.
+     *
+     * @param theBoard the board data, shared by every listener; must not be modified.
+     */
+    void boardChanged(List<Block[]> theBoard);
+
+}
@@ -0,0 +1,230 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes how the board data changed since the previous notification.
+ *
+ * The board data is the same grid sent to observers as a List of Block rows:
+ * the frozen rows followed by the hidden rows, with the current piece drawn in.
+ * A delta is applied in three stages:
+ * - if it is a reset, every cell is emptied first;
+ * - each removed row is deleted in order and an empty row inserted at the top
+ *   of the playfield;
+ * - each changed cell is set to its new Block (null for empty).
+ *
+ * BoardDelta objects are immutable.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class BoardDelta {
+
+    /**
+     * The number of ints stored per changed cell.
+     */
+    private static final int CELL_FIELDS = 3;
+
+    /**
+     * The Block values indexed by ordinal.
+     */
+    private static final Block[] BLOCKS = Block.values();
+
+    /**
+     * The width of the board data.
+     */
+    private final int myWidth;
+
+    /**
+     * The number of frozen rows (the playfield height).
+     */
+    private final int myFieldHeight;
+
+    /**
+     * The total number of rows in the board data.
+     */
+    private final int myRows;
+
+    /**
+     * Whether the grid must be emptied before applying the changes.
+     */
+    private final boolean myReset;
+
+    /**
+     * Whether a new piece entered the board.
+     */
+    private final boolean mySpawn;
+
+    /**
+     * The rows to remove, in removal order.
+     */
+    private final int[] myRemovedRows;
+
+    /**
+     * The changed cells as (x, y, Block ordinal) triples; ordinal 0 is empty.
+     */
+    private final int[] myCells;
+
+    /**
+     * Constructs a board delta. The arrays are owned by the new object.
+     *
+     * @param theWidth the width of the board data.
+     * @param theFieldHeight the number of frozen rows.
+     * @param theRows the total number of rows in the board data.
+     * @param theReset whether the grid is emptied first.
+     * @param theSpawn whether a new piece entered the board.
+     * @param theRemovedRows the rows to remove in removal order.
+     * @param theCells the changed cells as (x, y, ordinal) triples.
+     */
+    BoardDelta(final int theWidth, final int theFieldHeight, final int theRows,
+               final boolean theReset, final boolean theSpawn,
+               final int[] theRemovedRows, final int[] theCells) {
+        myWidth = theWidth;
+        myFieldHeight = theFieldHeight;
+        myRows = theRows;
+        myReset = theReset;
+        mySpawn = theSpawn;
+        myRemovedRows = theRemovedRows;
+        myCells = theCells;
+    }
+
+    /**
+     * Whether every cell must be emptied before the changes are applied.
+     * Resets are sent for a new game and when delta notifications start.
+     *
+     * @return true if this delta is a reset.
+     */
+    public boolean isReset() {
+        return myReset;
+    }
+
+    /**
+     * Whether a new piece entered the board since the previous notification.
+     *
+     * @return true if a piece spawned.
+     */
+    public boolean isSpawn() {
+        return mySpawn;
+    }
+
+    /**
+     * Whether rows were cleared since the previous notification.
+     *
+     * @return true if any rows were removed.
+     */
+    public boolean isLineClear() {
+        return myRemovedRows.length > 0;
+    }
+
+    /**
+     * Returns the rows to remove, in the order they must be removed.
+     * After each removal an empty row is inserted at the top of the playfield.
+     *
+     * @return a copy of the removed row indexes.
+     */
+    public int[] getRemovedRows() {
+        return myRemovedRows.clone();
+    }
+
+    /**
+     * Returns the number of changed cells.
+     *
+     * @return the number of changed cells.
+     */
+    public int getChangeCount() {
+        return myCells.length / CELL_FIELDS;
+    }
+
+    /**
+     * Returns the column of a changed cell.
+     *
+     * @param theIndex the change index.
+     * @return the x coordinate of the cell.
+     */
+    public int getX(final int theIndex) {
+        return myCells[theIndex * CELL_FIELDS];
+    }
+
+    /**
+     * Returns the row of a changed cell.
+     *
+     * @param theIndex the change index.
+     * @return the y coordinate of the cell.
+     */
+    public int getY(final int theIndex) {
+        return myCells[theIndex * CELL_FIELDS + 1];
+    }
+
+    /**
+     * Returns the new contents of a changed cell.
+     *
+     * @param theIndex the change index.
+     * @return the Block now in the cell or null if the cell became empty.
+     */
+    public Block getBlock(final int theIndex) {
+        final int ordinal = myCells[theIndex * CELL_FIELDS + 2];
+        Block result = null;
+        if (ordinal != 0) {
+            result = BLOCKS[ordinal];
+        }
+        return result;
+    }
+
+    /**
+     * Applies this delta to a copy of the board data held by an observer.
+     * A reset replaces the contents of the list with empty rows of the right size.
+     *
+     * @param theBoardData the board data to update.
+     */
+    public void applyTo(final List<Block[]> theBoardData) {
+        if (myReset) {
+            theBoardData.clear();
+            for (int y = 0; y < myRows; y++) {
+                theBoardData.add(new Block[myWidth]);
+            }
+        }
+        for (final int row : myRemovedRows) {
+            theBoardData.remove(row);
+            theBoardData.add(myFieldHeight - 1, new Block[myWidth]);
+        }
+        for (int i = 0; i < getChangeCount(); i++) {
+            theBoardData.get(getY(i))[getX(i)] = getBlock(i);
+        }
+    }
+
+    /**
+     * Builds a new copy of the board data from a reset delta.
+     *
+     * @return the board data described by this reset.
+     * @throws IllegalStateException if this delta is not a reset.
+     */
+    public List<Block[]> toBoardData() {
+        if (!myReset) {
+            throw new IllegalStateException("Only a reset describes the whole board");
+        }
+        final List<Block[]> result = new ArrayList<Block[]>(myRows);
+        applyTo(result);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BoardDelta[");
+        if (myReset) {
+            sb.append("reset, ");
+        }
+        if (mySpawn) {
+            sb.append("spawn, ");
+        }
+        sb.append("removed=").append(myRemovedRows.length);
+        sb.append(", changed=").append(getChangeCount()).append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Receives the changes of a Board as BoardDelta objects listing only the cells
+ * that changed since the previous delta. The first delta after the listener is
+ * registered is a reset describing the whole board. Deltas are only tracked
+ * while a BoardDeltaListener is registered.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface BoardDeltaListener {
+
+    /**
+     * Called after the board changes.
+     *
+     * @param theDelta the changes since the previous delta.
+     */
+    void boardChanged(BoardDelta theDelta);
+
+}
@@ -0,0 +1,187 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * An immutable picture of a game at one moment, for drawing on a thread that
+ * does not own the Board: the blocks including the current piece, the next
+ * piece, the score and the game over state.
+ *
+ * Consecutive frames of a board share the rows that did not change between
+ * them, so a frame costs only the changed rows, and isSameRow() tells a reader
+ * which rows it need not draw again.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class BoardFrame {
+
+    /**
+     * The rows from the bottom up, including the hidden rows above the board;
+     * never modified once the frame is built.
+     */
+    private final Block[][] myRows;
+
+    /**
+     * The next piece, or null before the first game.
+     */
+    private final TetrisPiece myNextPiece;
+
+    /**
+     * The score.
+     */
+    private final long myScore;
+
+    /**
+     * The rows cleared.
+     */
+    private final long myLinesCleared;
+
+    /**
+     * The level.
+     */
+    private final int myLevel;
+
+    /**
+     * The rows left to clear for the next level.
+     */
+    private final int myLinesToNextLevel;
+
+    /**
+     * The game over state.
+     */
+    private final boolean myGameOver;
+
+    /**
+     * Constructs a frame.
+     *
+     * @param theRows the rows; kept, not copied.
+     * @param theNextPiece the next piece.
+     * @param theScore the score.
+     * @param theLinesCleared the rows cleared.
+     * @param theLevel the level.
+     * @param theLinesToNextLevel the rows left to clear for the next level.
+     * @param theGameOver the game over state.
+     */
+    BoardFrame(final Block[][] theRows, final TetrisPiece theNextPiece, final long theScore,
+               final long theLinesCleared, final int theLevel,
+               final int theLinesToNextLevel, final boolean theGameOver) {
+        myRows = theRows;
+        myNextPiece = theNextPiece;
+        myScore = theScore;
+        myLinesCleared = theLinesCleared;
+        myLevel = theLevel;
+        myLinesToNextLevel = theLinesToNextLevel;
+        myGameOver = theGameOver;
+    }
+
+    /**
+     * Returns the width of the board.
+     *
+     * @return the number of columns.
+     */
+    public int getWidth() {
+        return myRows[0].length;
+    }
+
+    /**
+     * Returns the number of rows, including the hidden rows above the board.
+     *
+     * @return the number of rows.
+     */
+    public int getRowCount() {
+        return myRows.length;
+    }
+
+    /**
+     * Returns the block at a cell.
+     *
+     * @param theX the column.
+     * @param theY the row, counted from the bottom.
+     * @return the block, or null if the cell is empty.
+     */
+    public Block getBlock(final int theX, final int theY) {
+        return myRows[theY][theX];
+    }
+
+    /**
+     * Returns a row, for sharing it with the next frame of the board.
+     *
+     * @param theY the row.
+     * @return the row array; not to be modified.
+     */
+    Block[] getRow(final int theY) {
+        return myRows[theY];
+    }
+
+    /**
+     * Whether a row is known to be the same in another frame of the same board.
+     * A false result means only that the row may have changed.
+     *
+     * @param theOther the other frame, or null.
+     * @param theY the row.
+     * @return true if the row is shared with the other frame.
+     */
+    public boolean isSameRow(final BoardFrame theOther, final int theY) {
+        return theOther != null && theY < theOther.myRows.length
+               && theOther.myRows[theY] == myRows[theY];
+    }
+
+    /**
+     * Returns the next piece.
+     *
+     * @return the next piece, or null before the first game.
+     */
+    public TetrisPiece getNextPiece() {
+        return myNextPiece;
+    }
+
+    /**
+     * Returns the score.
+     *
+     * @return the score.
+     */
+    public long getScore() {
+        return myScore;
+    }
+
+    /**
+     * Returns the number of rows cleared.
+     *
+     * @return the lines cleared.
+     */
+    public long getLinesCleared() {
+        return myLinesCleared;
+    }
+
+    /**
+     * Returns the level.
+     *
+     * @return the level.
+     */
+    public int getLevel() {
+        return myLevel;
+    }
+
+    /**
+     * Returns the number of rows left to clear for the next level.
+     *
+     * @return the lines to the next level.
+     */
+    public int getLinesToNextLevel() {
+        return myLinesToNextLevel;
+    }
+
+    /**
+     * Whether the game is over.
+     *
+     * @return true once the game has ended.
+     */
+    public boolean isGameOver() {
+        return myGameOver;
+    }
+}
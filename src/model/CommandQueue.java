@@ -0,0 +1,288 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of inputs for a Board, filled by any number of threads
+ * (network clients, bots, the Swing thread) and drained by the single game
+ * thread that owns the board, once per tick.
+ *
+ * The queue is a ring of slots, each with a sequence number telling whose turn
+ * it is. A producer claims a slot by advancing the tail with a compare and set,
+ * fills it and publishes it by advancing the slot sequence; the consumer reads
+ * slots in order while their sequence says they are filled. No thread ever
+ * blocks or takes a lock, and a full queue rejects the input instead of
+ * waiting for room.
+ *
+ * The queue keeps metrics for monitoring: the depth found at each drain, the
+ * inputs rejected, and the time inputs wait between offer() and the drain.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class CommandQueue {
+
+    /**
+     * The largest capacity; the ring size is a power of two.
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The inputs in the slots.
+     */
+    private final Action[] myActions;
+
+    /**
+     * The System.nanoTime() at which each input was offered.
+     */
+    private final long[] myTimes;
+
+    /**
+     * The sequence number of each slot: equal to the position a producer may
+     * fill it at, or one more once it is filled for the consumer.
+     */
+    private final AtomicLongArray mySequences;
+
+    /**
+     * The mask turning a position into a slot index.
+     */
+    private final int myMask;
+
+    /**
+     * The position of the next slot to fill.
+     */
+    private final AtomicLong myTail;
+
+    /**
+     * The number of inputs rejected because the queue was full.
+     */
+    private final AtomicLong myRejected;
+
+    /**
+     * The position of the next slot to drain; written only by the consumer.
+     */
+    private volatile long myHead;
+
+    /**
+     * The number of inputs drained; written only by the consumer.
+     */
+    private volatile long myDrained;
+
+    /**
+     * The greatest depth found at a drain; written only by the consumer.
+     */
+    private volatile int myMaxDepth;
+
+    /**
+     * The total wait of the drained inputs in nanoseconds; written only by the consumer.
+     */
+    private volatile long myTotalLatency;
+
+    /**
+     * The longest wait of a drained input in nanoseconds; written only by the consumer.
+     */
+    private volatile long myMaxLatency;
+
+    /**
+     * Constructs an empty queue.
+     *
+     * @param theCapacity the number of inputs the queue holds, rounded up to a
+     *        power of two.
+     * @throws IllegalArgumentException if the capacity is not positive or is
+     *         greater than MAX_CAPACITY.
+     */
+    public CommandQueue(final int theCapacity) {
+        if (theCapacity < 1 || theCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and "
+                                               + MAX_CAPACITY + ": " + theCapacity);
+        }
+        final int size = Integer.highestOneBit(theCapacity - 1) << 1;
+        final int capacity = Math.max(1, size);
+        myActions = new Action[capacity];
+        myTimes = new long[capacity];
+        mySequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mySequences.set(i, i);
+        }
+        myMask = capacity - 1;
+        myTail = new AtomicLong();
+        myRejected = new AtomicLong();
+    }
+
+    /**
+     * Adds an input to the queue. Safe to call from any thread.
+     *
+     * @param theAction the input.
+     * @return true if the input was queued, false if the queue was full.
+     * @throws NullPointerException if the input is null.
+     */
+    public boolean offer(final Action theAction) {
+        if (theAction == null) {
+            throw new NullPointerException("The input is null");
+        }
+        final long time = System.nanoTime();
+        long position = myTail.get();
+        boolean claimed = false;
+        boolean full = false;
+        while (!claimed && !full) {
+            final long gap = mySequences.get((int) position & myMask) - position;
+            if (gap == 0) {
+                claimed = myTail.compareAndSet(position, position + 1);
+            } else {
+                full = gap < 0;
+            }
+            if (!claimed && !full) {
+                position = myTail.get();
+            }
+        }
+        if (claimed) {
+            final int index = (int) position & myMask;
+            myActions[index] = theAction;
+            myTimes[index] = time;
+            // publishes the slot contents to the consumer
+            mySequences.lazySet(index, position + 1);
+        } else {
+            myRejected.incrementAndGet();
+        }
+        return claimed;
+    }
+
+    /**
+     * Removes every input queued so far and applies them to a board as one
+     * batch with Board.apply(). Must only be called by the game thread that
+     * owns the board.
+     *
+     * @param theBoard the board.
+     * @return the number of inputs applied.
+     */
+    public int drainTo(final Board theBoard) {
+        final Action[] actions = drain();
+        if (actions.length > 0) {
+            theBoard.apply(actions);
+        }
+        return actions.length;
+    }
+
+    /**
+     * Removes every input queued so far. Must only be called by the single
+     * consumer thread.
+     *
+     * @return the inputs in the order they were queued; empty if there were none.
+     */
+    public Action[] drain() {
+        final long head = myHead;
+        final int depth = (int) Math.min(myTail.get() - head, myMask + 1);
+        // read after the tail, so every input counted was offered before now
+        final long now = System.nanoTime();
+        Action[] result = new Action[depth];
+        long total = 0;
+        long max = myMaxLatency;
+        int count = 0;
+        while (count < depth && mySequences.get((int) (head + count) & myMask)
+                                == head + count + 1) {
+            final int index = (int) (head + count) & myMask;
+            result[count] = myActions[index];
+            myActions[index] = null;
+            final long latency = now - myTimes[index];
+            total += latency;
+            max = Math.max(max, latency);
+            // hands the slot back to the producers for the next lap
+            mySequences.lazySet(index, head + count + myMask + 1);
+            count++;
+        }
+        myHead = head + count;
+        myDrained += count;
+        myTotalLatency += total;
+        myMaxLatency = max;
+        myMaxDepth = Math.max(myMaxDepth, count);
+        if (count < depth) {
+            // a claimed slot is still being filled; it is drained next time
+            result = Arrays.copyOf(result, count);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of inputs the queue holds.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return myMask + 1;
+    }
+
+    /**
+     * Returns the number of inputs waiting. The value is a snapshot and may be
+     * out of date by the time it is read.
+     *
+     * @return the queue depth.
+     */
+    public int getDepth() {
+        return (int) Math.max(0, Math.min(myTail.get() - myHead, myMask + 1));
+    }
+
+    /**
+     * Returns the greatest number of inputs found waiting at a drain.
+     *
+     * @return the maximum depth.
+     */
+    public int getMaxDepth() {
+        return myMaxDepth;
+    }
+
+    /**
+     * Returns the number of inputs drained so far.
+     *
+     * @return the inputs drained.
+     */
+    public long getDrainedCount() {
+        return myDrained;
+    }
+
+    /**
+     * Returns the number of inputs rejected because the queue was full.
+     *
+     * @return the inputs rejected.
+     */
+    public long getRejectedCount() {
+        return myRejected.get();
+    }
+
+    /**
+     * Returns the average time the drained inputs waited in the queue.
+     *
+     * @return the average latency in nanoseconds, or 0 if none were drained.
+     */
+    public long getAverageLatency() {
+        long result = 0;
+        final long drained = myDrained;
+        if (drained > 0) {
+            result = myTotalLatency / drained;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the longest time a drained input waited in the queue.
+     *
+     * @return the maximum latency in nanoseconds.
+     */
+    public long getMaxLatency() {
+        return myMaxLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandQueue: depth " + getDepth() + "/" + getCapacity() + ", max depth "
+               + myMaxDepth + ", drained " + myDrained + ", rejected "
+               + myRejected.get() + ", average latency " + getAverageLatency() + " ns";
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the board data last published to observers and produces BoardDelta
+ * events describing what changed since.
+ *
+ * Once cleared rows have been shifted out of the published grid, it can only
+ * differ from the current state in cells covered by the previously published
+ * piece, by pieces frozen since, or by the current piece. Those cells are kept
+ * in a dirty list, moved along with the rows when lines clear, so building a
+ * delta only inspects them.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+final class DeltaTracker {
+
+    /**
+     * The number of ints recorded per changed cell.
+     */
+    private static final int CELL_FIELDS = 3;
+
+    /**
+     * The initial capacity of the removed rows buffer.
+     */
+    private static final int INITIAL_REMOVED = 4;
+
+    /**
+     * The initial capacity of the dirty cell buffer, in ints.
+     */
+    private static final int INITIAL_DIRTY = 32;
+
+    /**
+     * Width of the board data.
+     */
+    private final int myWidth;
+
+    /**
+     * The number of frozen rows.
+     */
+    private final int myFieldHeight;
+
+    /**
+     * The total number of rows in the board data.
+     */
+    private final int myRows;
+
+    /**
+     * The published board data, one entry per cell, bottom row first;
+     * null until the first delta is built.
+     */
+    private Block[] myShown;
+
+    /**
+     * Scratch buffer for the changed cells of the delta being built;
+     * null until the first delta is built.
+     */
+    private int[] myCells;
+
+    /**
+     * Cells that may differ from the published grid as (x, y) pairs;
+     * x is -1 for cells whose row has since been cleared.
+     */
+    private int[] myDirty;
+
+    /**
+     * The number of ints used in myDirty.
+     */
+    private int myDirtyCount;
+
+    /**
+     * Rows removed since the last published delta, in removal order.
+     */
+    private int[] myRemoved;
+
+    /**
+     * The number of entries in myRemoved.
+     */
+    private int myRemovedCount;
+
+    /**
+     * Whether the next delta must be a reset.
+     */
+    private boolean myReset;
+
+    /**
+     * Whether a piece spawned since the last published delta.
+     */
+    private boolean mySpawn;
+
+    /**
+     * Constructs a tracker for board data of the given size.
+     *
+     * @param theWidth the width of the board.
+     * @param theFieldHeight the number of frozen rows.
+     * @param theRows the total number of rows in the board data.
+     */
+    DeltaTracker(final int theWidth, final int theFieldHeight, final int theRows) {
+        myWidth = theWidth;
+        myFieldHeight = theFieldHeight;
+        myRows = theRows;
+        myRemoved = new int[INITIAL_REMOVED];
+        myDirty = new int[INITIAL_DIRTY];
+        myReset = true;
+    }
+
+    /**
+     * Requests that the next delta describe the whole board.
+     */
+    void reset() {
+        myReset = true;
+    }
+
+    /**
+     * Records that a piece entered the board.
+     */
+    void pieceSpawned() {
+        mySpawn = true;
+    }
+
+    /**
+     * Records that a piece was frozen into the board, possibly at a position
+     * that was never published.
+     *
+     * @param theShape the shape of the frozen piece.
+     * @param theX the x position of the frozen piece.
+     * @param theY the y position of the frozen piece.
+     */
+    void pieceFrozen(final int theShape, final int theX, final int theY) {
+        addPiece(theShape, theX, theY);
+    }
+
+    /**
+     * Records cleared rows and shifts the published grid and dirty cells to match.
+     *
+     * @param theRows the cleared row indexes in ascending order.
+     * @param theCount the number of cleared rows.
+     */
+    void rowsCleared(final int[] theRows, final int theCount) {
+        if (myRemovedCount + theCount > myRemoved.length) {
+            myRemoved = Arrays.copyOf(myRemoved,
+                                      Math.max(myRemoved.length * 2,
+                                               myRemovedCount + theCount));
+        }
+        // remove from the highest row down so every index stays valid
+        for (int i = theCount - 1; i >= 0; i--) {
+            final int row = theRows[i];
+            myRemoved[myRemovedCount++] = row;
+            if (myShown != null) {
+                System.arraycopy(myShown, (row + 1) * myWidth, myShown, row * myWidth,
+                                 (myFieldHeight - row - 1) * myWidth);
+                Arrays.fill(myShown, (myFieldHeight - 1) * myWidth,
+                            myFieldHeight * myWidth, null);
+            }
+            for (int d = 0; d < myDirtyCount; d += 2) {
+                final int y = myDirty[d + 1];
+                if (y == row) {
+                    myDirty[d] = -1;
+                } else if (y > row && y < myFieldHeight) {
+                    myDirty[d + 1] = y - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the delta between the published board data and the current state,
+     * then records the current state as published.
+     *
+     * @param theGrid the frozen blocks.
+     * @param theShape the shape of the current piece, or -1 if there is none.
+     * @param theX the x position of the current piece.
+     * @param theY the y position of the current piece.
+     * @return the delta to publish.
+     */
+    BoardDelta publish(final BitBoard theGrid, final int theShape,
+                       final int theX, final int theY) {
+        final boolean reset = myReset;
+        int count = 0;
+        if (myShown == null) {
+            // allocated on first use so boards that never publish deltas stay small
+            myShown = new Block[myWidth * myRows];
+            myCells = new int[myWidth * myRows * CELL_FIELDS];
+        }
+        if (reset) {
+            Arrays.fill(myShown, null);
+            myRemovedCount = 0;
+            for (int row = 0; row < myRows; row++) {
+                for (int col = 0; col < myWidth; col++) {
+                    count = check(theGrid, theShape, theX, theY, col, row, count);
+                }
+            }
+        } else {
+            for (int d = 0; d < myDirtyCount; d += 2) {
+                count = check(theGrid, theShape, theX, theY, myDirty[d], myDirty[d + 1],
+                              count);
+            }
+            if (theShape >= 0) {
+                for (int i = 0; i < PieceTable.BLOCKS; i++) {
+                    count = check(theGrid, theShape, theX, theY,
+                                  theX + PieceTable.blockX(theShape, i),
+                                  theY + PieceTable.blockY(theShape, i), count);
+                }
+            }
+        }
+        final BoardDelta delta = new BoardDelta(myWidth, myFieldHeight, myRows, reset,
+                                                mySpawn,
+                                                Arrays.copyOf(myRemoved, myRemovedCount),
+                                                Arrays.copyOf(myCells, count));
+        myDirtyCount = 0;
+        if (theShape >= 0) {
+            addPiece(theShape, theX, theY);
+        }
+        myRemovedCount = 0;
+        myReset = false;
+        mySpawn = false;
+        return delta;
+    }
+
+    /**
+     * Adds the cells of a piece to the dirty list.
+     *
+     * @param theShape the shape of the piece.
+     * @param theX the x position of the piece.
+     * @param theY the y position of the piece.
+     */
+    private void addPiece(final int theShape, final int theX, final int theY) {
+        if (myDirtyCount + 2 * PieceTable.BLOCKS > myDirty.length) {
+            myDirty = Arrays.copyOf(myDirty, myDirty.length * 2);
+        }
+        for (int i = 0; i < PieceTable.BLOCKS; i++) {
+            myDirty[myDirtyCount++] = theX + PieceTable.blockX(theShape, i);
+            myDirty[myDirtyCount++] = theY + PieceTable.blockY(theShape, i);
+        }
+    }
+
+    /**
+     * Compares one cell of the published grid with the current state and records
+     * a change if they differ.
+     *
+     * @param theGrid the frozen blocks.
+     * @param theShape the shape of the current piece, or -1 for none.
+     * @param thePieceX the x position of the current piece.
+     * @param thePieceY the y position of the current piece.
+     * @param theX the column of the cell.
+     * @param theY the row of the cell.
+     * @param theCount the number of changes recorded so far.
+     * @return the new number of changes recorded.
+     */
+    private int check(final BitBoard theGrid, final int theShape,
+                      final int thePieceX, final int thePieceY,
+                      final int theX, final int theY, final int theCount) {
+        int count = theCount;
+        if (theX >= 0 && theX < myWidth && theY >= 0 && theY < myRows) {
+            Block actual = null;
+            if (theShape >= 0 && covers(theShape, thePieceX, thePieceY, theX, theY)) {
+                actual = PieceTable.piece(theShape).getBlock();
+            } else if (theY < myFieldHeight) {
+                actual = theGrid.get(theX, theY);
+            }
+            final int index = theY * myWidth + theX;
+            if (myShown[index] != actual) {
+                myShown[index] = actual;
+                myCells[count++] = theX;
+                myCells[count++] = theY;
+                if (actual == null) {
+                    myCells[count++] = 0;
+                } else {
+                    myCells[count++] = actual.ordinal();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tests whether a piece covers a cell.
+     *
+     * @param theShape the shape of the piece.
+     * @param thePieceX the x position of the piece.
+     * @param thePieceY the y position of the piece.
+     * @param theX the column of the cell.
+     * @param theY the row of the cell.
+     * @return true if one of the piece blocks is in the cell.
+     */
+    private static boolean covers(final int theShape, final int thePieceX,
+                                  final int thePieceY, final int theX, final int theY) {
+        boolean result = false;
+        for (int i = 0; i < PieceTable.BLOCKS && !result; i++) {
+            result = thePieceX + PieceTable.blockX(theShape, i) == theX
+                     && thePieceY + PieceTable.blockY(theShape, i) == theY;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Receives the events of a TetrisEngine at the moment they happen.
+ * Board uses this to notify its observers in the original order;
+ * headless engines run without a listener.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+interface EngineListener {
+
+    /**
+     * Called when a frozen piece ends the game.
+     */
+    void gameOver();
+
+    /**
+     * Called after a piece has been frozen into the board, before rows are checked.
+     *
+     * @param theShape the PieceTable shape of the frozen piece.
+     * @param theX the x position of the frozen piece.
+     * @param theY the y position of the frozen piece.
+     */
+    void pieceFrozen(int theShape, int theX, int theY);
+
+    /**
+     * Called after complete rows have been removed.
+     *
+     * @param theRows the original indexes of the cleared rows in ascending order.
+     * @param theCount the number of cleared rows.
+     */
+    void rowsCleared(int[] theRows, int theCount);
+
+    /**
+     * Called when a new next piece is ready for preview.
+     *
+     * @param thePiece the next piece.
+     */
+    void nextPiece(TetrisPiece thePiece);
+
+    /**
+     * Called when a new current piece enters the board.
+     */
+    void pieceSpawned();
+
+}
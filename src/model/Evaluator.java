@@ -0,0 +1,162 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Scores a board position by a weighted sum of features.
+ *
+ * The features are:
+ * - holes: empty cells with a block somewhere above them;
+ * - aggregate height: the sum of the column heights;
+ * - bumpiness: the sum of height differences between neighbouring columns;
+ * - wells: the total depth of columns lower than both neighbours
+ *   (the walls count as infinitely high);
+ * - cleared rows: the rows cleared on the way to the position.
+ * Higher scores are better. Evaluators are immutable and may be shared
+ * between threads.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class Evaluator {
+
+    /**
+     * The default weight of holes.
+     */
+    private static final double DEFAULT_HOLES = -0.35663;
+
+    /**
+     * The default weight of aggregate height.
+     */
+    private static final double DEFAULT_HEIGHT = -0.510066;
+
+    /**
+     * The default weight of bumpiness.
+     */
+    private static final double DEFAULT_BUMPINESS = -0.184483;
+
+    /**
+     * The default weight of wells.
+     */
+    private static final double DEFAULT_WELLS = -0.1;
+
+    /**
+     * The default weight of cleared rows.
+     */
+    private static final double DEFAULT_LINES = 0.760666;
+
+    /**
+     * An evaluator with weights that play a solid game.
+     */
+    public static final Evaluator DEFAULT = new Evaluator(DEFAULT_HOLES, DEFAULT_HEIGHT,
+                                                          DEFAULT_BUMPINESS, DEFAULT_WELLS,
+                                                          DEFAULT_LINES);
+
+    /**
+     * The weight of holes.
+     */
+    private final double myHoles;
+
+    /**
+     * The weight of aggregate height.
+     */
+    private final double myHeight;
+
+    /**
+     * The weight of bumpiness.
+     */
+    private final double myBumpiness;
+
+    /**
+     * The weight of wells.
+     */
+    private final double myWells;
+
+    /**
+     * The weight of cleared rows.
+     */
+    private final double myLines;
+
+    /**
+     * Constructs an evaluator.
+     *
+     * @param theHoles the weight of holes.
+     * @param theHeight the weight of aggregate height.
+     * @param theBumpiness the weight of bumpiness.
+     * @param theWells the weight of wells.
+     * @param theLines the weight of cleared rows.
+     */
+    public Evaluator(final double theHoles, final double theHeight,
+                     final double theBumpiness, final double theWells,
+                     final double theLines) {
+        myHoles = theHoles;
+        myHeight = theHeight;
+        myBumpiness = theBumpiness;
+        myWells = theWells;
+        myLines = theLines;
+    }
+
+    /**
+     * Scores the board of an engine.
+     *
+     * @param theEngine the game to score.
+     * @return the score of the frozen blocks; higher is better.
+     */
+    public double evaluate(final TetrisEngine theEngine) {
+        return evaluate(theEngine.getGrid(), 0);
+    }
+
+    /**
+     * Scores a board position.
+     *
+     * @param theGrid the frozen blocks.
+     * @param theLines the rows cleared on the way to the position.
+     * @return the score; higher is better.
+     */
+    double evaluate(final BitBoard theGrid, final int theLines) {
+        final int width = theGrid.getWidth();
+        int aggregate = 0;
+        int bumpiness = 0;
+        int wells = 0;
+        for (int x = 0; x < width; x++) {
+            final int height = theGrid.getColumnHeight(x);
+            aggregate += height;
+            int left = Integer.MAX_VALUE;
+            if (x > 0) {
+                left = theGrid.getColumnHeight(x - 1);
+                bumpiness += Math.abs(height - left);
+            }
+            int right = Integer.MAX_VALUE;
+            if (x < width - 1) {
+                right = theGrid.getColumnHeight(x + 1);
+            }
+            final int depth = Math.min(left, right) - height;
+            if (depth > 0 && depth < Integer.MAX_VALUE - height) {
+                wells += depth;
+            }
+        }
+        return myHoles * holes(theGrid) + myHeight * aggregate + myBumpiness * bumpiness
+               + myWells * wells + myLines * theLines;
+    }
+
+    /**
+     * Counts the empty cells that have a block above them.
+     *
+     * @param theGrid the frozen blocks.
+     * @return the number of holes.
+     */
+    private static int holes(final BitBoard theGrid) {
+        int result = 0;
+        long covered = 0L;
+        for (int y = theGrid.getHeight() - 1; y >= 0; y--) {
+            final long row = theGrid.getRow(y);
+            result += Long.bitCount(covered & ~row);
+            covered |= row;
+        }
+        return result;
+    }
+}
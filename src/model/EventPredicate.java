@@ -0,0 +1,30 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * A condition on the events of a stored game, checked by re-simulating the game.
+ * A ResultStore query uses one when the columns it stores cannot answer a
+ * question, such as whether a four row clear happened above a certain level.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface EventPredicate {
+
+    /**
+     * Receives one event of a re-simulated game. The events are the ones Board
+     * sends its observers, other than board data: an Integer[] of cleared rows,
+     * the next TetrisPiece, and Boolean.TRUE when the game ends.
+     *
+     * @param theEngine the game, in its state just after the event.
+     * @param theEvent the event.
+     * @return true once the game is known to match; re-simulation then stops.
+     */
+    boolean matches(TetrisEngine theEngine, Object theEvent);
+
+}
@@ -0,0 +1,22 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Receives the end of the games of a Board.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface GameOverListener {
+
+    /**
+     * Called when a frozen piece ends the game.
+     */
+    void gameOver();
+
+}
@@ -0,0 +1,123 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Passes the newest of a stream of immutable values from one writer thread,
+ * such as a game thread publishing BoardFrames, to reader threads such as the
+ * Swing thread, without either side ever blocking.
+ *
+ * The writer replaces the current value with publish(); readers get the newest
+ * value with peek() whenever they like, so values published between two reads
+ * are skipped rather than queued. To save waking the readers for every value,
+ * publish() reports whether the readers have taken the previous one: only then
+ * does the writer need to wake them, and a reader calls take() when it wakes.
+ *
+ * @param <T> the type of the values; they must not change once published.
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class Handoff<T> {
+
+    /**
+     * The newest value, or null before the first.
+     */
+    private final AtomicReference<T> myLatest;
+
+    /**
+     * Whether a value was published since the readers last took one.
+     */
+    private final AtomicBoolean myUntaken;
+
+    /**
+     * The number of values published; written only by the writer.
+     */
+    private volatile long myPublished;
+
+    /**
+     * The number of values published while the previous one was still untaken;
+     * written only by the writer.
+     */
+    private volatile long myCoalesced;
+
+    /**
+     * Constructs an empty handoff.
+     */
+    public Handoff() {
+        myLatest = new AtomicReference<T>();
+        myUntaken = new AtomicBoolean();
+    }
+
+    /**
+     * Makes a value the newest. Must only be called by the single writer thread.
+     *
+     * @param theValue the value.
+     * @return true if the readers had taken the previous value, so they must be
+     *         woken to take this one; false if they are already due to wake.
+     * @throws NullPointerException if the value is null.
+     */
+    public boolean publish(final T theValue) {
+        if (theValue == null) {
+            throw new NullPointerException("The value is null");
+        }
+        myLatest.set(theValue);
+        myPublished++;
+        final boolean result = myUntaken.compareAndSet(false, true);
+        if (!result) {
+            myCoalesced++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the newest value and marks it taken, so the next publish() asks
+     * for the readers to be woken again.
+     *
+     * @return the newest value, or null if none was published.
+     */
+    public T take() {
+        // cleared first, so a value published meanwhile is never left unannounced
+        myUntaken.set(false);
+        return myLatest.get();
+    }
+
+    /**
+     * Returns the newest value without marking it taken.
+     *
+     * @return the newest value, or null if none was published.
+     */
+    public T peek() {
+        return myLatest.get();
+    }
+
+    /**
+     * Returns the number of values published.
+     *
+     * @return the values published.
+     */
+    public long getPublishedCount() {
+        return myPublished;
+    }
+
+    /**
+     * Returns the number of values published before the readers took the
+     * previous one; each needed no wake up of its own.
+     *
+     * @return the values coalesced.
+     */
+    public long getCoalescedCount() {
+        return myCoalesced;
+    }
+
+    @Override
+    public String toString() {
+        return "Handoff: " + myPublished + " published, " + myCoalesced + " coalesced";
+    }
+}
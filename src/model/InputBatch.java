@@ -0,0 +1,176 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The single notification sent to observers after Board.apply() runs a
+ * sequence of inputs. It carries what the individual notifications of those
+ * inputs would have carried, combined:
+ * - the board data after the last input, as a List of Block rows or, when delta
+ *   events are on, a BoardDelta covering every change made by the inputs;
+ * - the rows cleared by each frozen piece, in order;
+ * - the next pieces dealt, in order;
+ * - whether the game ended.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class InputBatch {
+
+    /**
+     * The number of inputs applied.
+     */
+    private final int myInputs;
+
+    /**
+     * The rows cleared by each frozen piece, in order.
+     */
+    private final List<Integer[]> myClears;
+
+    /**
+     * The next pieces dealt, in order.
+     */
+    private final List<TetrisPiece> myPieces;
+
+    /**
+     * The board data or BoardDelta after the last input.
+     */
+    private Object myBoard;
+
+    /**
+     * Whether the game ended.
+     */
+    private boolean myGameOver;
+
+    /**
+     * Constructs an empty batch.
+     *
+     * @param theInputs the number of inputs applied.
+     */
+    InputBatch(final int theInputs) {
+        myInputs = theInputs;
+        myClears = new ArrayList<Integer[]>(0);
+        myPieces = new ArrayList<TetrisPiece>(0);
+    }
+
+    /**
+     * Returns the number of inputs applied.
+     *
+     * @return the number of inputs.
+     */
+    public int getInputCount() {
+        return myInputs;
+    }
+
+    /**
+     * Returns the board after the last input, in the form a single input
+     * notification would have carried it.
+     *
+     * @return a List of Block rows, or a BoardDelta when delta events are on.
+     */
+    public Object getBoard() {
+        return myBoard;
+    }
+
+    /**
+     * Returns the rows cleared by each frozen piece, in order; each entry is
+     * the payload a single row clear notification would have carried.
+     *
+     * @return an unmodifiable list of cleared row indexes, empty if no rows were cleared.
+     */
+    public List<Integer[]> getClears() {
+        return Collections.unmodifiableList(myClears);
+    }
+
+    /**
+     * Returns the total number of rows cleared.
+     *
+     * @return the rows cleared.
+     */
+    public int getLinesCleared() {
+        int result = 0;
+        for (final Integer[] rows : myClears) {
+            result += rows.length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next pieces dealt, in order.
+     *
+     * @return an unmodifiable list of pieces, empty if no piece was dealt.
+     */
+    public List<TetrisPiece> getPieces() {
+        return Collections.unmodifiableList(myPieces);
+    }
+
+    /**
+     * Returns the last next piece dealt.
+     *
+     * @return the piece, or null if no piece was dealt.
+     */
+    public TetrisPiece getNextPiece() {
+        TetrisPiece result = null;
+        if (!myPieces.isEmpty()) {
+            result = myPieces.get(myPieces.size() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Whether one of the inputs ended the game.
+     *
+     * @return true if the game ended.
+     */
+    public boolean isGameOver() {
+        return myGameOver;
+    }
+
+    /**
+     * Records cleared rows.
+     *
+     * @param theRows the cleared row indexes.
+     */
+    void rowsCleared(final Integer[] theRows) {
+        myClears.add(theRows);
+    }
+
+    /**
+     * Records a next piece.
+     *
+     * @param thePiece the piece.
+     */
+    void nextPiece(final TetrisPiece thePiece) {
+        myPieces.add(thePiece);
+    }
+
+    /**
+     * Records the end of the game.
+     */
+    void gameOver() {
+        myGameOver = true;
+    }
+
+    /**
+     * Sets the board after the last input.
+     *
+     * @param theBoard the board data or BoardDelta.
+     */
+    void setBoard(final Object theBoard) {
+        myBoard = theBoard;
+    }
+
+    @Override
+    public String toString() {
+        return "InputBatch: " + myInputs + " inputs, " + myClears.size() + " clears, "
+               + myPieces.size() + " pieces, game over " + myGameOver;
+    }
+}
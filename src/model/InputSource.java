@@ -0,0 +1,27 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Supplies the inputs for a headless game, one Action at a time.
+ * Implementations may be scripted sequences, recorded games or bots.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface InputSource {
+
+    /**
+     * Chooses the next input for a game.
+     *
+     * @param theEngine the game being played; implementations may query
+     *        its state but must not change it.
+     * @return the next Action to apply.
+     */
+    Action nextAction(TetrisEngine theEngine);
+
+}
@@ -9,7 +9,8 @@ package model;
 /**
  * Represents a TetrisPiece with a position and a rotation.
  * 
- * A MovableTetrisPiece is immutable.
+ * A MovableTetrisPiece is immutable. It is a view of a packed PieceState,
+ * the form the engine keeps its current piece in.
  * 
  * @author Alan Fowler
  * @version 1.2
@@ -22,19 +23,9 @@ public final class MovableTetrisPiece {
     private static final int BLOCKS = 4;
     
     /**
-     * The TetrisPiece.
+     * The piece type, rotation and board position as a PieceState.
      */
-    private final TetrisPiece myTetrisPiece;
-    
-    /**
-     * The board position of this TetrisPiece.
-     */
-    private final Point myPosition;
-
-    /**
-     * The rotation value of this TetrisPiece.
-     */
-    private final Rotation myRotation;
+    private final long myState;
     
     // This constructor allows creation of pieces in the zero rotational state
     /**
@@ -62,9 +53,16 @@ public final class MovableTetrisPiece {
                               final Point thePosition, 
                               final Rotation theRotation) {
         
-        myTetrisPiece = theTetrisPiece;
-        myPosition = thePosition;
-        myRotation = theRotation;
+        this(PieceState.pack(theTetrisPiece, theRotation, thePosition.x(), thePosition.y()));
+    }
+
+    /**
+     * Constructs a MovableTetrisPiece viewing a packed state.
+     * 
+     * @param theState the PieceState; must hold a piece.
+     */
+    MovableTetrisPiece(final long theState) {
+        myState = theState;
     }
     
     
@@ -73,7 +71,7 @@ public final class MovableTetrisPiece {
     // methods overridden from class Object
     @Override
     public String toString() {
-        final StringBuilder sb = new StringBuilder(myPosition.toString());
+        final StringBuilder sb = new StringBuilder(getPosition().toString());
         sb.append('\n');
         final String[][] blocks = new String[BLOCKS][BLOCKS];
         for (int h = 0; h < BLOCKS; h++) {
@@ -107,7 +105,7 @@ public final class MovableTetrisPiece {
      * @return The TetrisPiece describing this piece.
      */
     protected TetrisPiece getTetrisPiece() {
-        return myTetrisPiece;
+        return PieceState.piece(myState);
     }
     
     /**
@@ -116,7 +114,7 @@ public final class MovableTetrisPiece {
      * @return the board position.
      */
     protected Point getPosition() {
-        return myPosition;
+        return new Point(PieceState.x(myState), PieceState.y(myState));
     }
 
     /**
@@ -125,7 +123,25 @@ public final class MovableTetrisPiece {
      * @return current rotation value.
      */
     protected Rotation getRotation() {
-        return myRotation;
+        return PieceState.rotation(myState);
+    }
+
+    /**
+     * Get the PieceTable shape index of this movable TetrisPiece.
+     * 
+     * @return the shape index for the piece type and rotation.
+     */
+    protected int getShape() {
+        return PieceState.shape(myState);
+    }
+
+    /**
+     * Get the packed PieceState this movable TetrisPiece views.
+     * 
+     * @return the packed state.
+     */
+    long getState() {
+        return myState;
     }
 
     /**
@@ -134,7 +150,7 @@ public final class MovableTetrisPiece {
      * @return the board points for the TetrisPiece blocks.
      */
     protected Point[] getBoardPoints() {
-        return getPoints(myPosition);
+        return getPoints(PieceState.x(myState), PieceState.y(myState));
     }
     
     
@@ -146,9 +162,7 @@ public final class MovableTetrisPiece {
      * @return A new rotated movable TetrisPiece
      */
     protected MovableTetrisPiece rotateCW() {
-        return new MovableTetrisPiece(myTetrisPiece,
-                                      myPosition,
-                                      myRotation.clockwise());
+        return new MovableTetrisPiece(PieceState.rotated(myState, getRotation().clockwise()));
     }
 
     /**
@@ -157,9 +171,8 @@ public final class MovableTetrisPiece {
      * @return A new rotated movable TetrisPiece
      */
     protected MovableTetrisPiece rotateCCW() {
-        return new MovableTetrisPiece(myTetrisPiece,
-                                      myPosition,
-                                      myRotation.counterClockwise());
+        return new MovableTetrisPiece(PieceState.rotated(myState,
+                                                         getRotation().counterClockwise()));
     }
 
     /**
@@ -168,9 +181,7 @@ public final class MovableTetrisPiece {
      * @return A new left moved movable TetrisPiece
      */
     protected MovableTetrisPiece left() {
-        return new MovableTetrisPiece(myTetrisPiece,
-                                      myPosition.transform(-1, 0),
-                                      myRotation);
+        return new MovableTetrisPiece(PieceState.moved(myState, -1, 0));
     }
 
     /**
@@ -179,9 +190,7 @@ public final class MovableTetrisPiece {
      * @return A new right moved movable TetrisPiece
      */
     protected MovableTetrisPiece right() {
-        return new MovableTetrisPiece(myTetrisPiece,
-                                      myPosition.transform(1, 0),
-                                      myRotation);
+        return new MovableTetrisPiece(PieceState.moved(myState, 1, 0));
     }
 
     /**
@@ -190,9 +199,7 @@ public final class MovableTetrisPiece {
      * @return A new movable TetrisPiece moved down.
      */
     protected MovableTetrisPiece down() {
-        return new MovableTetrisPiece(myTetrisPiece,
-                                      myPosition.transform(0, -1),
-                                      myRotation);
+        return new MovableTetrisPiece(PieceState.moved(myState, 0, -1));
     }
     
     
@@ -208,7 +215,8 @@ public final class MovableTetrisPiece {
      * @return A new movable TetrisPiece at the specified location
      */
     protected MovableTetrisPiece setPosition(final Point thePosition) {
-        return new MovableTetrisPiece(myTetrisPiece, thePosition, myRotation);
+        return new MovableTetrisPiece(PieceState.pack(getShape(), thePosition.x(),
+                                                      thePosition.y()));
     }
 
 
@@ -218,41 +226,17 @@ public final class MovableTetrisPiece {
     /**
      * Get the block points of the TetrisPiece transformed by x and y.
      * 
-     * @param thePoint the point to transform the points around.
+     * @param theX the x offset to transform the points by.
+     * @param theY the y offset to transform the points by.
      * @return array of TetrisPiece block points.
      */
-    private Point[] getPoints(final Point thePoint) {
-
-        final Point[] blocks = myTetrisPiece.getPoints();
-        
-        for (int i = 0; i < blocks.length; i++) {
-            final Point block = blocks[i];
-            if (myTetrisPiece != TetrisPiece.O) {
-                switch (myRotation) {
-                    case QUARTER:
-                        blocks[i] = new Point(block.y(),
-                                              myTetrisPiece.getWidth() - block.x() - 1);
-                        
-                        break;
-                    case HALF:
-                        blocks[i] = new Point(myTetrisPiece.getWidth() - block.x() - 1,
-                                              myTetrisPiece.getWidth() - block.y() - 1);
-                        
-                        break;
-                    case THREEQUARTER:                 
-                        blocks[i] = new Point(myTetrisPiece.getWidth() - block.y() - 1,
-                                              block.x());
-                        
-                        
-                        break;
-                    default:
-                }
-            }
-            if (thePoint != null) {
-                blocks[i] = blocks[i].transform(thePoint);
-            }
+    private Point[] getPoints(final int theX, final int theY) {
+        final int shape = getShape();
+        final Point[] blocks = new Point[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            blocks[i] = new Point(theX + PieceTable.blockX(shape, i),
+                                  theY + PieceTable.blockY(shape, i));
         }
-
         return blocks;
     }
     
@@ -262,7 +246,7 @@ public final class MovableTetrisPiece {
      * @return array of TetrisPiece block points.
      */
     private Point[] getLocalPoints() {
-        return getPoints(null);
+        return getPoints(0, 0);
     }
 
 
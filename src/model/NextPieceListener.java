@@ -0,0 +1,24 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Receives the next pieces of a Board as they become ready for preview.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface NextPieceListener {
+
+    /**
+     * Called when a new next piece is ready for preview.
+     *
+     * @param thePiece the next piece.
+     */
+    void nextPiece(TetrisPiece thePiece);
+
+}
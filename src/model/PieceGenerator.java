@@ -0,0 +1,260 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * A seeded source of TetrisPieces owned by a single board.
+ *
+ * The generator runs its own SplitMix64 stream (the algorithm behind
+ * SplittableRandom), so boards never contend on a shared random source and
+ * a seed always produces the same pieces. Pieces are generated in blocks of
+ * whole bags and handed out from a buffer. In UNIFORM mode every piece is
+ * drawn independently; in BAG mode each run of seven pieces is a shuffled
+ * copy of all seven pieces.
+ *
+ * A generator is not thread safe; parallel games should each use their own,
+ * for example from split().
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class PieceGenerator {
+
+    /**
+     * The ways pieces can be drawn.
+     */
+    public enum Mode {
+        /** Every piece is drawn independently and uniformly. */
+        UNIFORM,
+        /** Each bag of seven pieces holds every piece once, in random order. */
+        BAG
+    }
+
+    /**
+     * The TetrisPiece values indexed by ordinal.
+     */
+    private static final TetrisPiece[] PIECES = TetrisPiece.values();
+
+    /**
+     * The number of bags generated per block.
+     */
+    private static final int BAGS_PER_BLOCK = 8;
+
+    /**
+     * The number of pieces generated per block.
+     */
+    static final int BLOCK_SIZE = PIECES.length * BAGS_PER_BLOCK;
+
+    /**
+     * Shift taking the high 32 bits of a long.
+     */
+    private static final int HIGH_BITS = 32;
+
+    /**
+     * Mixed into the seed to start the split stream apart from the piece stream.
+     */
+    private static final long SPLIT_SALT = 0x5851F42D4C957F2DL;
+
+    /**
+     * The way pieces are drawn.
+     */
+    private final Mode myMode;
+
+    /**
+     * The generated block of pieces.
+     */
+    private final TetrisPiece[] myBlock;
+
+    /**
+     * The SplitMix64 state.
+     */
+    private long myState;
+
+    /**
+     * The SplitMix64 state before the current block was generated.
+     */
+    private long myBlockState;
+
+    /**
+     * The index of the next piece in the block.
+     */
+    private int myIndex;
+
+    /**
+     * The SplitMix64 state of the stream of seeds handed out by split(),
+     * which is separate from the piece stream.
+     */
+    private long mySplitState;
+
+    /**
+     * Constructs a uniform generator with an unpredictable seed.
+     */
+    public PieceGenerator() {
+        this(new SplittableRandom().nextLong(), Mode.UNIFORM);
+    }
+
+    /**
+     * Constructs a generator.
+     *
+     * @param theSeed the seed.
+     * @param theMode the way pieces are drawn.
+     */
+    public PieceGenerator(final long theSeed, final Mode theMode) {
+        myMode = theMode;
+        myBlock = new TetrisPiece[BLOCK_SIZE];
+        reset(theSeed);
+    }
+
+    /**
+     * Constructs a copy of another generator at the same position in the
+     * same piece stream.
+     *
+     * @param theOther the generator to copy.
+     */
+    PieceGenerator(final PieceGenerator theOther) {
+        myMode = theOther.myMode;
+        myBlock = theOther.myBlock.clone();
+        myState = theOther.myState;
+        myBlockState = theOther.myBlockState;
+        myIndex = theOther.myIndex;
+        mySplitState = theOther.mySplitState;
+    }
+
+    /**
+     * Restarts the piece stream from a seed.
+     *
+     * @param theSeed the seed.
+     */
+    public void reset(final long theSeed) {
+        myState = theSeed;
+        myBlockState = theSeed;
+        myIndex = BLOCK_SIZE;
+        mySplitState = SplitMix.mix(theSeed ^ SPLIT_SALT);
+    }
+
+    /**
+     * Returns the stream state the current block was generated from, or the
+     * state the next block will be generated from once the current one is used
+     * up. Together with getIndex() it identifies the position in the piece stream.
+     *
+     * @return the stream state.
+     */
+    long getBlockState() {
+        long result = myBlockState;
+        if (myIndex == BLOCK_SIZE) {
+            result = myState;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the next piece in the current block.
+     *
+     * @return the block index; equal to the block size when a new block is due.
+     */
+    int getIndex() {
+        return myIndex;
+    }
+
+    /**
+     * Moves the piece stream to a position captured with getBlockState() and getIndex().
+     * The stream of seeds handed out by split() is not moved.
+     *
+     * @param theBlockState the stream state the block was generated from.
+     * @param theIndex the index of the next piece in the block.
+     */
+    void restore(final long theBlockState, final int theIndex) {
+        myState = theBlockState;
+        myBlockState = theBlockState;
+        myIndex = BLOCK_SIZE;
+        if (theIndex < BLOCK_SIZE) {
+            fill();
+            myIndex = theIndex;
+        }
+    }
+
+    /**
+     * Returns the next piece.
+     *
+     * @return the next piece.
+     */
+    public TetrisPiece next() {
+        if (myIndex == BLOCK_SIZE) {
+            fill();
+        }
+        return myBlock[myIndex++];
+    }
+
+    /**
+     * Returns the way pieces are drawn.
+     *
+     * @return the mode.
+     */
+    public Mode getMode() {
+        return myMode;
+    }
+
+    /**
+     * Creates a new generator of the same mode whose stream is independent
+     * of this one. The seed comes from a stream of its own, started from this
+     * generator's seed, so splitting never changes the pieces this generator
+     * deals, and splitting it repeatedly yields a deterministic sequence of
+     * generators.
+     *
+     * @return the new generator.
+     */
+    public PieceGenerator split() {
+        mySplitState += SplitMix.GAMMA;
+        return new PieceGenerator(SplitMix.mix(mySplitState), myMode);
+    }
+
+    /**
+     * Generates the next block of pieces.
+     */
+    private void fill() {
+        myBlockState = myState;
+        if (myMode == Mode.BAG) {
+            for (int start = 0; start < BLOCK_SIZE; start += PIECES.length) {
+                System.arraycopy(PIECES, 0, myBlock, start, PIECES.length);
+                for (int i = PIECES.length - 1; i > 0; i--) {
+                    final int j = nextInt(i + 1);
+                    final TetrisPiece swap = myBlock[start + i];
+                    myBlock[start + i] = myBlock[start + j];
+                    myBlock[start + j] = swap;
+                }
+            }
+        } else {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                myBlock[i] = PIECES[nextInt(PIECES.length)];
+            }
+        }
+        myIndex = 0;
+    }
+
+    /**
+     * Returns the next value of the SplitMix64 stream.
+     *
+     * @return 64 random bits.
+     */
+    private long nextLong() {
+        myState += SplitMix.GAMMA;
+        return SplitMix.mix(myState);
+    }
+
+    /**
+     * Returns a random int in a small range by scaling the high bits of the
+     * stream; the bias for bounds this small is below one part in 2^28.
+     *
+     * @param theBound the exclusive upper bound.
+     * @return a value from 0 to theBound - 1.
+     */
+    private int nextInt(final int theBound) {
+        return (int) (((nextLong() >>> HIGH_BITS) * theBound) >>> HIGH_BITS);
+    }
+}
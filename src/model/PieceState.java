@@ -0,0 +1,219 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Helpers for a piece in play packed into one long: the PieceTable shape
+ * (piece and rotation) in the top 16 bits, then the x and y positions as
+ * 24-bit signed fields. The engine keeps its current piece in this form, so
+ * moving, rotating and probing a piece are arithmetic on a primitive and play
+ * allocates nothing.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+final class PieceState {
+
+    /**
+     * The bit position of the shape field.
+     */
+    private static final int SHAPE_SHIFT = 48;
+
+    /**
+     * The width of each coordinate field.
+     */
+    private static final int COORDINATE_BITS = 24;
+
+    /**
+     * The mask of a coordinate field.
+     */
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    /**
+     * The state of no piece: shape -1 at the origin.
+     */
+    static final long NONE = pack(-1, 0, 0);
+
+    /**
+     * Private constructor, to prevent instantiation of this class.
+     */
+    private PieceState() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Packs a shape and position.
+     *
+     * @param theShape the PieceTable shape index, or -1 for no piece.
+     * @param theX the x position.
+     * @param theY the y position.
+     * @return the packed state.
+     */
+    static long pack(final int theShape, final int theX, final int theY) {
+        return ((long) theShape << SHAPE_SHIFT)
+               | ((theX & COORDINATE_MASK) << COORDINATE_BITS)
+               | (theY & COORDINATE_MASK);
+    }
+
+    /**
+     * Packs a piece, rotation and position.
+     *
+     * @param thePiece the TetrisPiece.
+     * @param theRotation the Rotation.
+     * @param theX the x position.
+     * @param theY the y position.
+     * @return the packed state.
+     */
+    static long pack(final TetrisPiece thePiece, final Rotation theRotation,
+                     final int theX, final int theY) {
+        return pack(PieceTable.shape(thePiece, theRotation), theX, theY);
+    }
+
+    /**
+     * Returns the shape of a state.
+     *
+     * @param theState the packed state.
+     * @return the PieceTable shape index, or -1 for no piece.
+     */
+    static int shape(final long theState) {
+        return (int) (theState >> SHAPE_SHIFT);
+    }
+
+    /**
+     * Returns the x position of a state.
+     *
+     * @param theState the packed state.
+     * @return the x position.
+     */
+    static int x(final long theState) {
+        return (int) (theState << (Long.SIZE - SHAPE_SHIFT) >> (Long.SIZE - COORDINATE_BITS));
+    }
+
+    /**
+     * Returns the y position of a state.
+     *
+     * @param theState the packed state.
+     * @return the y position.
+     */
+    static int y(final long theState) {
+        return (int) (theState << (Long.SIZE - COORDINATE_BITS)
+                     >> (Long.SIZE - COORDINATE_BITS));
+    }
+
+    /**
+     * Whether a state holds a piece.
+     *
+     * @param theState the packed state.
+     * @return true unless the state is NONE.
+     */
+    static boolean isPiece(final long theState) {
+        return shape(theState) >= 0;
+    }
+
+    /**
+     * Returns the TetrisPiece of a state.
+     *
+     * @param theState the packed state; must hold a piece.
+     * @return the TetrisPiece.
+     */
+    static TetrisPiece piece(final long theState) {
+        return PieceTable.piece(shape(theState));
+    }
+
+    /**
+     * Returns the Rotation of a state.
+     *
+     * @param theState the packed state; must hold a piece.
+     * @return the Rotation.
+     */
+    static Rotation rotation(final long theState) {
+        return PieceTable.rotation(shape(theState));
+    }
+
+    /**
+     * Returns a state moved by an offset.
+     *
+     * @param theState the packed state.
+     * @param theDx the x offset.
+     * @param theDy the y offset.
+     * @return the moved state.
+     */
+    static long moved(final long theState, final int theDx, final int theDy) {
+        return pack(shape(theState), x(theState) + theDx, y(theState) + theDy);
+    }
+
+    /**
+     * Returns a state turned to another rotation in place.
+     *
+     * @param theState the packed state; must hold a piece.
+     * @param theRotation the new rotation.
+     * @return the rotated state.
+     */
+    static long rotated(final long theState, final Rotation theRotation) {
+        return pack(piece(theState), theRotation, x(theState), y(theState));
+    }
+
+    /**
+     * Returns the board x coordinate of a block.
+     *
+     * @param theState the packed state; must hold a piece.
+     * @param theBlock the block number, 0 to PieceTable.BLOCKS - 1.
+     * @return the x coordinate.
+     */
+    static int blockX(final long theState, final int theBlock) {
+        return x(theState) + PieceTable.blockX(shape(theState), theBlock);
+    }
+
+    /**
+     * Returns the board y coordinate of a block.
+     *
+     * @param theState the packed state; must hold a piece.
+     * @param theBlock the block number, 0 to PieceTable.BLOCKS - 1.
+     * @return the y coordinate.
+     */
+    static int blockY(final long theState, final int theBlock) {
+        return y(theState) + PieceTable.blockY(shape(theState), theBlock);
+    }
+
+    /**
+     * Whether a state fits on a board without overlapping frozen blocks.
+     *
+     * @param theGrid the frozen blocks.
+     * @param theState the packed state; must hold a piece.
+     * @return true if the state is legal.
+     */
+    static boolean fits(final BitBoard theGrid, final long theState) {
+        return theGrid.fits(shape(theState), x(theState), y(theState));
+    }
+
+    /**
+     * Finds where a rotation moves a state, trying each wall kick offset in turn.
+     * The O piece rotates in place without kicks.
+     *
+     * @param theGrid the frozen blocks.
+     * @param theState the packed state before the rotation; must hold a piece.
+     * @param theRotation the new rotation.
+     * @return the state at the first legal position, or NONE if the rotation fails.
+     */
+    static long rotate(final BitBoard theGrid, final long theState,
+                       final Rotation theRotation) {
+        final int from = shape(theState);
+        final int to = PieceTable.shape(PieceTable.piece(from), theRotation);
+        final int x = x(theState);
+        final int y = y(theState);
+        long result = NONE;
+        final int kicks = PieceTable.kickCount(from, theRotation);
+        for (int i = 0; i < kicks && result == NONE; i++) {
+            final int kickX = x + PieceTable.kickX(from, theRotation, i);
+            final int kickY = y + PieceTable.kickY(from, theRotation, i);
+            if (theGrid.fits(to, kickX, kickY)) {
+                result = pack(to, kickX, kickY);
+            }
+        }
+        return result;
+    }
+}
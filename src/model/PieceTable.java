@@ -0,0 +1,369 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import model.wallkicks.WallKick;
+
+/**
+ * Precomputed block offsets for every TetrisPiece and Rotation pair.
+ *
+ * A shape is identified by an int index combining the piece and rotation ordinals.
+ * For every shape the table holds the local x and y offset of each block, the
+ * bounding box of the blocks and one occupancy mask per local row, so board point
+ * computation and collision tests are plain array lookups. The wall kick offsets
+ * of every shape and new rotation are copied out of WallKick once, so rotating
+ * does not allocate.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+final class PieceTable {
+
+    /**
+     * The number of blocks in a TetrisPiece.
+     */
+    static final int BLOCKS = 4;
+
+    /**
+     * The number of local rows (and columns) a rotated piece may span.
+     */
+    static final int SIZE = 4;
+
+    /**
+     * The TetrisPiece values indexed by ordinal.
+     */
+    private static final TetrisPiece[] PIECES = TetrisPiece.values();
+
+    /**
+     * The Rotation values indexed by ordinal.
+     */
+    private static final Rotation[] ROTATIONS = Rotation.values();
+
+    /**
+     * The number of rotations per piece.
+     */
+    private static final int ROTATION_COUNT = ROTATIONS.length;
+
+    /**
+     * The number of distinct shapes.
+     */
+    static final int SHAPES = PIECES.length * ROTATION_COUNT;
+
+    /**
+     * The local x offset of every block, BLOCKS entries per shape.
+     */
+    private static final int[] BLOCK_X = new int[SHAPES * BLOCKS];
+
+    /**
+     * The local y offset of every block, BLOCKS entries per shape.
+     */
+    private static final int[] BLOCK_Y = new int[SHAPES * BLOCKS];
+
+    /**
+     * The smallest local x offset of each shape.
+     */
+    private static final int[] MIN_X = new int[SHAPES];
+
+    /**
+     * The largest local x offset of each shape.
+     */
+    private static final int[] MAX_X = new int[SHAPES];
+
+    /**
+     * The smallest local y offset of each shape.
+     */
+    private static final int[] MIN_Y = new int[SHAPES];
+
+    /**
+     * The largest local y offset of each shape.
+     */
+    private static final int[] MAX_Y = new int[SHAPES];
+
+    /**
+     * The occupancy mask of each local row, SIZE entries per shape.
+     */
+    private static final long[] ROW_MASKS = new long[SHAPES * SIZE];
+
+    /**
+     * The lowest local y offset in each local column, SIZE entries per shape;
+     * SIZE for columns the shape does not occupy.
+     */
+    private static final int[] COLUMN_BOTTOMS = new int[SHAPES * SIZE];
+
+    /**
+     * The x offsets of the wall kicks of each shape, ROTATION_COUNT entries per
+     * shape indexed by the new rotation; empty where the rotation is not a turn.
+     */
+    private static final int[][] KICK_X = new int[SHAPES * ROTATION_COUNT][];
+
+    /**
+     * The y offsets of the wall kicks, laid out as KICK_X.
+     */
+    private static final int[][] KICK_Y = new int[SHAPES * ROTATION_COUNT][];
+
+    static {
+        for (final TetrisPiece piece : PIECES) {
+            for (final Rotation rotation : ROTATIONS) {
+                fillShape(piece, rotation);
+                fillKicks(piece, rotation);
+            }
+        }
+    }
+
+    /**
+     * Private constructor, to prevent instantiation of this class.
+     */
+    private PieceTable() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Returns the shape index of a piece in a rotation.
+     *
+     * @param thePiece the TetrisPiece.
+     * @param theRotation the Rotation.
+     * @return the shape index.
+     */
+    static int shape(final TetrisPiece thePiece, final Rotation theRotation) {
+        return thePiece.ordinal() * ROTATION_COUNT + theRotation.ordinal();
+    }
+
+    /**
+     * Returns the TetrisPiece of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the TetrisPiece.
+     */
+    static TetrisPiece piece(final int theShape) {
+        return PIECES[theShape / ROTATION_COUNT];
+    }
+
+    /**
+     * Returns the Rotation of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the Rotation.
+     */
+    static Rotation rotation(final int theShape) {
+        return ROTATIONS[theShape % ROTATION_COUNT];
+    }
+
+    /**
+     * Returns the local x offset of a block.
+     *
+     * @param theShape the shape index.
+     * @param theBlock the block number, 0 to BLOCKS - 1.
+     * @return the x offset.
+     */
+    static int blockX(final int theShape, final int theBlock) {
+        return BLOCK_X[theShape * BLOCKS + theBlock];
+    }
+
+    /**
+     * Returns the local y offset of a block.
+     *
+     * @param theShape the shape index.
+     * @param theBlock the block number, 0 to BLOCKS - 1.
+     * @return the y offset.
+     */
+    static int blockY(final int theShape, final int theBlock) {
+        return BLOCK_Y[theShape * BLOCKS + theBlock];
+    }
+
+    /**
+     * Returns the smallest local x offset of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the smallest x offset.
+     */
+    static int minX(final int theShape) {
+        return MIN_X[theShape];
+    }
+
+    /**
+     * Returns the largest local x offset of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the largest x offset.
+     */
+    static int maxX(final int theShape) {
+        return MAX_X[theShape];
+    }
+
+    /**
+     * Returns the smallest local y offset of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the smallest y offset.
+     */
+    static int minY(final int theShape) {
+        return MIN_Y[theShape];
+    }
+
+    /**
+     * Returns the largest local y offset of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the largest y offset.
+     */
+    static int maxY(final int theShape) {
+        return MAX_Y[theShape];
+    }
+
+    /**
+     * Returns the width of the bounding box of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the width in blocks.
+     */
+    static int width(final int theShape) {
+        return MAX_X[theShape] - MIN_X[theShape] + 1;
+    }
+
+    /**
+     * Returns the height of the bounding box of a shape.
+     *
+     * @param theShape the shape index.
+     * @return the height in blocks.
+     */
+    static int height(final int theShape) {
+        return MAX_Y[theShape] - MIN_Y[theShape] + 1;
+    }
+
+    /**
+     * Returns the occupancy mask of a local row of a shape, bit x set when the
+     * block at local column x is present.
+     *
+     * @param theShape the shape index.
+     * @param theRow the local row, 0 to SIZE - 1.
+     * @return the row mask.
+     */
+    static long rowMask(final int theShape, final int theRow) {
+        return ROW_MASKS[theShape * SIZE + theRow];
+    }
+
+    /**
+     * Returns the lowest local y offset of a shape in a local column.
+     *
+     * @param theShape the shape index.
+     * @param theColumn the local column, 0 to SIZE - 1.
+     * @return the lowest y offset, or SIZE if the column is not occupied.
+     */
+    static int columnBottom(final int theShape, final int theColumn) {
+        return COLUMN_BOTTOMS[theShape * SIZE + theColumn];
+    }
+
+    /**
+     * Returns the number of wall kick offsets tried when a shape turns.
+     *
+     * @param theShape the shape index before the rotation.
+     * @param theRotation the new rotation, a quarter turn from the shape's.
+     * @return the number of offsets.
+     */
+    static int kickCount(final int theShape, final Rotation theRotation) {
+        return KICK_X[theShape * ROTATION_COUNT + theRotation.ordinal()].length;
+    }
+
+    /**
+     * Returns the x offset of a wall kick.
+     *
+     * @param theShape the shape index before the rotation.
+     * @param theRotation the new rotation.
+     * @param theKick the kick number, 0 to kickCount - 1, in the order they are tried.
+     * @return the x offset.
+     */
+    static int kickX(final int theShape, final Rotation theRotation, final int theKick) {
+        return KICK_X[theShape * ROTATION_COUNT + theRotation.ordinal()][theKick];
+    }
+
+    /**
+     * Returns the y offset of a wall kick.
+     *
+     * @param theShape the shape index before the rotation.
+     * @param theRotation the new rotation.
+     * @param theKick the kick number, 0 to kickCount - 1, in the order they are tried.
+     * @return the y offset.
+     */
+    static int kickY(final int theShape, final Rotation theRotation, final int theKick) {
+        return KICK_Y[theShape * ROTATION_COUNT + theRotation.ordinal()][theKick];
+    }
+
+    /**
+     * Computes the wall kick entries of one shape. The O piece turns in place
+     * with the single offset (0, 0); the other pieces use the WallKick offsets
+     * for quarter turns.
+     *
+     * @param thePiece the TetrisPiece.
+     * @param theRotation the Rotation before the turn.
+     */
+    private static void fillKicks(final TetrisPiece thePiece, final Rotation theRotation) {
+        final int base = shape(thePiece, theRotation) * ROTATION_COUNT;
+        for (final Rotation to : ROTATIONS) {
+            Point[] kicks = new Point[0];
+            if (thePiece == TetrisPiece.O) {
+                kicks = new Point[] {new Point(0, 0)};
+            } else if (to == theRotation.clockwise() || to == theRotation.counterClockwise()) {
+                kicks = WallKick.getWallKicks(thePiece, theRotation, to);
+            }
+            KICK_X[base + to.ordinal()] = new int[kicks.length];
+            KICK_Y[base + to.ordinal()] = new int[kicks.length];
+            for (int i = 0; i < kicks.length; i++) {
+                KICK_X[base + to.ordinal()][i] = kicks[i].x();
+                KICK_Y[base + to.ordinal()][i] = kicks[i].y();
+            }
+        }
+    }
+
+    /**
+     * Computes the table entries of one shape.
+     * The rotation rules are those of the original MovableTetrisPiece.
+     *
+     * @param thePiece the TetrisPiece.
+     * @param theRotation the Rotation.
+     */
+    private static void fillShape(final TetrisPiece thePiece, final Rotation theRotation) {
+        final int shape = shape(thePiece, theRotation);
+        final int size = thePiece.getWidth();
+        final Point[] points = thePiece.getPoints();
+        MIN_X[shape] = SIZE;
+        MIN_Y[shape] = SIZE;
+        MAX_X[shape] = -1;
+        MAX_Y[shape] = -1;
+        for (int column = 0; column < SIZE; column++) {
+            COLUMN_BOTTOMS[shape * SIZE + column] = SIZE;
+        }
+        for (int i = 0; i < BLOCKS; i++) {
+            int x = points[i].x();
+            int y = points[i].y();
+            if (thePiece != TetrisPiece.O) {
+                switch (theRotation) {
+                    case QUARTER:
+                        x = points[i].y();
+                        y = size - points[i].x() - 1;
+                        break;
+                    case HALF:
+                        x = size - points[i].x() - 1;
+                        y = size - points[i].y() - 1;
+                        break;
+                    case THREEQUARTER:
+                        x = size - points[i].y() - 1;
+                        y = points[i].x();
+                        break;
+                    default:
+                }
+            }
+            BLOCK_X[shape * BLOCKS + i] = x;
+            BLOCK_Y[shape * BLOCKS + i] = y;
+            MIN_X[shape] = Math.min(MIN_X[shape], x);
+            MAX_X[shape] = Math.max(MAX_X[shape], x);
+            MIN_Y[shape] = Math.min(MIN_Y[shape], y);
+            MAX_Y[shape] = Math.max(MAX_Y[shape], y);
+            ROW_MASKS[shape * SIZE + y] |= 1L << x;
+            COLUMN_BOTTOMS[shape * SIZE + x] = Math.min(COLUMN_BOTTOMS[shape * SIZE + x], y);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Enumerates every resting placement the current piece can reach.
+ *
+ * The finder runs a breadth first search over the states (rotation, x, y) of
+ * the piece, following the moves of the real rules: left, right, down and both
+ * rotations with their wall kicks. A state is a placement when the piece cannot
+ * move down from it. Visited states are kept in a bitset and the search queue,
+ * parent links and moves live in arrays sized once for the board, so a search
+ * allocates nothing; only getPath builds objects.
+ *
+ * Gravity is ignored, so placements that need a piece to move sideways under an
+ * overhang are found as long as the moves exist. A finder is reused for many
+ * searches but is not thread safe.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class PlacementFinder {
+
+    /**
+     * The number of rotations of a piece.
+     */
+    private static final int ROTATIONS = Rotation.values().length;
+
+    /**
+     * The Rotation values indexed by ordinal.
+     */
+    private static final Rotation[] ROTATION_VALUES = Rotation.values();
+
+    /**
+     * How far left of column 0 a piece position can be.
+     */
+    private static final int X_OFFSET = PieceTable.SIZE - 1;
+
+    /**
+     * How far below row 0 a piece position can be.
+     */
+    private static final int Y_OFFSET = PieceTable.SIZE - 1;
+
+    /**
+     * The number of rows above the board a piece may be kicked to.
+     */
+    private static final int Y_MARGIN = PieceTable.SIZE;
+
+    /**
+     * The number of bits in a long.
+     */
+    private static final int LONG_BITS = 64;
+
+    /**
+     * The shift converting a state index to a bitset word index.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * The moves followed by the search, stored as Action ordinals.
+     */
+    private static final Action[] ACTIONS = Action.values();
+
+    /**
+     * The number of x positions per row of states.
+     */
+    private final int myXCount;
+
+    /**
+     * The number of y positions per rotation.
+     */
+    private final int myYCount;
+
+    /**
+     * The width of the searched boards.
+     */
+    private final int myWidth;
+
+    /**
+     * The height of the searched boards.
+     */
+    private final int myHeight;
+
+    /**
+     * The visited states.
+     */
+    private final long[] myVisited;
+
+    /**
+     * The search queue of state indexes.
+     */
+    private final int[] myQueue;
+
+    /**
+     * The state each visited state was reached from, or -1 for the start.
+     */
+    private final int[] myParent;
+
+    /**
+     * The Action ordinal of the move that reached each visited state.
+     */
+    private final byte[] myMove;
+
+    /**
+     * The state indexes of the placements found by the last search.
+     */
+    private final int[] myPlacements;
+
+    /**
+     * The number of placements found by the last search.
+     */
+    private int myPlacementCount;
+
+    /**
+     * The PieceTable shape of the piece in rotation NONE.
+     */
+    private int myBaseShape;
+
+    /**
+     * Constructs a finder for boards of the given size.
+     *
+     * @param theWidth Width of the searched boards.
+     * @param theHeight Height of the searched boards.
+     */
+    public PlacementFinder(final int theWidth, final int theHeight) {
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myXCount = theWidth + X_OFFSET;
+        myYCount = theHeight + Y_OFFSET + Y_MARGIN;
+        final int states = ROTATIONS * myXCount * myYCount;
+        myVisited = new long[(states + LONG_BITS - 1) / LONG_BITS];
+        myQueue = new int[states];
+        myParent = new int[states];
+        myMove = new byte[states];
+        myPlacements = new int[states];
+    }
+
+    /**
+     * Finds the placements of the current piece of an engine.
+     *
+     * @param theEngine the game to search.
+     * @return the number of placements found; 0 if the game is over
+     *         or has no current piece.
+     * @throws IllegalArgumentException if the engine board is a different size.
+     */
+    public int search(final TetrisEngine theEngine) {
+        if (theEngine.getWidth() != myWidth || theEngine.getHeight() != myHeight) {
+            throw new IllegalArgumentException("The board size does not match the finder");
+        }
+        int result = 0;
+        if (!theEngine.isGameOver() && theEngine.getShape() >= 0) {
+            result = search(theEngine.getGrid(), theEngine.getShape(),
+                            theEngine.getX(), theEngine.getY());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of placements found by the last search.
+     *
+     * @return the number of placements.
+     */
+    public int getPlacementCount() {
+        return myPlacementCount;
+    }
+
+    /**
+     * Returns the piece of the last search.
+     *
+     * @return the piece.
+     */
+    public TetrisPiece getPiece() {
+        return PieceTable.piece(myBaseShape);
+    }
+
+    /**
+     * Returns the rotation of a placement.
+     *
+     * @param theIndex the placement index.
+     * @return the rotation of the piece at rest.
+     */
+    public Rotation getRotation(final int theIndex) {
+        return ROTATION_VALUES[myPlacements[theIndex] / (myXCount * myYCount)];
+    }
+
+    /**
+     * Returns the x position of a placement.
+     *
+     * @param theIndex the placement index.
+     * @return the x position of the piece at rest.
+     */
+    public int getX(final int theIndex) {
+        return myPlacements[theIndex] % myXCount - X_OFFSET;
+    }
+
+    /**
+     * Returns the landing y position of a placement.
+     *
+     * @param theIndex the placement index.
+     * @return the y position of the piece at rest.
+     */
+    public int getY(final int theIndex) {
+        return myPlacements[theIndex] / myXCount % myYCount - Y_OFFSET;
+    }
+
+    /**
+     * Returns the inputs that take the piece from its start to a placement
+     * and freeze it there. Trailing moves down are folded into the final DROP.
+     *
+     * @param theIndex the placement index.
+     * @return the inputs in order, ending with DROP.
+     */
+    public List<Action> getPath(final int theIndex) {
+        final List<Action> result = new ArrayList<Action>();
+        int state = myPlacements[theIndex];
+        while (myParent[state] >= 0 && ACTIONS[myMove[state]] == Action.DOWN) {
+            state = myParent[state];
+        }
+        while (myParent[state] >= 0) {
+            result.add(ACTIONS[myMove[state]]);
+            state = myParent[state];
+        }
+        Collections.reverse(result);
+        result.add(Action.DROP);
+        return result;
+    }
+
+    /**
+     * Returns the PieceTable shape of a placement.
+     *
+     * @param theIndex the placement index.
+     * @return the shape of the piece at rest.
+     */
+    int getShape(final int theIndex) {
+        return myBaseShape + myPlacements[theIndex] / (myXCount * myYCount);
+    }
+
+    /**
+     * Finds the placements of a piece on a grid.
+     *
+     * @param theGrid the frozen blocks, of the size of this finder.
+     * @param theShape the shape of the piece at its start.
+     * @param theX the x position of the start.
+     * @param theY the y position of the start.
+     * @return the number of placements found; 0 if the start is not legal.
+     */
+    int search(final BitBoard theGrid, final int theShape, final int theX, final int theY) {
+        Arrays.fill(myVisited, 0);
+        myPlacementCount = 0;
+        myBaseShape = theShape - PieceTable.rotation(theShape).ordinal();
+        int tail = 0;
+        if (theGrid.fits(theShape, theX, theY)) {
+            tail = visit(theShape, theX, theY, -1, Action.DOWN, tail);
+        }
+        for (int head = 0; head < tail; head++) {
+            final int state = myQueue[head];
+            final int shape = myBaseShape + state / (myXCount * myYCount);
+            final int x = state % myXCount - X_OFFSET;
+            final int y = state / myXCount % myYCount - Y_OFFSET;
+            // sideways moves and rotations first, so paths shift before they fall
+            if (theGrid.fits(shape, x - 1, y)) {
+                tail = visit(shape, x - 1, y, state, Action.LEFT, tail);
+            }
+            if (theGrid.fits(shape, x + 1, y)) {
+                tail = visit(shape, x + 1, y, state, Action.RIGHT, tail);
+            }
+            tail = rotate(theGrid, shape, x, y, state, Action.ROTATE_CW, tail);
+            tail = rotate(theGrid, shape, x, y, state, Action.ROTATE_CCW, tail);
+            if (theGrid.fits(shape, x, y - 1)) {
+                tail = visit(shape, x, y - 1, state, Action.DOWN, tail);
+            } else {
+                myPlacements[myPlacementCount++] = state;
+            }
+        }
+        return myPlacementCount;
+    }
+
+    /**
+     * Follows a rotation edge of the search.
+     *
+     * @param theGrid the frozen blocks.
+     * @param theShape the shape before the rotation.
+     * @param theX the x position before the rotation.
+     * @param theY the y position before the rotation.
+     * @param theFrom the state index before the rotation.
+     * @param theAction ROTATE_CW or ROTATE_CCW.
+     * @param theTail the current end of the queue.
+     * @return the new end of the queue.
+     */
+    private int rotate(final BitBoard theGrid, final int theShape, final int theX,
+                       final int theY, final int theFrom, final Action theAction,
+                       final int theTail) {
+        final Rotation from = PieceTable.rotation(theShape);
+        Rotation to = from.counterClockwise();
+        if (theAction == Action.ROTATE_CW) {
+            to = from.clockwise();
+        }
+        final long rotated = PieceState.rotate(theGrid, PieceState.pack(theShape, theX, theY),
+                                               to);
+        int result = theTail;
+        if (rotated != PieceState.NONE) {
+            result = visit(PieceState.shape(rotated), PieceState.x(rotated),
+                           PieceState.y(rotated), theFrom, theAction, theTail);
+        }
+        return result;
+    }
+
+    /**
+     * Marks a legal state as visited and queues it, unless it was already visited
+     * or lies beyond the rows tracked above the board.
+     *
+     * @param theShape the shape of the state.
+     * @param theX the x position of the state.
+     * @param theY the y position of the state.
+     * @param theFrom the state index it was reached from, or -1 for the start.
+     * @param theAction the move that reached it.
+     * @param theTail the current end of the queue.
+     * @return the new end of the queue.
+     */
+    private int visit(final int theShape, final int theX, final int theY,
+                      final int theFrom, final Action theAction, final int theTail) {
+        int result = theTail;
+        final int row = theY + Y_OFFSET;
+        if (row < myYCount) {
+            final int state = ((theShape - myBaseShape) * myYCount + row) * myXCount
+                              + theX + X_OFFSET;
+            final long bit = 1L << state;
+            final int word = state >>> WORD_SHIFT;
+            if ((myVisited[word] & bit) == 0) {
+                myVisited[word] |= bit;
+                myParent[state] = theFrom;
+                myMove[state] = (byte) theAction.ordinal();
+                myQueue[result++] = state;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Creates the InputSource that plays one simulated game.
+ * A SimulationFarm asks for a new policy for every game, from whichever
+ * worker thread runs it, so policies may keep state without synchronization.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface PolicyFactory {
+
+    /**
+     * Creates the policy for one game.
+     *
+     * @param theSeed the seed of the game, for policies that make random choices.
+     * @return a new InputSource used only by that game.
+     */
+    InputSource createPolicy(long theSeed);
+
+}
@@ -0,0 +1,938 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An append-only archive of many game records in a directory.
+ *
+ * Records (board size, piece sequence and inputs) are packed one after another
+ * into fixed size segment files. A separate index file holds one fixed width
+ * entry per game: its seed, final score, lines cleared and the location of its
+ * record. Game ids are the positions of their entries, so finding a record
+ * takes one index read. Both the index and the segments are memory mapped:
+ * get() returns a view of the mapped record without reading or copying the
+ * rest of the segment.
+ *
+ * The seeds, scores and lines of the entries are also kept sorted, in mapped
+ * key files beside the index. The key files of a field hold sorted runs of
+ * consecutive games; the latest games, not yet in a run, form a short unsorted
+ * tail. Appending only extends the tail. A full tail is sorted into a new run,
+ * and a run is merged with the run before it once it is as large, so each key
+ * is rewritten a logarithmic number of times. The find methods binary search
+ * every run and scan the tail. Key files that are missing or do not match the
+ * index are rebuilt from the index when the archive is opened.
+ *
+ * The entry count in the index header is written after the record and its
+ * entry, so if the process dies a game is either completely in the archive
+ * or not at all. The mapped files reach the storage device only through
+ * force() or close(), and the operating system may write their pages in any
+ * order, so after a power failure the games appended since the last force()
+ * may be lost or damaged. Methods are synchronized; views returned by get()
+ * stay valid until the archive is closed.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class ReplayArchive implements Closeable {
+
+    /**
+     * The default size of a segment file in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+    /**
+     * The name of the index file.
+     */
+    private static final String INDEX_FILE = "index.dat";
+
+    /**
+     * The first four bytes of an index file ("TRAI").
+     */
+    private static final int MAGIC = 0x54524149;
+
+    /**
+     * The version of the archive format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The offset of the format version in the index header.
+     */
+    private static final int VERSION_OFFSET = 4;
+
+    /**
+     * The offset of the entry count in the index header.
+     */
+    private static final int COUNT_OFFSET = 8;
+
+    /**
+     * The offset of the segment size in the index header.
+     */
+    private static final int SEGMENT_SIZE_OFFSET = 16;
+
+    /**
+     * The size of the index header.
+     */
+    private static final int INDEX_HEADER = 32;
+
+    /**
+     * The size of an index entry.
+     */
+    private static final int ENTRY_SIZE = 40;
+
+    /**
+     * The offset of the seed in an index entry.
+     */
+    private static final int SEED = 0;
+
+    /**
+     * The offset of the final score in an index entry.
+     */
+    private static final int SCORE = 8;
+
+    /**
+     * The offset of the lines cleared in an index entry.
+     */
+    private static final int LINES = 16;
+
+    /**
+     * The offset of the segment number in an index entry.
+     */
+    private static final int SEGMENT = 24;
+
+    /**
+     * The offset of the record position in its segment in an index entry.
+     */
+    private static final int OFFSET = 28;
+
+    /**
+     * The offset of the record length in an index entry.
+     */
+    private static final int LENGTH = 32;
+
+    /**
+     * The number of entries the index mapping starts with.
+     */
+    private static final int INITIAL_ENTRIES = 1024;
+
+    /**
+     * The extension of a key file.
+     */
+    private static final String KEYS_EXTENSION = ".keys";
+
+    /**
+     * The extension of a key file being written.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * The first four bytes of a key file ("TRAK").
+     */
+    private static final int KEYS_MAGIC = 0x5452414B;
+
+    /**
+     * The offset of the id of the first game of the run in a key file header.
+     */
+    private static final int KEYS_FIRST_OFFSET = 4;
+
+    /**
+     * The offset of the number of keys in a key file header.
+     */
+    private static final int KEYS_COUNT_OFFSET = 8;
+
+    /**
+     * The size of a key file header.
+     */
+    private static final int KEYS_HEADER = 16;
+
+    /**
+     * The size of a key file entry: the key followed by the game id.
+     */
+    private static final int KEY_SIZE = 12;
+
+    /**
+     * The offset of the game id in a key file entry.
+     */
+    private static final int KEY_ID = 8;
+
+    /**
+     * The number of games in the unsorted tail that makes a new run.
+     */
+    private static final int MAX_TAIL = 1024;
+
+    /**
+     * The directory holding the archive.
+     */
+    private final Path myDirectory;
+
+    /**
+     * The channel of the index file.
+     */
+    private final FileChannel myIndexChannel;
+
+    /**
+     * The size of each segment file.
+     */
+    private final int mySegmentSize;
+
+    /**
+     * The mapped segments, indexed by segment number.
+     */
+    private final List<MappedByteBuffer> mySegments;
+
+    /**
+     * The mapped index file.
+     */
+    private MappedByteBuffer myIndex;
+
+    /**
+     * The ids of the games sorted by seed.
+     */
+    private final KeyRuns mySeeds = new KeyRuns(SEED, "seed");
+
+    /**
+     * The ids of the games sorted by final score.
+     */
+    private final KeyRuns myScores = new KeyRuns(SCORE, "score");
+
+    /**
+     * The ids of the games sorted by lines cleared.
+     */
+    private final KeyRuns myLines = new KeyRuns(LINES, "lines");
+
+    /**
+     * The number of games in the archive.
+     */
+    private int myCount;
+
+    /**
+     * The segment receiving new records.
+     */
+    private int mySegment;
+
+    /**
+     * The position of the next record in the current segment.
+     */
+    private int myOffset;
+
+    /**
+     * Opens an archive, creating it if the directory holds none.
+     *
+     * @param theDirectory the directory of the archive; created if missing.
+     * @param theSegmentSize the size of new segment files in bytes; an existing
+     *        archive keeps the segment size it was created with.
+     * @throws IOException if the archive cannot be opened or is not valid.
+     * @throws IllegalArgumentException if the segment size cannot hold a record.
+     */
+    public ReplayArchive(final Path theDirectory, final int theSegmentSize)
+        throws IOException {
+        if (theSegmentSize <= ArchivedGame.HEADER_SIZE) {
+            throw new IllegalArgumentException("Segments must be larger than "
+                                               + ArchivedGame.HEADER_SIZE + " bytes");
+        }
+        Files.createDirectories(theDirectory);
+        myDirectory = theDirectory;
+        myIndexChannel = FileChannel.open(theDirectory.resolve(INDEX_FILE),
+                                          StandardOpenOption.CREATE,
+                                          StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+        mySegments = new ArrayList<MappedByteBuffer>();
+        mySegmentSize = openIndex(theSegmentSize);
+        locateEnd();
+        mySeeds.open();
+        myScores.open();
+        myLines.open();
+    }
+
+    /**
+     * Opens an archive with the default segment size, creating it if needed.
+     *
+     * @param theDirectory the directory of the archive.
+     * @throws IOException if the archive cannot be opened or is not valid.
+     */
+    public ReplayArchive(final Path theDirectory) throws IOException {
+        this(theDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Adds a game.
+     *
+     * @param theWidth the board width.
+     * @param theHeight the board height.
+     * @param theSeed the seed the game was played from.
+     * @param thePieces the piece sequence.
+     * @param theActions the inputs.
+     * @param theScore the final score.
+     * @param theLines the rows cleared.
+     * @return the id of the game.
+     * @throws IOException if the archive cannot be extended.
+     * @throws IllegalArgumentException if the record does not fit in a segment.
+     */
+    public synchronized long append(final int theWidth, final int theHeight,
+                                    final long theSeed, final List<TetrisPiece> thePieces,
+                                    final List<Action> theActions, final long theScore,
+                                    final long theLines) throws IOException {
+        final long length = (long) ArchivedGame.HEADER_SIZE + thePieces.size()
+                            + theActions.size();
+        if (length > mySegmentSize) {
+            throw new IllegalArgumentException("The game does not fit in a segment");
+        }
+        if (myOffset + length > mySegmentSize) {
+            mySegment++;
+            myOffset = 0;
+        }
+        mySeeds.sortTail();
+        myScores.sortTail();
+        myLines.sortTail();
+        final ByteBuffer record = segment(mySegment).duplicate();
+        record.position(myOffset);
+        record.putShort((short) theWidth).putShort((short) theHeight);
+        record.putInt(thePieces.size()).putInt(theActions.size());
+        for (final TetrisPiece piece : thePieces) {
+            record.put((byte) piece.ordinal());
+        }
+        for (final Action action : theActions) {
+            record.put((byte) action.ordinal());
+        }
+        final int entry = entry(myCount);
+        myIndex.putLong(entry + SEED, theSeed);
+        myIndex.putLong(entry + SCORE, theScore);
+        myIndex.putLong(entry + LINES, theLines);
+        myIndex.putInt(entry + SEGMENT, mySegment);
+        myIndex.putInt(entry + OFFSET, myOffset);
+        myIndex.putInt(entry + LENGTH, (int) length);
+        myOffset += (int) length;
+        myCount++;
+        myIndex.putLong(COUNT_OFFSET, myCount);
+        return myCount - 1;
+    }
+
+    /**
+     * Returns the number of games in the archive.
+     *
+     * @return the number of games.
+     */
+    public synchronized long size() {
+        return myCount;
+    }
+
+    /**
+     * Returns a game.
+     *
+     * @param theId the id of the game.
+     * @return a view of the game record.
+     * @throws IndexOutOfBoundsException if there is no game with the id.
+     * @throws IOException if the segment cannot be mapped.
+     */
+    public synchronized ArchivedGame get(final long theId) throws IOException {
+        if (theId < 0 || theId >= myCount) {
+            throw new IndexOutOfBoundsException("No game " + theId);
+        }
+        final int entry = entry((int) theId);
+        final ByteBuffer record = segment(myIndex.getInt(entry + SEGMENT)).asReadOnlyBuffer();
+        record.position(myIndex.getInt(entry + OFFSET));
+        record.limit(record.position() + myIndex.getInt(entry + LENGTH));
+        return new ArchivedGame(theId, myIndex.getLong(entry + SEED),
+                                myIndex.getLong(entry + SCORE),
+                                myIndex.getLong(entry + LINES), record.slice());
+    }
+
+    /**
+     * Finds the games played from a seed.
+     *
+     * @param theSeed the seed.
+     * @return the ids of the games, in ascending order.
+     */
+    public synchronized long[] findBySeed(final long theSeed) {
+        return mySeeds.find(theSeed, theSeed);
+    }
+
+    /**
+     * Finds the games with a final score in a range.
+     *
+     * @param theMin the lowest score.
+     * @param theMax the highest score.
+     * @return the ids of the games, in ascending order.
+     */
+    public synchronized long[] findByScore(final long theMin, final long theMax) {
+        return myScores.find(theMin, theMax);
+    }
+
+    /**
+     * Finds the games with a number of cleared lines in a range.
+     *
+     * @param theMin the fewest lines.
+     * @param theMax the most lines.
+     * @return the ids of the games, in ascending order.
+     */
+    public synchronized long[] findByLines(final long theMin, final long theMax) {
+        return myLines.find(theMin, theMax);
+    }
+
+    /**
+     * Writes changes of the mapped files to the storage device.
+     */
+    public synchronized void force() {
+        for (final MappedByteBuffer segment : mySegments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        myIndex.force();
+    }
+
+    /**
+     * Writes changes to the storage device and closes the index. Views returned
+     * by get() must not be used afterwards.
+     *
+     * @throws IOException if the index cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        myIndexChannel.close();
+    }
+
+    /**
+     * Maps the index file, writing a header if it is new, and reads the entry count.
+     *
+     * @param theSegmentSize the segment size of a new archive.
+     * @return the segment size of the archive.
+     * @throws IOException if the index cannot be mapped or is not valid.
+     */
+    private int openIndex(final int theSegmentSize) throws IOException {
+        final boolean created = myIndexChannel.size() == 0;
+        mapIndex(Math.max(INITIAL_ENTRIES,
+                          (int) ((myIndexChannel.size() - INDEX_HEADER) / ENTRY_SIZE)));
+        if (created) {
+            myIndex.putInt(0, MAGIC);
+            myIndex.putInt(VERSION_OFFSET, VERSION);
+            myIndex.putLong(SEGMENT_SIZE_OFFSET, theSegmentSize);
+        } else if (myIndex.getInt(0) != MAGIC || myIndex.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Not a replay archive of a known version: " + myDirectory);
+        }
+        myCount = (int) myIndex.getLong(COUNT_OFFSET);
+        return (int) myIndex.getLong(SEGMENT_SIZE_OFFSET);
+    }
+
+    /**
+     * Finds where the next record goes: after the record of the last entry.
+     */
+    private void locateEnd() {
+        if (myCount > 0) {
+            final int entry = entry(myCount - 1);
+            mySegment = myIndex.getInt(entry + SEGMENT);
+            myOffset = myIndex.getInt(entry + OFFSET) + myIndex.getInt(entry + LENGTH);
+        }
+    }
+
+    /**
+     * Maps the index with room for a number of entries, growing the file if needed.
+     *
+     * @param theEntries the number of entries to map.
+     * @throws IOException if the index cannot be mapped.
+     */
+    private void mapIndex(final int theEntries) throws IOException {
+        myIndex = myIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                     INDEX_HEADER + (long) theEntries * ENTRY_SIZE);
+    }
+
+    /**
+     * Returns the position of an entry in the index, remapping a larger index
+     * if the entry lies beyond the mapping.
+     *
+     * @param theId the id of the game.
+     * @return the byte offset of the entry.
+     */
+    private int entry(final int theId) {
+        final long position = INDEX_HEADER + (long) theId * ENTRY_SIZE;
+        if (position + ENTRY_SIZE > myIndex.capacity()) {
+            if (position + ENTRY_SIZE > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The archive index is full");
+            }
+            try {
+                mapIndex((int) Math.min((long) theId * 2,
+                                        (Integer.MAX_VALUE - INDEX_HEADER) / ENTRY_SIZE));
+            } catch (final IOException e) {
+                throw new IllegalStateException("The archive index cannot grow", e);
+            }
+        }
+        return (int) position;
+    }
+
+    /**
+     * Returns a mapped segment, creating the segment file if needed.
+     *
+     * @param theSegment the segment number.
+     * @return the mapping of the whole segment.
+     * @throws IOException if the segment cannot be mapped.
+     */
+    private MappedByteBuffer segment(final int theSegment) throws IOException {
+        while (mySegments.size() <= theSegment) {
+            mySegments.add(null);
+        }
+        MappedByteBuffer result = mySegments.get(theSegment);
+        if (result == null) {
+            final Path file = myDirectory.resolve(String.format("segment-%05d.dat",
+                                                                theSegment));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                result = channel.map(FileChannel.MapMode.READ_WRITE, 0, mySegmentSize);
+            }
+            mySegments.set(theSegment, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of an entry of a run.
+     *
+     * @param theRun the mapped run.
+     * @param theIndex the position of the entry in the run.
+     * @return the key.
+     */
+    private static long runKey(final ByteBuffer theRun, final int theIndex) {
+        return theRun.getLong(KEYS_HEADER + theIndex * KEY_SIZE);
+    }
+
+    /**
+     * Returns the game id of an entry of a run.
+     *
+     * @param theRun the mapped run.
+     * @param theIndex the position of the entry in the run.
+     * @return the game id.
+     */
+    private static int runId(final ByteBuffer theRun, final int theIndex) {
+        return theRun.getInt(KEYS_HEADER + theIndex * KEY_SIZE + KEY_ID);
+    }
+
+    /**
+     * Writes an entry of a run.
+     *
+     * @param theRun the mapped run.
+     * @param theIndex the position of the entry in the run.
+     * @param theKey the key.
+     * @param theId the game id.
+     */
+    private static void putEntry(final ByteBuffer theRun, final int theIndex,
+                                 final long theKey, final int theId) {
+        theRun.putLong(KEYS_HEADER + theIndex * KEY_SIZE, theKey);
+        theRun.putInt(KEYS_HEADER + theIndex * KEY_SIZE + KEY_ID, theId);
+    }
+
+    /**
+     * Returns the id of the first game of a run.
+     *
+     * @param theRun the mapped run.
+     * @return the id of its first game.
+     */
+    private static int runFirst(final ByteBuffer theRun) {
+        return theRun.getInt(KEYS_FIRST_OFFSET);
+    }
+
+    /**
+     * Returns the number of games in a run.
+     *
+     * @param theRun the mapped run.
+     * @return the number of games.
+     */
+    private static int runCount(final ByteBuffer theRun) {
+        return theRun.getInt(KEYS_COUNT_OFFSET);
+    }
+
+    /**
+     * Returns the position of the first key of a run not below a value.
+     *
+     * @param theRun the mapped run.
+     * @param theKey the value.
+     * @return the position, or the size of the run if every key is below it.
+     */
+    private static int firstAtLeast(final ByteBuffer theRun, final long theKey) {
+        int low = 0;
+        int high = runCount(theRun);
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (runKey(theRun, middle) < theKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position of the first key of a run above a value.
+     *
+     * @param theRun the mapped run.
+     * @param theKey the value.
+     * @return the position, or the size of the run if no key is above it.
+     */
+    private static int firstAbove(final ByteBuffer theRun, final long theKey) {
+        int low = 0;
+        int high = runCount(theRun);
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (runKey(theRun, middle) <= theKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts a range of keys with their ids by merge sort, which keeps the
+     * ids of equal keys in order.
+     *
+     * @param theKeys receives the sorted keys.
+     * @param theIds receives the ids in the order of the keys.
+     * @param theSourceKeys a copy of the keys to sort.
+     * @param theSourceIds a copy of their ids.
+     * @param theFrom the first position of the range.
+     * @param theTo the position after the range.
+     */
+    private static void sort(final long[] theKeys, final int[] theIds,
+                             final long[] theSourceKeys, final int[] theSourceIds,
+                             final int theFrom, final int theTo) {
+        if (theTo - theFrom > 1) {
+            final int middle = (theFrom + theTo) >>> 1;
+            // the halves are sorted in the source, then merged into the result
+            sort(theSourceKeys, theSourceIds, theKeys, theIds, theFrom, middle);
+            sort(theSourceKeys, theSourceIds, theKeys, theIds, middle, theTo);
+            int left = theFrom;
+            int right = middle;
+            for (int i = theFrom; i < theTo; i++) {
+                if (right >= theTo
+                    || left < middle && theSourceKeys[left] <= theSourceKeys[right]) {
+                    theKeys[i] = theSourceKeys[left];
+                    theIds[i] = theSourceIds[left++];
+                } else {
+                    theKeys[i] = theSourceKeys[right];
+                    theIds[i] = theSourceIds[right++];
+                }
+            }
+        }
+    }
+
+    /**
+     * The ids of the games sorted by one field of their entries, for finding a
+     * range of keys by binary search. Games 0 to myEnd - 1 are in mapped runs,
+     * each sorted with the ids of equal keys in ascending order; the runs cover
+     * consecutive games and each is at least as large as the run after it.
+     * The later games form the unsorted tail, whose keys are read from the index.
+     */
+    private final class KeyRuns {
+
+        /**
+         * The offset of the field in an index entry.
+         */
+        private final int myField;
+
+        /**
+         * The name of the field, which starts the names of its key files.
+         */
+        private final String myName;
+
+        /**
+         * The mapped runs, in order of their games.
+         */
+        private final List<MappedByteBuffer> myRuns = new ArrayList<MappedByteBuffer>();
+
+        /**
+         * The id of the first game of the tail.
+         */
+        private int myEnd;
+
+        /**
+         * Creates the keys of a field; open() maps them.
+         *
+         * @param theField the offset of the field in an index entry.
+         * @param theName the name of the field.
+         */
+        KeyRuns(final int theField, final String theName) {
+            myField = theField;
+            myName = theName;
+        }
+
+        /**
+         * Maps the runs that cover the first games of the index, deletes every
+         * other key file of the field, and sorts the tail if it is full.
+         *
+         * @throws IOException if the key files cannot be read, written or deleted.
+         */
+        void open() throws IOException {
+            final List<Path> files = new ArrayList<Path>();
+            try (DirectoryStream<Path> stream =
+                            Files.newDirectoryStream(myDirectory, myName + "-*")) {
+                for (final Path file : stream) {
+                    files.add(file);
+                }
+            }
+            Path next = nextRun(files);
+            while (next != null) {
+                final MappedByteBuffer run = mapRun(next);
+                if (run == null) {
+                    next = null;
+                } else {
+                    myRuns.add(run);
+                    myEnd += runCount(run);
+                    files.remove(next);
+                    next = nextRun(files);
+                }
+            }
+            for (final Path file : files) {
+                Files.delete(file);
+            }
+            sortTail();
+        }
+
+        /**
+         * Moves a full tail into a new run, then merges the last run into the
+         * run before it for as long as it is as large.
+         *
+         * @throws IOException if a key file cannot be written.
+         */
+        void sortTail() throws IOException {
+            if (myCount - myEnd >= MAX_TAIL) {
+                final int size = myCount - myEnd;
+                final long[] keys = new long[size];
+                final int[] ids = new int[size];
+                for (int i = 0; i < size; i++) {
+                    ids[i] = myEnd + i;
+                    keys[i] = myIndex.getLong(entry(ids[i]) + myField);
+                }
+                sort(keys, ids, keys.clone(), ids.clone(), 0, size);
+                final MappedByteBuffer run = createRun(myEnd, myCount);
+                for (int i = 0; i < size; i++) {
+                    putEntry(run, i, keys[i], ids[i]);
+                }
+                myRuns.add(commitRun(run, myEnd, myCount));
+                myEnd = myCount;
+            }
+            while (myRuns.size() > 1 && runCount(myRuns.get(myRuns.size() - 1))
+                                        >= runCount(myRuns.get(myRuns.size() - 2))) {
+                mergeLastRuns();
+            }
+        }
+
+        /**
+         * Finds the games with a key in a range.
+         *
+         * @param theMin the lowest key.
+         * @param theMax the highest key.
+         * @return the ids of the games, in ascending order.
+         */
+        long[] find(final long theMin, final long theMax) {
+            final int[] from = new int[myRuns.size()];
+            final int[] to = new int[myRuns.size()];
+            int size = myCount - myEnd;
+            for (int r = 0; r < from.length; r++) {
+                from[r] = firstAtLeast(myRuns.get(r), theMin);
+                to[r] = Math.max(from[r], firstAbove(myRuns.get(r), theMax));
+                size += to[r] - from[r];
+            }
+            final long[] result = new long[size];
+            int found = 0;
+            for (int r = 0; r < from.length; r++) {
+                for (int i = from[r]; i < to[r]; i++) {
+                    result[found++] = runId(myRuns.get(r), i);
+                }
+            }
+            for (int id = myEnd; id < myCount; id++) {
+                final long key = myIndex.getLong(entry(id) + myField);
+                if (key >= theMin && key <= theMax) {
+                    result[found++] = id;
+                }
+            }
+            final long[] ids = Arrays.copyOf(result, found);
+            Arrays.sort(ids);
+            return ids;
+        }
+
+        /**
+         * Merges the last two runs into one.
+         *
+         * @throws IOException if the key file cannot be written.
+         */
+        private void mergeLastRuns() throws IOException {
+            final MappedByteBuffer left = myRuns.remove(myRuns.size() - 2);
+            final MappedByteBuffer right = myRuns.remove(myRuns.size() - 1);
+            final int first = runFirst(left);
+            final int end = runFirst(right) + runCount(right);
+            final MappedByteBuffer run = createRun(first, end);
+            int leftIndex = 0;
+            int rightIndex = 0;
+            for (int i = 0; i < end - first; i++) {
+                // the ids of the left run are all smaller, so equal keys take it first
+                if (rightIndex >= runCount(right) || leftIndex < runCount(left)
+                    && runKey(left, leftIndex) <= runKey(right, rightIndex)) {
+                    putEntry(run, i, runKey(left, leftIndex), runId(left, leftIndex));
+                    leftIndex++;
+                } else {
+                    putEntry(run, i, runKey(right, rightIndex), runId(right, rightIndex));
+                    rightIndex++;
+                }
+            }
+            myRuns.add(commitRun(run, first, end));
+            Files.delete(runFile(first, runFirst(right)));
+            Files.delete(runFile(runFirst(right), end));
+        }
+
+        /**
+         * Chooses the key file that continues the runs: the one starting at the
+         * tail with the most games, none of them past the end of the index.
+         *
+         * @param theFiles the key files of the field not yet taken.
+         * @return the key file, or null if none continues the runs.
+         */
+        private Path nextRun(final List<Path> theFiles) {
+            final String prefix = myName + "-" + myEnd + "-";
+            Path result = null;
+            long best = myEnd;
+            for (final Path file : theFiles) {
+                final String name = file.getFileName().toString();
+                final long end = parseEnd(name, prefix);
+                if (end > best && end <= myCount) {
+                    result = file;
+                    best = end;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Reads the end of the run from the name of a key file.
+         *
+         * @param theName the name of the file.
+         * @param thePrefix the field name and the first game of the run.
+         * @return the id after the last game of the run, or -1 if the file is
+         *         not the key file of a run starting with that game.
+         */
+        private long parseEnd(final String theName, final String thePrefix) {
+            long result = -1;
+            if (theName.startsWith(thePrefix) && theName.endsWith(KEYS_EXTENSION)) {
+                try {
+                    result = Long.parseLong(theName.substring(thePrefix.length(),
+                                            theName.length() - KEYS_EXTENSION.length()));
+                } catch (final NumberFormatException e) {
+                    result = -1;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Maps a key file, checking that it holds the run its name promises.
+         *
+         * @param theFile the key file of a run starting at the tail.
+         * @return the mapped run, or null if the file does not hold the run.
+         * @throws IOException if the file cannot be mapped.
+         */
+        private MappedByteBuffer mapRun(final Path theFile) throws IOException {
+            final MappedByteBuffer result;
+            try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+                result = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            final boolean valid = result.capacity() >= KEYS_HEADER
+                                  && result.getInt(0) == KEYS_MAGIC
+                                  && runFirst(result) == myEnd
+                                  && theFile.equals(runFile(myEnd,
+                                                            myEnd + runCount(result)))
+                                  && result.capacity() == KEYS_HEADER
+                                                          + (long) runCount(result) * KEY_SIZE;
+            MappedByteBuffer run = null;
+            if (valid) {
+                run = result;
+            }
+            return run;
+        }
+
+        /**
+         * Creates the temporary key file of a new run and maps it with its header.
+         *
+         * @param theFirst the id of the first game of the run.
+         * @param theEnd the id after the last game of the run.
+         * @return the mapping, to be filled with the entries and committed.
+         * @throws IOException if the file cannot be created.
+         */
+        private MappedByteBuffer createRun(final int theFirst, final int theEnd)
+            throws IOException {
+            final MappedByteBuffer result;
+            try (FileChannel channel = FileChannel.open(tempFile(theFirst, theEnd),
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                result = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                     KEYS_HEADER + (long) (theEnd - theFirst) * KEY_SIZE);
+            }
+            result.putInt(0, KEYS_MAGIC);
+            result.putInt(KEYS_FIRST_OFFSET, theFirst);
+            result.putInt(KEYS_COUNT_OFFSET, theEnd - theFirst);
+            return result;
+        }
+
+        /**
+         * Writes a filled run to the storage device and gives its key file its
+         * name, so a key file under its name is always complete.
+         *
+         * @param theRun the mapping returned by createRun.
+         * @param theFirst the id of the first game of the run.
+         * @param theEnd the id after the last game of the run.
+         * @return the run.
+         * @throws IOException if the file cannot be renamed.
+         */
+        private MappedByteBuffer commitRun(final MappedByteBuffer theRun, final int theFirst,
+                                           final int theEnd) throws IOException {
+            theRun.force();
+            Files.move(tempFile(theFirst, theEnd), runFile(theFirst, theEnd),
+                       StandardCopyOption.ATOMIC_MOVE);
+            return theRun;
+        }
+
+        /**
+         * Returns the key file of a run.
+         *
+         * @param theFirst the id of the first game of the run.
+         * @param theEnd the id after the last game of the run.
+         * @return the path of the key file.
+         */
+        private Path runFile(final int theFirst, final int theEnd) {
+            return myDirectory.resolve(myName + "-" + theFirst + "-" + theEnd
+                                       + KEYS_EXTENSION);
+        }
+
+        /**
+         * Returns the key file of a run while it is written.
+         *
+         * @param theFirst the id of the first game of the run.
+         * @param theEnd the id after the last game of the run.
+         * @return the path of the temporary key file.
+         */
+        private Path tempFile(final int theFirst, final int theEnd) {
+            return myDirectory.resolve(myName + "-" + theFirst + "-" + theEnd
+                                       + KEYS_EXTENSION + TEMP_EXTENSION);
+        }
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays recorded games back on a Board.
+ *
+ * A replay is a timeline of events: inputs, new games and piece sequences,
+ * read from a stream written by ReplayRecorder or built from a piece sequence
+ * and a list of actions. The player re-drives its own Board as fast as the
+ * rules run; observers of that board see the game as it was played.
+ *
+ * While playing, the player saves a checkpoint of the game state every few
+ * pieces. Seeking restores the nearest checkpoint at or before the target and
+ * re-simulates the few events after it. Seeks, and every advance in fast
+ * forward mode, run with the board's notifications suppressed and then send
+ * observers a single frame: the board data and the next piece. Observers that
+ * add up row clear or next piece events, such as a score display, do not see
+ * the skipped events.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class ReplayPlayer {
+
+    /**
+     * The default number of pieces between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * The Action values indexed by ordinal.
+     */
+    private static final Action[] ACTIONS = Action.values();
+
+    /**
+     * The events of the replay.
+     */
+    private final Timeline myTimeline;
+
+    /**
+     * The board the replay is played on.
+     */
+    private final Board myBoard;
+
+    /**
+     * The number of pieces between checkpoints.
+     */
+    private final int myInterval;
+
+    /**
+     * The positions of the checkpoints, in ascending order.
+     */
+    private int[] myCheckpointPositions;
+
+    /**
+     * The game states at the checkpoint positions.
+     */
+    private final List<TetrisEngine.State> myCheckpoints;
+
+    /**
+     * The index of the next event to play.
+     */
+    private int myPosition;
+
+    /**
+     * The pieces placed when the last event was played.
+     */
+    private long myLastPieces;
+
+    /**
+     * Whether advancing sends only one frame to observers.
+     */
+    private boolean myFastForward;
+
+    /**
+     * Constructs a player for a game given as a piece sequence and its inputs.
+     * The sequence is set and a game started before the first input, and each
+     * input is timed one microsecond after the previous one.
+     *
+     * @param theWidth the board width.
+     * @param theHeight the board height.
+     * @param thePieces the pieces of the game, passed to Board.setPieceSequence.
+     * @param theActions the inputs in order.
+     * @param theInterval the number of pieces between checkpoints.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    public ReplayPlayer(final int theWidth, final int theHeight,
+                        final List<TetrisPiece> thePieces, final List<Action> theActions,
+                        final int theInterval) {
+        this(Timeline.of(theWidth, theHeight, thePieces, theActions), theInterval);
+    }
+
+    /**
+     * Constructs a player.
+     *
+     * @param theTimeline the events of the replay.
+     * @param theInterval the number of pieces between checkpoints.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    private ReplayPlayer(final Timeline theTimeline, final int theInterval) {
+        if (theInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive");
+        }
+        myTimeline = theTimeline;
+        myInterval = theInterval;
+        myBoard = new Board(theTimeline.myWidth, theTimeline.myHeight,
+                            new PieceGenerator(0L, theTimeline.myMode));
+        myCheckpoints = new ArrayList<TetrisEngine.State>();
+        myCheckpoints.add(myBoard.saveState());
+        myCheckpointPositions = new int[] {0};
+    }
+
+    /**
+     * Opens a replay file written by ReplayRecorder.
+     *
+     * @param theFile the replay file.
+     * @param theInterval the number of pieces between checkpoints.
+     * @return the player, positioned before the first event.
+     * @throws IOException if the file cannot be read or is not a valid replay.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    public static ReplayPlayer open(final Path theFile, final int theInterval)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+            return new ReplayPlayer(Timeline.read(channel.map(FileChannel.MapMode.READ_ONLY,
+                                                              0, channel.size())),
+                                    theInterval);
+        }
+    }
+
+    /**
+     * Returns the board the replay is played on. Observers may be added to it.
+     *
+     * @return the board.
+     */
+    public Board getBoard() {
+        return myBoard;
+    }
+
+    /**
+     * Returns the number of events in the replay.
+     *
+     * @return the number of events.
+     */
+    public int getLength() {
+        return myTimeline.myCount;
+    }
+
+    /**
+     * Returns the number of events played.
+     *
+     * @return the index of the next event to play.
+     */
+    public int getPosition() {
+        return myPosition;
+    }
+
+    /**
+     * Returns the time of the last event played.
+     *
+     * @return microseconds since recording started; 0 before the first event.
+     */
+    public long getTime() {
+        long result = 0L;
+        if (myPosition > 0) {
+            result = myTimeline.myTimes[myPosition - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the time of the last event of the replay.
+     *
+     * @return microseconds since recording started.
+     */
+    public long getDuration() {
+        long result = 0L;
+        if (myTimeline.myCount > 0) {
+            result = myTimeline.myTimes[myTimeline.myCount - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of checkpoints saved so far.
+     *
+     * @return the number of checkpoints, including the start of the replay.
+     */
+    public int getCheckpointCount() {
+        return myCheckpoints.size();
+    }
+
+    /**
+     * Returns whether advancing sends only one frame to observers.
+     *
+     * @return true in fast forward mode.
+     */
+    public boolean isFastForward() {
+        return myFastForward;
+    }
+
+    /**
+     * Chooses whether advancing notifies observers of every move or only sends
+     * the final frame of each advance.
+     *
+     * @param theFastForward true for fast forward mode.
+     */
+    public void setFastForward(final boolean theFastForward) {
+        myFastForward = theFastForward;
+    }
+
+    /**
+     * Plays the next events.
+     *
+     * @param theCount the most events to play.
+     * @return the number of events played; less than theCount at the end of the replay.
+     */
+    public int advance(final int theCount) {
+        final int start = myPosition;
+        final int end = (int) Math.min((long) myPosition + Math.max(theCount, 0),
+                                       myTimeline.myCount);
+        myBoard.setQuiet(myFastForward);
+        try {
+            playTo(end);
+        } finally {
+            myBoard.setQuiet(false);
+        }
+        if (myFastForward) {
+            myBoard.publishFrame();
+        }
+        return myPosition - start;
+    }
+
+    /**
+     * Moves to a position in the replay and sends observers its frame.
+     *
+     * @param thePosition the number of events to have played,
+     *        clamped to the length of the replay.
+     */
+    public void seek(final int thePosition) {
+        final int target = Math.max(0, Math.min(thePosition, myTimeline.myCount));
+        int index = Arrays.binarySearch(myCheckpointPositions, 0, myCheckpoints.size(),
+                                        target);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        final int checkpoint = myCheckpointPositions[index];
+        if (myPosition < checkpoint || myPosition > target) {
+            myBoard.restoreState(myCheckpoints.get(index));
+            myPosition = checkpoint;
+            myLastPieces = myBoard.getEngine().getPiecesPlaced();
+        }
+        myBoard.setQuiet(true);
+        try {
+            playTo(target);
+        } finally {
+            myBoard.setQuiet(false);
+        }
+        myBoard.publishFrame();
+    }
+
+    /**
+     * Moves to the last event at or before a time and sends observers its frame.
+     *
+     * @param theMicros microseconds since recording started.
+     */
+    public void seekTime(final long theMicros) {
+        int low = 0;
+        int high = myTimeline.myCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (myTimeline.myTimes[middle] <= theMicros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        seek(low);
+    }
+
+    /**
+     * Plays events up to a position, saving checkpoints in unexplored parts of
+     * the replay.
+     *
+     * @param theEnd the number of events to have played.
+     */
+    private void playTo(final int theEnd) {
+        final TetrisEngine engine = myBoard.getEngine();
+        while (myPosition < theEnd) {
+            play(myPosition);
+            myPosition++;
+            final long pieces = engine.getPiecesPlaced();
+            if (pieces != myLastPieces && pieces % myInterval == 0
+                && myPosition > myCheckpointPositions[myCheckpoints.size() - 1]) {
+                addCheckpoint();
+            }
+            myLastPieces = pieces;
+        }
+    }
+
+    /**
+     * Plays one event.
+     *
+     * @param theIndex the index of the event.
+     */
+    private void play(final int theIndex) {
+        final int code = myTimeline.myCodes[theIndex];
+        if (code == ReplayRecorder.CONTROL) {
+            final Control control = myTimeline.myControls.get(theIndex);
+            if (control.myPieces == null) {
+                myBoard.getEngine().getGenerator().restore(control.myBlockState,
+                                                           control.myBlockIndex);
+                myBoard.newGame();
+            } else {
+                myBoard.setPieceSequence(control.myPieces);
+            }
+        } else {
+            myBoard.perform(ACTIONS[code]);
+        }
+    }
+
+    /**
+     * Saves a checkpoint at the current position.
+     */
+    private void addCheckpoint() {
+        final int count = myCheckpoints.size();
+        if (count == myCheckpointPositions.length) {
+            myCheckpointPositions = Arrays.copyOf(myCheckpointPositions, count * 2);
+        }
+        myCheckpointPositions[count] = myPosition;
+        myCheckpoints.add(myBoard.saveState());
+    }
+
+
+    // Inner classes
+
+    /**
+     * A new game or piece sequence event.
+     */
+    private static final class Control {
+
+        /**
+         * The generator block state at the start of a new game.
+         */
+        private final long myBlockState;
+
+        /**
+         * The generator block index at the start of a new game.
+         */
+        private final int myBlockIndex;
+
+        /**
+         * The piece sequence, or null for a new game.
+         */
+        private final List<TetrisPiece> myPieces;
+
+        /**
+         * Constructs a control event.
+         *
+         * @param theBlockState the generator block state of a new game.
+         * @param theBlockIndex the generator block index of a new game.
+         * @param thePieces the piece sequence, or null for a new game.
+         */
+        Control(final long theBlockState, final int theBlockIndex,
+                final List<TetrisPiece> thePieces) {
+            myBlockState = theBlockState;
+            myBlockIndex = theBlockIndex;
+            myPieces = thePieces;
+        }
+    }
+
+    /**
+     * The events of a replay in arrays: a time and a code per event, with the
+     * payloads of control events kept by event index.
+     */
+    private static final class Timeline {
+
+        /**
+         * The initial capacity of the event arrays.
+         */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /**
+         * The Action codes, or CONTROL, of the events.
+         */
+        private byte[] myCodes = new byte[INITIAL_CAPACITY];
+
+        /**
+         * The times of the events in microseconds since recording started.
+         */
+        private long[] myTimes = new long[INITIAL_CAPACITY];
+
+        /**
+         * The payloads of the control events by event index.
+         */
+        private final Map<Integer, Control> myControls = new HashMap<Integer, Control>();
+
+        /**
+         * The number of events.
+         */
+        private int myCount;
+
+        /**
+         * The board width.
+         */
+        private int myWidth;
+
+        /**
+         * The board height.
+         */
+        private int myHeight;
+
+        /**
+         * The generator mode of the recorded games.
+         */
+        private PieceGenerator.Mode myMode = PieceGenerator.Mode.UNIFORM;
+
+        /**
+         * Builds the timeline of a game given as a piece sequence and its inputs.
+         *
+         * @param theWidth the board width.
+         * @param theHeight the board height.
+         * @param thePieces the piece sequence.
+         * @param theActions the inputs in order.
+         * @return the timeline.
+         */
+        static Timeline of(final int theWidth, final int theHeight,
+                           final List<TetrisPiece> thePieces, final List<Action> theActions) {
+            final Timeline result = new Timeline();
+            final PieceGenerator fresh = new PieceGenerator(0L, result.myMode);
+            result.myWidth = theWidth;
+            result.myHeight = theHeight;
+            result.add(ReplayRecorder.CONTROL, 0L,
+                       new Control(0L, 0, new ArrayList<TetrisPiece>(thePieces)));
+            result.add(ReplayRecorder.CONTROL, 0L,
+                       new Control(fresh.getBlockState(), fresh.getIndex(), null));
+            long time = 0L;
+            for (final Action action : theActions) {
+                time++;
+                result.add(action.ordinal(), time, null);
+            }
+            return result;
+        }
+
+        /**
+         * Reads the timeline of a replay stream.
+         *
+         * @param theBuffer the stream.
+         * @return the timeline.
+         * @throws IOException if the stream is not a valid replay.
+         */
+        static Timeline read(final ByteBuffer theBuffer) throws IOException {
+            final Timeline result = new Timeline();
+            try {
+                if (theBuffer.getInt() != ReplayRecorder.MAGIC
+                    || getVarLong(theBuffer) != ReplayRecorder.VERSION) {
+                    throw new IOException("Not a replay stream of a known version");
+                }
+                theBuffer.getLong(); // the wall clock time recording started
+                long time = 0L;
+                while (theBuffer.hasRemaining()) {
+                    final long head = getVarLong(theBuffer);
+                    final int code = (int) head & ReplayRecorder.CONTROL;
+                    time += head >>> ReplayRecorder.CODE_BITS;
+                    if (code == ReplayRecorder.CONTROL) {
+                        result.readControl(theBuffer, time);
+                    } else {
+                        result.add(code, time, null);
+                    }
+                }
+            } catch (final BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("The replay stream is truncated or corrupt", e);
+            }
+            if (result.myWidth == 0) {
+                throw new IOException("The replay stream has no board record");
+            }
+            return result;
+        }
+
+        /**
+         * Reads the type and payload of a control record.
+         *
+         * @param theBuffer the stream, positioned after the record head.
+         * @param theTime the time of the record.
+         * @throws IOException if the record is not valid.
+         */
+        private void readControl(final ByteBuffer theBuffer, final long theTime)
+            throws IOException {
+            final int type = theBuffer.get();
+            if (type == ReplayRecorder.BOARD) {
+                final long width = getVarLong(theBuffer);
+                final long height = getVarLong(theBuffer);
+                check(width >= 1 && width <= BitBoard.MAX_WIDTH
+                      && height >= 1 && height <= Short.MAX_VALUE);
+                if (myWidth != 0 && (width != myWidth || height != myHeight)) {
+                    throw new IOException("The board size changes within the replay");
+                }
+                myWidth = (int) width;
+                myHeight = (int) height;
+            } else if (type == ReplayRecorder.NEW_GAME) {
+                myMode = PieceGenerator.Mode.values()[theBuffer.get()];
+                final long state = theBuffer.getLong();
+                final long index = getVarLong(theBuffer);
+                check(index >= 0 && index <= PieceGenerator.BLOCK_SIZE);
+                add(ReplayRecorder.CONTROL, theTime, new Control(state, (int) index, null));
+            } else if (type == ReplayRecorder.SEQUENCE) {
+                final long length = getVarLong(theBuffer);
+                // a piece takes a byte, so a longer sequence cannot be in the stream
+                check(length >= 0 && length <= theBuffer.remaining());
+                final List<TetrisPiece> pieces = new ArrayList<TetrisPiece>((int) length);
+                for (int i = 0; i < length; i++) {
+                    pieces.add(TetrisPiece.values()[theBuffer.get()]);
+                }
+                add(ReplayRecorder.CONTROL, theTime, new Control(0L, 0, pieces));
+            } else {
+                throw new IOException("Unknown replay record type " + type);
+            }
+        }
+
+        /**
+         * Rejects a stream whose record fails a check.
+         *
+         * @param theCondition the check.
+         * @throws IOException if the check fails.
+         */
+        private static void check(final boolean theCondition) throws IOException {
+            if (!theCondition) {
+                throw new IOException("corrupt replay");
+            }
+        }
+
+        /**
+         * Appends an event.
+         *
+         * @param theCode the Action ordinal or CONTROL.
+         * @param theTime the time of the event.
+         * @param theControl the payload of a control event, or null.
+         */
+        private void add(final int theCode, final long theTime, final Control theControl) {
+            if (myCount == myCodes.length) {
+                myCodes = Arrays.copyOf(myCodes, myCount * 2);
+                myTimes = Arrays.copyOf(myTimes, myCount * 2);
+            }
+            if (theControl != null) {
+                myControls.put(myCount, theControl);
+            }
+            myCodes[myCount] = (byte) theCode;
+            myTimes[myCount] = theTime;
+            myCount++;
+        }
+
+        /**
+         * Reads an unsigned varint.
+         *
+         * @param theBuffer the stream.
+         * @return the value.
+         */
+        private static long getVarLong(final ByteBuffer theBuffer) {
+            long result = 0L;
+            int shift = 0;
+            int next;
+            do {
+                next = theBuffer.get();
+                result |= (long) (next & ReplayRecorder.VARINT_MASK) << shift;
+                shift += ReplayRecorder.VARINT_BITS;
+            } while ((next & ReplayRecorder.VARINT_MORE) != 0);
+            return result;
+        }
+    }
+}
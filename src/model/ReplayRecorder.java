@@ -0,0 +1,327 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Records the inputs of games in a compact binary replay stream.
+ *
+ * A Board with a recorder attached writes its size, the position of its piece
+ * generator at the start of each game, every piece sequence it is given, and
+ * every call to left, right, down, drop, rotateCW, rotateCCW and step. Since the
+ * rules are deterministic this is enough to play the games again exactly.
+ *
+ * The stream starts with a fixed header (magic number, format version and the
+ * wall clock time recording started). Each record then starts with a varint
+ * holding the microseconds since the previous record shifted left by three bits,
+ * with the Action ordinal in the low bits; the code CONTROL marks a control
+ * record whose type byte and payload follow. A typical input takes one or two
+ * bytes. Records are collected in a direct buffer and written to the channel
+ * only when the buffer fills or is flushed, so recording an input costs a clock
+ * read and a few buffer writes.
+ *
+ * A recorder is not thread safe; it is meant to be driven by one board. Write
+ * errors are reported as UncheckedIOExceptions because the board inputs cannot
+ * throw checked exceptions.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class ReplayRecorder implements Closeable, Flushable {
+
+    /**
+     * The default size of the write buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The first four bytes of a replay stream ("TRPL").
+     */
+    static final int MAGIC = 0x5452504C;
+
+    /**
+     * The version of the stream format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The number of low bits of a record head holding the record code.
+     */
+    static final int CODE_BITS = 3;
+
+    /**
+     * The record code marking a control record.
+     */
+    static final int CONTROL = (1 << CODE_BITS) - 1;
+
+    /**
+     * Control record type: the board size follows as two varints.
+     */
+    static final int BOARD = 0;
+
+    /**
+     * Control record type: a new game starts. The generator mode byte,
+     * its block state as a long and its block index as a varint follow.
+     */
+    static final int NEW_GAME = 1;
+
+    /**
+     * Control record type: a piece sequence is set. The length as a varint
+     * and one TetrisPiece ordinal byte per piece follow.
+     */
+    static final int SEQUENCE = 2;
+
+    /**
+     * The number of payload bits in each varint byte.
+     */
+    static final int VARINT_BITS = 7;
+
+    /**
+     * The mask of the payload bits of a varint byte.
+     */
+    static final int VARINT_MASK = 0x7F;
+
+    /**
+     * The flag marking a varint byte that is followed by another.
+     */
+    static final int VARINT_MORE = 0x80;
+
+    /**
+     * The most bytes a record other than a sequence takes.
+     */
+    private static final int MAX_RECORD = 32;
+
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    /**
+     * The destination of the stream.
+     */
+    private final WritableByteChannel myChannel;
+
+    /**
+     * The records not yet written to the channel.
+     */
+    private final ByteBuffer myBuffer;
+
+    /**
+     * The clock time of the previous record in microseconds.
+     */
+    private long myLastMicros;
+
+    /**
+     * The number of inputs recorded.
+     */
+    private long myInputs;
+
+    /**
+     * The number of bytes written to the channel.
+     */
+    private long myBytesWritten;
+
+    /**
+     * Constructs a recorder with the default buffer size and writes the header.
+     *
+     * @param theChannel the destination of the stream, closed with the recorder.
+     */
+    public ReplayRecorder(final WritableByteChannel theChannel) {
+        this(theChannel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a recorder and writes the header.
+     *
+     * @param theChannel the destination of the stream, closed with the recorder.
+     * @param theBufferSize the size of the write buffer in bytes.
+     * @throws IllegalArgumentException if the buffer cannot hold a record.
+     */
+    public ReplayRecorder(final WritableByteChannel theChannel, final int theBufferSize) {
+        if (theBufferSize < MAX_RECORD) {
+            throw new IllegalArgumentException("The buffer must hold at least "
+                                               + MAX_RECORD + " bytes");
+        }
+        myChannel = theChannel;
+        myBuffer = ByteBuffer.allocateDirect(theBufferSize);
+        myBuffer.putInt(MAGIC);
+        putVarLong(VERSION);
+        myBuffer.putLong(System.currentTimeMillis());
+        myLastMicros = System.nanoTime() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Creates a recorder writing to a file, replacing any existing contents.
+     *
+     * @param theFile the replay file.
+     * @return the recorder.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static ReplayRecorder create(final Path theFile) throws IOException {
+        return new ReplayRecorder(FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Records an input.
+     *
+     * @param theAction the input.
+     */
+    public void record(final Action theAction) {
+        ensure(MAX_RECORD);
+        putHead(theAction.ordinal());
+        myInputs++;
+    }
+
+    /**
+     * Writes the buffered records to the channel.
+     */
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Writes the buffered records and closes the channel.
+     *
+     * @throws IOException if the channel cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            myChannel.close();
+        }
+    }
+
+    /**
+     * Returns the number of inputs recorded.
+     *
+     * @return the number of inputs.
+     */
+    public long getInputCount() {
+        return myInputs;
+    }
+
+    /**
+     * Returns the size of the stream so far, including buffered records.
+     *
+     * @return the number of bytes.
+     */
+    public long getByteCount() {
+        return myBytesWritten + myBuffer.position();
+    }
+
+    /**
+     * Records the size of the board being recorded.
+     *
+     * @param theWidth the board width.
+     * @param theHeight the board height.
+     */
+    void board(final int theWidth, final int theHeight) {
+        ensure(MAX_RECORD);
+        putHead(CONTROL);
+        myBuffer.put((byte) BOARD);
+        putVarLong(theWidth);
+        putVarLong(theHeight);
+    }
+
+    /**
+     * Records the start of a game, before the generator deals its first piece.
+     *
+     * @param theGenerator the piece generator of the game.
+     */
+    void newGame(final PieceGenerator theGenerator) {
+        ensure(MAX_RECORD);
+        putHead(CONTROL);
+        myBuffer.put((byte) NEW_GAME);
+        myBuffer.put((byte) theGenerator.getMode().ordinal());
+        myBuffer.putLong(theGenerator.getBlockState());
+        putVarLong(theGenerator.getIndex());
+    }
+
+    /**
+     * Records a non random piece sequence.
+     *
+     * @param thePieces the sequence.
+     */
+    void pieceSequence(final List<TetrisPiece> thePieces) {
+        ensure(MAX_RECORD);
+        putHead(CONTROL);
+        myBuffer.put((byte) SEQUENCE);
+        putVarLong(thePieces.size());
+        for (final TetrisPiece piece : thePieces) {
+            ensure(1);
+            myBuffer.put((byte) piece.ordinal());
+        }
+    }
+
+    /**
+     * Writes the head of a record: the time since the previous record and a code.
+     *
+     * @param theCode an Action ordinal or CONTROL.
+     */
+    private void putHead(final int theCode) {
+        final long now = System.nanoTime() / NANOS_PER_MICRO;
+        final long delta = Math.max(0L, now - myLastMicros);
+        myLastMicros = now;
+        putVarLong(delta << CODE_BITS | theCode);
+    }
+
+    /**
+     * Writes an unsigned varint: seven bits per byte, low bits first.
+     *
+     * @param theValue the value, treated as unsigned.
+     */
+    private void putVarLong(final long theValue) {
+        long value = theValue;
+        while ((value & ~VARINT_MASK) != 0) {
+            myBuffer.put((byte) (value & VARINT_MASK | VARINT_MORE));
+            value >>>= VARINT_BITS;
+        }
+        myBuffer.put((byte) value);
+    }
+
+    /**
+     * Makes room in the buffer, writing it out if it is too full.
+     *
+     * @param theBytes the number of bytes about to be written.
+     */
+    private void ensure(final int theBytes) {
+        if (myBuffer.remaining() < theBytes) {
+            drain();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the channel.
+     */
+    private void drain() {
+        myBuffer.flip();
+        try {
+            while (myBuffer.hasRemaining()) {
+                myBytesWritten += myChannel.write(myBuffer);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            myBuffer.compact();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A query over the games of a ResultStore: a range for any of the stored
+ * fields, and optionally an EventPredicate checked by re-simulating the games
+ * that pass the ranges.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class ResultQuery {
+
+    /**
+     * The lowest accepted value of each restricted field.
+     */
+    private final Map<ResultStore.Field, Long> myMins;
+
+    /**
+     * The highest accepted value of each restricted field.
+     */
+    private final Map<ResultStore.Field, Long> myMaxes;
+
+    /**
+     * The event condition, or null for none.
+     */
+    private EventPredicate myPredicate;
+
+    /**
+     * Constructs a query that matches every game.
+     */
+    public ResultQuery() {
+        myMins = new EnumMap<ResultStore.Field, Long>(ResultStore.Field.class);
+        myMaxes = new EnumMap<ResultStore.Field, Long>(ResultStore.Field.class);
+    }
+
+    /**
+     * Restricts a field to a range, replacing any earlier range for it.
+     *
+     * @param theField the field.
+     * @param theMin the lowest accepted value.
+     * @param theMax the highest accepted value.
+     * @return this query.
+     */
+    public ResultQuery range(final ResultStore.Field theField, final long theMin,
+                             final long theMax) {
+        myMins.put(theField, theMin);
+        myMaxes.put(theField, theMax);
+        return this;
+    }
+
+    /**
+     * Restricts a field to values of at least a minimum.
+     *
+     * @param theField the field.
+     * @param theMin the lowest accepted value.
+     * @return this query.
+     */
+    public ResultQuery atLeast(final ResultStore.Field theField, final long theMin) {
+        return range(theField, theMin, Long.MAX_VALUE);
+    }
+
+    /**
+     * Adds a condition on the events of the games.
+     *
+     * @param thePredicate the condition, or null for none.
+     * @return this query.
+     */
+    public ResultQuery matching(final EventPredicate thePredicate) {
+        myPredicate = thePredicate;
+        return this;
+    }
+
+    /**
+     * Returns the lowest accepted value of a field.
+     *
+     * @param theField the field.
+     * @return the minimum, or Long.MIN_VALUE if the field is not restricted.
+     */
+    public long getMin(final ResultStore.Field theField) {
+        long result = Long.MIN_VALUE;
+        if (myMins.containsKey(theField)) {
+            result = myMins.get(theField);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the highest accepted value of a field.
+     *
+     * @param theField the field.
+     * @return the maximum, or Long.MAX_VALUE if the field is not restricted.
+     */
+    public long getMax(final ResultStore.Field theField) {
+        long result = Long.MAX_VALUE;
+        if (myMaxes.containsKey(theField)) {
+            result = myMaxes.get(theField);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the event condition.
+     *
+     * @return the condition, or null for none.
+     */
+    public EventPredicate getPredicate() {
+        return myPredicate;
+    }
+}
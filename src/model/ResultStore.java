@@ -0,0 +1,601 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A columnar store of per-game results with a parallel query engine.
+ *
+ * Each game adds one row. The fields that queries filter on (score, lines,
+ * level and length) are stored column by column, each in its own memory mapped
+ * file of longs, so a scan reads only the columns a query restricts. The piece
+ * sequence and inputs of each game go to a ReplayArchive in the same directory,
+ * under the row number as game id.
+ *
+ * Rows are grouped in blocks of BLOCK_ROWS, and a zone map keeps the smallest
+ * and largest value of every column in every block. A query skips blocks whose
+ * zones cannot match, accepts whole blocks whose zones match entirely, and
+ * checks rows one by one only in the remaining blocks. Blocks are scanned in
+ * parallel on a ForkJoinPool. Only games that pass the ranges and the query
+ * has an EventPredicate for are re-simulated, headless, to check their events.
+ *
+ * Zone maps are rebuilt from the columns when a store is opened. Methods are
+ * synchronized, so appends wait for running queries.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class ResultStore implements Closeable {
+
+    /**
+     * The stored fields of a game.
+     */
+    public enum Field {
+        /** The final score. */
+        SCORE,
+        /** The rows cleared. */
+        LINES,
+        /** The level reached. */
+        LEVEL,
+        /** The number of inputs. */
+        LENGTH
+    }
+
+    /**
+     * The number of rows in a block of the zone map.
+     */
+    public static final int BLOCK_ROWS = 4096;
+
+    /**
+     * The name of the subdirectory holding the game archive.
+     */
+    private static final String GAMES = "games";
+
+    /**
+     * The Field values indexed by ordinal.
+     */
+    private static final Field[] FIELDS = Field.values();
+
+    /**
+     * The number of rows the column mappings start with.
+     */
+    private static final int INITIAL_ROWS = BLOCK_ROWS;
+
+    /**
+     * The pool that runs queries.
+     */
+    private final ForkJoinPool myPool;
+
+    /**
+     * The piece sequences and inputs of the games.
+     */
+    private final ReplayArchive myGames;
+
+    /**
+     * The columns, indexed by Field ordinal.
+     */
+    private final Column[] myColumns;
+
+    /**
+     * The number of rows.
+     */
+    private int myCount;
+
+    /**
+     * Opens a store, creating it if the directory holds none.
+     * Queries run on the common pool.
+     *
+     * @param theDirectory the directory of the store.
+     * @throws IOException if the store cannot be opened.
+     */
+    public ResultStore(final Path theDirectory) throws IOException {
+        this(theDirectory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Opens a store, creating it if the directory holds none.
+     *
+     * @param theDirectory the directory of the store.
+     * @param thePool the pool that runs queries.
+     * @throws IOException if the store cannot be opened.
+     */
+    public ResultStore(final Path theDirectory, final ForkJoinPool thePool)
+        throws IOException {
+        myPool = thePool;
+        myGames = new ReplayArchive(theDirectory.resolve(GAMES));
+        myCount = (int) myGames.size();
+        myColumns = new Column[FIELDS.length];
+        for (final Field field : FIELDS) {
+            myColumns[field.ordinal()] = new Column(
+                theDirectory.resolve(field.name().toLowerCase(Locale.ROOT) + ".col"), myCount);
+        }
+    }
+
+    /**
+     * Adds the result of a finished game.
+     *
+     * @param theEngine the game, in its final state.
+     * @param theSeed the seed the game was played from.
+     * @param thePieces the pieces dealt in the game.
+     * @param theActions the inputs applied in the game.
+     * @return the row of the game, which is also its id in getGame().
+     * @throws IOException if the store cannot be extended.
+     */
+    public synchronized long append(final TetrisEngine theEngine, final long theSeed,
+                                    final List<TetrisPiece> thePieces,
+                                    final List<Action> theActions) throws IOException {
+        final long[] values = new long[FIELDS.length];
+        values[Field.SCORE.ordinal()] = theEngine.getScore();
+        values[Field.LINES.ordinal()] = theEngine.getLinesCleared();
+        values[Field.LEVEL.ordinal()] = theEngine.getLevel();
+        values[Field.LENGTH.ordinal()] = theActions.size();
+        for (final Field field : FIELDS) {
+            myColumns[field.ordinal()].set(myCount, values[field.ordinal()]);
+        }
+        // the archive entry commits the row
+        myGames.append(theEngine.getWidth(), theEngine.getHeight(), theSeed, thePieces,
+                       theActions, theEngine.getScore(), theEngine.getLinesCleared());
+        for (final Field field : FIELDS) {
+            myColumns[field.ordinal()].include(myCount, values[field.ordinal()]);
+        }
+        myCount++;
+        return myCount - 1;
+    }
+
+    /**
+     * Returns the number of games in the store.
+     *
+     * @return the number of rows.
+     */
+    public synchronized long size() {
+        return myCount;
+    }
+
+    /**
+     * Returns a field of a game.
+     *
+     * @param theRow the row of the game.
+     * @param theField the field.
+     * @return the value.
+     * @throws IndexOutOfBoundsException if there is no such row.
+     */
+    public synchronized long get(final long theRow, final Field theField) {
+        if (theRow < 0 || theRow >= myCount) {
+            throw new IndexOutOfBoundsException("No row " + theRow);
+        }
+        return myColumns[theField.ordinal()].get((int) theRow);
+    }
+
+    /**
+     * Returns the piece sequence and inputs of a game.
+     *
+     * @param theRow the row of the game.
+     * @return the stored game.
+     * @throws IOException if the game cannot be read.
+     * @throws IndexOutOfBoundsException if there is no such row.
+     */
+    public synchronized ArchivedGame getGame(final long theRow) throws IOException {
+        return myGames.get(theRow);
+    }
+
+    /**
+     * Finds the games matching a query.
+     *
+     * @param theQuery the query.
+     * @return the rows of the matching games, in ascending order.
+     * @throws UncheckedIOException if a game needed for re-simulation cannot be read.
+     */
+    public synchronized long[] select(final ResultQuery theQuery) {
+        final long[] mins = new long[FIELDS.length];
+        final long[] maxes = new long[FIELDS.length];
+        for (final Field field : FIELDS) {
+            mins[field.ordinal()] = theQuery.getMin(field);
+            maxes[field.ordinal()] = theQuery.getMax(field);
+        }
+        final int blocks = (myCount + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        return myPool.invoke(new QueryTask(this, mins, maxes, theQuery.getPredicate(),
+                                           0, blocks));
+    }
+
+    /**
+     * Writes all changes to the storage device and closes the store.
+     *
+     * @throws IOException if a file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (final Column column : myColumns) {
+            column.close();
+        }
+        myGames.close();
+    }
+
+    /**
+     * Finds the matching rows of one block.
+     *
+     * @param theBlock the block.
+     * @param theMins the lowest accepted value of each field.
+     * @param theMaxes the highest accepted value of each field.
+     * @param thePredicate the event condition, or null.
+     * @return the matching rows, in ascending order.
+     */
+    private long[] scan(final int theBlock, final long[] theMins, final long[] theMaxes,
+                        final EventPredicate thePredicate) {
+        boolean skip = false;
+        boolean whole = true;
+        for (int f = 0; f < myColumns.length; f++) {
+            final long low = myColumns[f].getZoneMin(theBlock);
+            final long high = myColumns[f].getZoneMax(theBlock);
+            skip |= high < theMins[f] || low > theMaxes[f];
+            whole &= low >= theMins[f] && high <= theMaxes[f];
+        }
+        final int start = theBlock * BLOCK_ROWS;
+        final int end = Math.min(start + BLOCK_ROWS, myCount);
+        long[] result = new long[0];
+        if (!skip) {
+            result = new long[end - start];
+            int found = 0;
+            for (int row = start; row < end; row++) {
+                if ((whole || inRanges(row, theMins, theMaxes))
+                    && (thePredicate == null || resimulate(row, thePredicate))) {
+                    result[found++] = row;
+                }
+            }
+            result = Arrays.copyOf(result, found);
+        }
+        return result;
+    }
+
+    /**
+     * Checks the fields of a row against the ranges of a query.
+     *
+     * @param theRow the row.
+     * @param theMins the lowest accepted value of each field.
+     * @param theMaxes the highest accepted value of each field.
+     * @return true if every field is in its range.
+     */
+    private boolean inRanges(final int theRow, final long[] theMins, final long[] theMaxes) {
+        boolean result = true;
+        for (int f = 0; f < myColumns.length && result; f++) {
+            final long value = myColumns[f].get(theRow);
+            result = value >= theMins[f] && value <= theMaxes[f];
+        }
+        return result;
+    }
+
+    /**
+     * Re-simulates a game until its events match a predicate or it ends.
+     *
+     * @param theRow the row of the game.
+     * @param thePredicate the event condition.
+     * @return true if the events matched.
+     */
+    private boolean resimulate(final int theRow, final EventPredicate thePredicate) {
+        final ArchivedGame game;
+        try {
+            game = myGames.get(theRow);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final Probe probe = new Probe(thePredicate);
+        final TetrisEngine engine = new TetrisEngine(game.getWidth(), game.getHeight(),
+            new PieceGenerator(0L, PieceGenerator.Mode.UNIFORM), probe);
+        probe.myEngine = engine;
+        engine.setPieceSequence(game.getPieces());
+        probe.myActive = true;
+        engine.newGame();
+        final int actions = game.getActionCount();
+        for (int i = 0; i < actions && !probe.myMatched; i++) {
+            engine.apply(game.getAction(i));
+        }
+        return probe.myMatched;
+    }
+
+
+    // Inner classes
+
+    /**
+     * One column: a memory mapped file of longs with a zone map.
+     */
+    private static final class Column {
+
+        /**
+         * The number of bytes per value.
+         */
+        private static final int VALUE_BYTES = Long.BYTES;
+
+        /**
+         * The channel of the column file.
+         */
+        private final FileChannel myChannel;
+
+        /**
+         * The mapped column file.
+         */
+        private MappedByteBuffer myValues;
+
+        /**
+         * The smallest value of each block.
+         */
+        private long[] myZoneMins;
+
+        /**
+         * The largest value of each block.
+         */
+        private long[] myZoneMaxes;
+
+        /**
+         * Opens a column and builds its zone map.
+         *
+         * @param theFile the column file.
+         * @param theRows the number of committed rows.
+         * @throws IOException if the file cannot be mapped.
+         */
+        Column(final Path theFile, final int theRows) throws IOException {
+            myChannel = FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                         StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map(Math.max(INITIAL_ROWS, theRows));
+            myZoneMins = new long[0];
+            myZoneMaxes = new long[0];
+            for (int row = 0; row < theRows; row++) {
+                include(row, get(row));
+            }
+        }
+
+        /**
+         * Returns a value.
+         *
+         * @param theRow the row.
+         * @return the value.
+         */
+        long get(final int theRow) {
+            return myValues.getLong(theRow * VALUE_BYTES);
+        }
+
+        /**
+         * Stores a value, growing the file if needed.
+         *
+         * @param theRow the row.
+         * @param theValue the value.
+         * @throws IOException if the file cannot grow.
+         */
+        void set(final int theRow, final long theValue) throws IOException {
+            if ((long) (theRow + 1) * VALUE_BYTES > myValues.capacity()) {
+                map(theRow * 2);
+            }
+            myValues.putLong(theRow * VALUE_BYTES, theValue);
+        }
+
+        /**
+         * Adds a committed value to the zone map.
+         *
+         * @param theRow the row.
+         * @param theValue the value.
+         */
+        void include(final int theRow, final long theValue) {
+            final int block = theRow / BLOCK_ROWS;
+            if (block == myZoneMins.length) {
+                myZoneMins = Arrays.copyOf(myZoneMins, block + 1);
+                myZoneMaxes = Arrays.copyOf(myZoneMaxes, block + 1);
+                myZoneMins[block] = theValue;
+                myZoneMaxes[block] = theValue;
+            } else {
+                myZoneMins[block] = Math.min(myZoneMins[block], theValue);
+                myZoneMaxes[block] = Math.max(myZoneMaxes[block], theValue);
+            }
+        }
+
+        /**
+         * Returns the smallest value of a block.
+         *
+         * @param theBlock the block.
+         * @return the minimum.
+         */
+        long getZoneMin(final int theBlock) {
+            return myZoneMins[theBlock];
+        }
+
+        /**
+         * Returns the largest value of a block.
+         *
+         * @param theBlock the block.
+         * @return the maximum.
+         */
+        long getZoneMax(final int theBlock) {
+            return myZoneMaxes[theBlock];
+        }
+
+        /**
+         * Writes the column to the storage device and closes it.
+         *
+         * @throws IOException if the file cannot be closed.
+         */
+        void close() throws IOException {
+            myValues.force();
+            myChannel.close();
+        }
+
+        /**
+         * Maps the file with room for a number of rows.
+         *
+         * @param theRows the number of rows.
+         * @throws IOException if the file cannot be mapped.
+         */
+        private void map(final int theRows) throws IOException {
+            myValues = myChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                     (long) theRows * VALUE_BYTES);
+        }
+    }
+
+    /**
+     * Passes the events of a re-simulated game to an EventPredicate.
+     */
+    private static final class Probe implements EngineListener {
+
+        /**
+         * The condition.
+         */
+        private final EventPredicate myPredicate;
+
+        /**
+         * The re-simulated game.
+         */
+        private TetrisEngine myEngine;
+
+        /**
+         * Whether the game has started; events of the setup are not passed on.
+         */
+        private boolean myActive;
+
+        /**
+         * Whether the condition has matched.
+         */
+        private boolean myMatched;
+
+        /**
+         * Constructs a probe.
+         *
+         * @param thePredicate the condition.
+         */
+        Probe(final EventPredicate thePredicate) {
+            myPredicate = thePredicate;
+        }
+
+        @Override
+        public void gameOver() {
+            event(Boolean.TRUE);
+        }
+
+        @Override
+        public void pieceFrozen(final int theShape, final int theX, final int theY) {
+            // frozen pieces are not events of the Board API
+        }
+
+        @Override
+        public void rowsCleared(final int[] theRows, final int theCount) {
+            final Integer[] rows = new Integer[theCount];
+            for (int i = 0; i < theCount; i++) {
+                rows[i] = theRows[i];
+            }
+            event(rows);
+        }
+
+        @Override
+        public void nextPiece(final TetrisPiece thePiece) {
+            event(thePiece);
+        }
+
+        @Override
+        public void pieceSpawned() {
+            // spawns are not events of the Board API
+        }
+
+        /**
+         * Passes an event to the condition until it matches.
+         *
+         * @param theEvent the event.
+         */
+        private void event(final Object theEvent) {
+            if (myActive && !myMatched) {
+                myMatched = myPredicate.matches(myEngine, theEvent);
+            }
+        }
+    }
+
+    /**
+     * Scans a range of blocks, splitting it until each task scans one block.
+     */
+    private static final class QueryTask extends RecursiveTask<long[]> {
+
+        /**
+         * A generated serial version UID for object Serialization.
+         */
+        private static final long serialVersionUID = 6121384577460120985L;
+
+        /**
+         * The store.
+         */
+        private final ResultStore myStore;
+
+        /**
+         * The lowest accepted value of each field.
+         */
+        private final long[] myMins;
+
+        /**
+         * The highest accepted value of each field.
+         */
+        private final long[] myMaxes;
+
+        /**
+         * The event condition, or null.
+         */
+        private final EventPredicate myPredicate;
+
+        /**
+         * The first block to scan.
+         */
+        private final int myFrom;
+
+        /**
+         * One past the last block to scan.
+         */
+        private final int myTo;
+
+        /**
+         * Constructs a task.
+         *
+         * @param theStore the store.
+         * @param theMins the lowest accepted value of each field.
+         * @param theMaxes the highest accepted value of each field.
+         * @param thePredicate the event condition, or null.
+         * @param theFrom the first block to scan.
+         * @param theTo one past the last block to scan.
+         */
+        QueryTask(final ResultStore theStore, final long[] theMins, final long[] theMaxes,
+                  final EventPredicate thePredicate, final int theFrom, final int theTo) {
+            super();
+            myStore = theStore;
+            myMins = theMins;
+            myMaxes = theMaxes;
+            myPredicate = thePredicate;
+            myFrom = theFrom;
+            myTo = theTo;
+        }
+
+        @Override
+        protected long[] compute() {
+            long[] result = new long[0];
+            if (myTo - myFrom == 1) {
+                result = myStore.scan(myFrom, myMins, myMaxes, myPredicate);
+            } else if (myTo > myFrom) {
+                final int middle = (myFrom + myTo) >>> 1;
+                final QueryTask low = new QueryTask(myStore, myMins, myMaxes, myPredicate,
+                                                    myFrom, middle);
+                low.fork();
+                final long[] high = new QueryTask(myStore, myMins, myMaxes, myPredicate,
+                                                  middle, myTo).compute();
+                final long[] first = low.join();
+                result = Arrays.copyOf(first, first.length + high.length);
+                System.arraycopy(high, 0, result, first.length, high.length);
+            }
+            return result;
+        }
+    }
+}
@@ -41,13 +41,18 @@ public enum Rotation {
      */
     private static final Random RANDOM = new Random();
 
+    /**
+     * The Rotation values, cached so rotating does not clone values().
+     */
+    private static final Rotation[] VALUES = values();
+
     /**
      * Create a new Rotation from this one rotated clockwise.
      * 
      * @return new Rotation object that is rotated 90 degrees clockwise.
      */
     public Rotation clockwise() {
-        return values()[(this.ordinal() + 1) % values().length];
+        return VALUES[(this.ordinal() + 1) % VALUES.length];
     }
 
     /**
@@ -56,7 +61,7 @@ public enum Rotation {
      * @return new Rotation object that is rotated 90 degrees clockwise.
      */
     public Rotation counterClockwise() {
-        return values()[(this.ordinal() - 1 + values().length) % values().length];
+        return VALUES[(this.ordinal() - 1 + VALUES.length) % VALUES.length];
     }
 
     /**
@@ -65,7 +70,7 @@ public enum Rotation {
      * @return new random Rotation.
      */
     public static Rotation random() {
-        return values()[RANDOM.nextInt(values().length)];
+        return VALUES[RANDOM.nextInt(VALUES.length)];
     }
 
 }
@@ -0,0 +1,25 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Receives the rows a Board clears.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public interface RowsClearedListener {
+
+    /**
+     * Called after complete rows have been removed.
+     *
+     * @param theRows the original indexes of the cleared rows in ascending order;
+     *        a new array owned by the listener.
+     */
+    void rowsCleared(int[] theRows);
+
+}
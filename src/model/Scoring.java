@@ -0,0 +1,210 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Keeps score the way the score panel of the game does.
+ *
+ * Every piece that is frozen without ending the game scores PIECE_POINTS.
+ * A clear of n rows scores the n-row value (40, 100, 300 or 1200) times the level,
+ * where the level goes up once every lines-per-level rows and the new level
+ * already applies to the clear that reached it.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class Scoring {
+
+    /**
+     * The points for each piece placed.
+     */
+    public static final int PIECE_POINTS = 4;
+
+    /**
+     * The rows cleared per level in the game.
+     */
+    public static final int DEFAULT_LINES_PER_LEVEL = 5;
+
+    /**
+     * Points for one line.
+     */
+    private static final int ONE_MULT = 40;
+
+    /**
+     * Points for two lines.
+     */
+    private static final int TWO_MULT = 100;
+
+    /**
+     * Points for three lines.
+     */
+    private static final int THREE_MULT = 300;
+
+    /**
+     * Points for four lines.
+     */
+    private static final int FOUR_MULT = 1200;
+
+    /**
+     * The points per level for each clear size.
+     */
+    private static final int[] LINE_POINTS = {0, ONE_MULT, TWO_MULT, THREE_MULT, FOUR_MULT};
+
+    /**
+     * The rows to clear for each level up.
+     */
+    private final int myLinesPerLevel;
+
+    /**
+     * The level a game starts at.
+     */
+    private final int myStartLevel;
+
+    /**
+     * The current level.
+     */
+    private int myLevel;
+
+    /**
+     * Rows cleared towards the next level.
+     */
+    private int myCounter;
+
+    /**
+     * The current score.
+     */
+    private long myScore;
+
+    /**
+     * Constructs scoring that starts at level 1 with the default lines per level.
+     */
+    public Scoring() {
+        this(1, DEFAULT_LINES_PER_LEVEL);
+    }
+
+    /**
+     * Constructs scoring with a start level and level requirement.
+     *
+     * @param theStartLevel the level a game starts at.
+     * @param theLinesPerLevel the rows to clear for each level up.
+     * @throws IllegalArgumentException if either value is not positive.
+     */
+    public Scoring(final int theStartLevel, final int theLinesPerLevel) {
+        if (theStartLevel < 1 || theLinesPerLevel < 1) {
+            throw new IllegalArgumentException("Level values must be positive");
+        }
+        myStartLevel = theStartLevel;
+        myLinesPerLevel = theLinesPerLevel;
+        reset();
+    }
+
+    /**
+     * Constructs a copy of another scoring.
+     *
+     * @param theOther the scoring to copy.
+     */
+    Scoring(final Scoring theOther) {
+        myStartLevel = theOther.myStartLevel;
+        myLinesPerLevel = theOther.myLinesPerLevel;
+        myLevel = theOther.myLevel;
+        myCounter = theOther.myCounter;
+        myScore = theOther.myScore;
+    }
+
+    /**
+     * Resets the score and level for a new game.
+     */
+    public void reset() {
+        myLevel = myStartLevel;
+        myCounter = 0;
+        myScore = 0;
+    }
+
+    /**
+     * Scores a piece that was frozen without ending the game.
+     */
+    public void piecePlaced() {
+        myScore += PIECE_POINTS;
+    }
+
+    /**
+     * Scores a clear, levelling up first if the clear reaches the next level.
+     *
+     * @param theRows the number of rows cleared at once.
+     */
+    public void rowsCleared(final int theRows) {
+        myCounter += theRows;
+        if (myCounter >= myLinesPerLevel) {
+            myLevel++;
+            myCounter = myCounter % myLinesPerLevel;
+        }
+        myScore += (long) LINE_POINTS[Math.min(theRows, LINE_POINTS.length - 1)] * myLevel;
+    }
+
+    /**
+     * Returns the current score.
+     *
+     * @return the score.
+     */
+    public long getScore() {
+        return myScore;
+    }
+
+    /**
+     * Returns the current level.
+     *
+     * @return the level.
+     */
+    public int getLevel() {
+        return myLevel;
+    }
+
+    /**
+     * Returns the number of rows left to clear for the next level.
+     *
+     * @return the lines to the next level.
+     */
+    public int getLinesToNextLevel() {
+        return myLinesPerLevel - myCounter;
+    }
+
+    /**
+     * Changes the level, as the difficulty slider does during a game. The score
+     * and the rows cleared towards the next level are kept.
+     *
+     * @param theLevel the new level.
+     * @throws IllegalArgumentException if the level is not positive.
+     */
+    public void setLevel(final int theLevel) {
+        if (theLevel < 1) {
+            throw new IllegalArgumentException("Level values must be positive");
+        }
+        myLevel = theLevel;
+    }
+
+    /**
+     * Returns the rows cleared towards the next level.
+     *
+     * @return the rows counted since the last level up.
+     */
+    int getCounter() {
+        return myCounter;
+    }
+
+    /**
+     * Restores a state captured with getScore, getLevel and getCounter.
+     *
+     * @param theScore the score.
+     * @param theLevel the level.
+     * @param theCounter the rows cleared towards the next level.
+     */
+    void restore(final long theScore, final int theLevel, final int theCounter) {
+        myScore = theScore;
+        myLevel = theLevel;
+        myCounter = theCounter;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays many independent headless games in parallel and reduces their results.
+ *
+ * Games are numbered from 0 and game i always gets the same seed for a given
+ * base seed, whichever thread plays it, so a run is reproducible on any number
+ * of cores. The range of games is split recursively on a ForkJoinPool; each
+ * leaf task plays its games on its own TetrisEngine and PieceGenerator, reseeded
+ * for every game, and fills its own SimulationStats, so nothing is shared
+ * until the partial results are merged.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class SimulationFarm {
+
+    /**
+     * Default width of a simulated board.
+     */
+    private static final int DEFAULT_WIDTH = 10;
+
+    /**
+     * Default height of a simulated board.
+     */
+    private static final int DEFAULT_HEIGHT = 20;
+
+    /**
+     * The number of leaf tasks per worker thread, for load balancing.
+     */
+    private static final int TASKS_PER_THREAD = 8;
+
+    /**
+     * The pool that plays the games.
+     */
+    private final ForkJoinPool myPool;
+
+    /**
+     * Width of the simulated boards.
+     */
+    private final int myWidth;
+
+    /**
+     * Height of the simulated boards.
+     */
+    private final int myHeight;
+
+    /**
+     * The most actions a single game may take.
+     */
+    private final long myMaxActions;
+
+    /**
+     * The way pieces are drawn.
+     */
+    private final PieceGenerator.Mode myMode;
+
+    /**
+     * Constructs a farm of standard size boards with no action limit,
+     * on a new pool with the given number of threads.
+     *
+     * @param theParallelism the number of worker threads.
+     */
+    public SimulationFarm(final int theParallelism) {
+        this(new ForkJoinPool(theParallelism), DEFAULT_WIDTH, DEFAULT_HEIGHT, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a farm drawing pieces uniformly.
+     *
+     * @param thePool the pool that plays the games.
+     * @param theWidth Width of the simulated boards.
+     * @param theHeight Height of the simulated boards.
+     * @param theMaxActions the most actions a single game may take; policies that
+     *        never drop need a limit to end their games.
+     * @throws IllegalArgumentException if the board size is invalid
+     *         or the action limit is not positive.
+     */
+    public SimulationFarm(final ForkJoinPool thePool, final int theWidth,
+                          final int theHeight, final long theMaxActions) {
+        this(thePool, theWidth, theHeight, theMaxActions, PieceGenerator.Mode.UNIFORM);
+    }
+
+    /**
+     * Constructs a farm.
+     *
+     * @param thePool the pool that plays the games.
+     * @param theWidth Width of the simulated boards.
+     * @param theHeight Height of the simulated boards.
+     * @param theMaxActions the most actions a single game may take; policies that
+     *        never drop need a limit to end their games.
+     * @param theMode the way pieces are drawn.
+     * @throws IllegalArgumentException if the board size is invalid
+     *         or the action limit is not positive.
+     */
+    public SimulationFarm(final ForkJoinPool thePool, final int theWidth,
+                          final int theHeight, final long theMaxActions,
+                          final PieceGenerator.Mode theMode) {
+        if (theMaxActions < 1) {
+            throw new IllegalArgumentException("The action limit must be positive");
+        }
+        BitBoard.checkSize(theWidth, theHeight);
+        myPool = thePool;
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myMaxActions = theMaxActions;
+        myMode = theMode;
+    }
+
+    /**
+     * Plays a number of games and returns their combined results.
+     *
+     * @param theGames the number of games to play.
+     * @param theSeed the base seed; game i is played with gameSeed(theSeed, i).
+     * @param theFactory creates the policy of each game.
+     * @return the combined results.
+     * @throws IllegalArgumentException if the number of games is negative.
+     */
+    public SimulationStats run(final long theGames, final long theSeed,
+                               final PolicyFactory theFactory) {
+        return run(theGames, theSeed, theFactory, null);
+    }
+
+    /**
+     * Plays a number of games, appends the result, pieces and inputs of each
+     * game to a store, and returns their combined results. Games are appended
+     * in the order they finish, which depends on the scheduling of the pool.
+     *
+     * @param theGames the number of games to play.
+     * @param theSeed the base seed; game i is played with gameSeed(theSeed, i).
+     * @param theFactory creates the policy of each game.
+     * @param theStore receives every game, or null to store nothing.
+     * @return the combined results.
+     * @throws IllegalArgumentException if the number of games is negative.
+     * @throws UncheckedIOException if a game cannot be stored.
+     */
+    public SimulationStats run(final long theGames, final long theSeed,
+                               final PolicyFactory theFactory, final ResultStore theStore) {
+        if (theGames < 0) {
+            throw new IllegalArgumentException("The number of games must not be negative");
+        }
+        final long leaves = (long) myPool.getParallelism() * TASKS_PER_THREAD;
+        final long leafSize = Math.max(1, theGames / leaves);
+        return myPool.invoke(new GameTask(this, theFactory, theStore, theSeed,
+                                          0, theGames, leafSize));
+    }
+
+    /**
+     * Plays a single game.
+     *
+     * @param theSeed the seed of the game.
+     * @param theFactory creates the policy of the game.
+     * @return the engine that played the game, in its final state.
+     */
+    public TetrisEngine play(final long theSeed, final PolicyFactory theFactory) {
+        final TetrisEngine engine = createEngine();
+        play(engine, theSeed, theFactory);
+        return engine;
+    }
+
+    /**
+     * Shuts down the pool of this farm.
+     */
+    public void shutdown() {
+        myPool.shutdown();
+    }
+
+    /**
+     * Returns the seed of one game of a run. Consecutive games get
+     * well mixed, unrelated seeds.
+     *
+     * @param theSeed the base seed of the run.
+     * @param theGame the game number.
+     * @return the seed of the game.
+     */
+    public static long gameSeed(final long theSeed, final long theGame) {
+        return SplitMix.mix(theSeed + (theGame + 1) * SplitMix.GAMMA);
+    }
+
+    /**
+     * Creates an engine for the games of this farm.
+     *
+     * @return a new engine.
+     */
+    private TetrisEngine createEngine() {
+        return new TetrisEngine(myWidth, myHeight, new PieceGenerator(0, myMode));
+    }
+
+    /**
+     * Plays a single game on an existing engine.
+     *
+     * @param theEngine the engine to play on.
+     * @param theSeed the seed of the game.
+     * @param theFactory creates the policy of the game.
+     */
+    private void play(final TetrisEngine theEngine, final long theSeed,
+                      final PolicyFactory theFactory) {
+        theEngine.newGame(theSeed);
+        theEngine.play(theFactory.createPolicy(theSeed), myMaxActions);
+    }
+
+
+    // Inner classes
+
+    /**
+     * Plays a range of games, splitting it in half until it is small enough.
+     */
+    private static final class GameTask extends RecursiveTask<SimulationStats> {
+
+        /**
+         * A generated serial version UID for object Serialization.
+         */
+        private static final long serialVersionUID = -2218946571318405567L;
+
+        /**
+         * The farm playing the games.
+         */
+        private final SimulationFarm myFarm;
+
+        /**
+         * Creates the policy of each game.
+         */
+        private final PolicyFactory myFactory;
+
+        /**
+         * Receives every game, or null.
+         */
+        private final ResultStore myStore;
+
+        /**
+         * The base seed of the run.
+         */
+        private final long mySeed;
+
+        /**
+         * The first game of the range.
+         */
+        private final long myFrom;
+
+        /**
+         * One past the last game of the range.
+         */
+        private final long myTo;
+
+        /**
+         * The largest range played without splitting.
+         */
+        private final long myLeafSize;
+
+        /**
+         * Constructs a task for a range of games.
+         *
+         * @param theFarm the farm playing the games.
+         * @param theFactory creates the policy of each game.
+         * @param theStore receives every game, or null.
+         * @param theSeed the base seed of the run.
+         * @param theFrom the first game.
+         * @param theTo one past the last game.
+         * @param theLeafSize the largest range played without splitting.
+         */
+        GameTask(final SimulationFarm theFarm, final PolicyFactory theFactory,
+                 final ResultStore theStore, final long theSeed, final long theFrom,
+                 final long theTo, final long theLeafSize) {
+            super();
+            myFarm = theFarm;
+            myFactory = theFactory;
+            myStore = theStore;
+            mySeed = theSeed;
+            myFrom = theFrom;
+            myTo = theTo;
+            myLeafSize = theLeafSize;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            final SimulationStats result;
+            if (myTo - myFrom <= myLeafSize) {
+                result = new SimulationStats();
+                final TetrisEngine engine = myFarm.createEngine();
+                final List<TetrisPiece> pieces = new ArrayList<TetrisPiece>();
+                final List<Action> actions = new ArrayList<Action>();
+                if (myStore != null) {
+                    engine.setLog(pieces, actions);
+                }
+                for (long game = myFrom; game < myTo; game++) {
+                    pieces.clear();
+                    actions.clear();
+                    myFarm.play(engine, gameSeed(mySeed, game), myFactory);
+                    result.add(engine);
+                    store(engine, gameSeed(mySeed, game), pieces, actions);
+                }
+            } else {
+                final long middle = myFrom + (myTo - myFrom) / 2;
+                final GameTask low = new GameTask(myFarm, myFactory, myStore, mySeed,
+                                                  myFrom, middle, myLeafSize);
+                low.fork();
+                result = new GameTask(myFarm, myFactory, myStore, mySeed,
+                                      middle, myTo, myLeafSize).compute();
+                result.merge(low.join());
+            }
+            return result;
+        }
+
+        /**
+         * Appends a finished game to the store, if there is one.
+         *
+         * @param theEngine the finished game.
+         * @param theSeed the seed of the game.
+         * @param thePieces the pieces dealt.
+         * @param theActions the inputs applied.
+         */
+        private void store(final TetrisEngine theEngine, final long theSeed,
+                           final List<TetrisPiece> thePieces, final List<Action> theActions) {
+            if (myStore != null) {
+                try {
+                    myStore.append(theEngine, theSeed, thePieces, theActions);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
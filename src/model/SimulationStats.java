@@ -0,0 +1,279 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Aggregate results of a number of simulated games.
+ *
+ * Each worker of a SimulationFarm fills its own SimulationStats and the
+ * partial results are merged at the end, so instances are not thread safe.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class SimulationStats {
+
+    /**
+     * The number of games.
+     */
+    private long myGames;
+
+    /**
+     * The number of games that ended in game over rather than at the action limit.
+     */
+    private long myGamesOver;
+
+    /**
+     * The total pieces placed.
+     */
+    private long myPieces;
+
+    /**
+     * The total rows cleared.
+     */
+    private long myLines;
+
+    /**
+     * The number of clears of each size, indexed by rows cleared.
+     */
+    private final long[] myClears;
+
+    /**
+     * The total score.
+     */
+    private long myScoreTotal;
+
+    /**
+     * The lowest game score.
+     */
+    private long myScoreMin;
+
+    /**
+     * The highest game score.
+     */
+    private long myScoreMax;
+
+    /**
+     * The total game length in actions.
+     */
+    private long myActions;
+
+    /**
+     * The longest game in actions.
+     */
+    private long myActionsMax;
+
+    /**
+     * Constructs empty statistics.
+     */
+    public SimulationStats() {
+        myClears = new long[TetrisEngine.MAX_CLEAR + 1];
+        myScoreMin = Long.MAX_VALUE;
+        myScoreMax = Long.MIN_VALUE;
+    }
+
+    /**
+     * Adds the results of a finished game.
+     *
+     * @param theEngine the engine that played the game.
+     */
+    public void add(final TetrisEngine theEngine) {
+        myGames++;
+        if (theEngine.isGameOver()) {
+            myGamesOver++;
+        }
+        myPieces += theEngine.getPiecesPlaced();
+        myLines += theEngine.getLinesCleared();
+        for (int rows = 1; rows < myClears.length; rows++) {
+            myClears[rows] += theEngine.getClears(rows);
+        }
+        final long score = theEngine.getScore();
+        myScoreTotal += score;
+        myScoreMin = Math.min(myScoreMin, score);
+        myScoreMax = Math.max(myScoreMax, score);
+        myActions += theEngine.getActions();
+        myActionsMax = Math.max(myActionsMax, theEngine.getActions());
+    }
+
+    /**
+     * Adds the results of other statistics to these.
+     *
+     * @param theOther the statistics to merge in.
+     */
+    public void merge(final SimulationStats theOther) {
+        myGames += theOther.myGames;
+        myGamesOver += theOther.myGamesOver;
+        myPieces += theOther.myPieces;
+        myLines += theOther.myLines;
+        for (int rows = 1; rows < myClears.length; rows++) {
+            myClears[rows] += theOther.myClears[rows];
+        }
+        myScoreTotal += theOther.myScoreTotal;
+        myScoreMin = Math.min(myScoreMin, theOther.myScoreMin);
+        myScoreMax = Math.max(myScoreMax, theOther.myScoreMax);
+        myActions += theOther.myActions;
+        myActionsMax = Math.max(myActionsMax, theOther.myActionsMax);
+    }
+
+    /**
+     * Returns the number of games.
+     *
+     * @return the games played.
+     */
+    public long getGames() {
+        return myGames;
+    }
+
+    /**
+     * Returns the number of games that ended in game over.
+     *
+     * @return the games lost before the action limit.
+     */
+    public long getGamesOver() {
+        return myGamesOver;
+    }
+
+    /**
+     * Returns the total pieces placed.
+     *
+     * @return the pieces placed in all games.
+     */
+    public long getPiecesPlaced() {
+        return myPieces;
+    }
+
+    /**
+     * Returns the total rows cleared.
+     *
+     * @return the lines cleared in all games.
+     */
+    public long getLinesCleared() {
+        return myLines;
+    }
+
+    /**
+     * Returns how many times a given number of rows was cleared at once.
+     *
+     * @param theRows the clear size, 1 to TetrisEngine.MAX_CLEAR.
+     * @return the number of clears of that size in all games.
+     */
+    public long getClears(final int theRows) {
+        return myClears[theRows];
+    }
+
+    /**
+     * Returns the total score.
+     *
+     * @return the sum of the game scores.
+     */
+    public long getTotalScore() {
+        return myScoreTotal;
+    }
+
+    /**
+     * Returns the lowest game score.
+     *
+     * @return the lowest score, or 0 if there are no games.
+     */
+    public long getMinScore() {
+        long result = 0;
+        if (myGames > 0) {
+            result = myScoreMin;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the highest game score.
+     *
+     * @return the highest score, or 0 if there are no games.
+     */
+    public long getMaxScore() {
+        long result = 0;
+        if (myGames > 0) {
+            result = myScoreMax;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the mean game score.
+     *
+     * @return the mean score, or 0 if there are no games.
+     */
+    public double getMeanScore() {
+        return mean(myScoreTotal);
+    }
+
+    /**
+     * Returns the total game length in actions.
+     *
+     * @return the actions applied in all games.
+     */
+    public long getActions() {
+        return myActions;
+    }
+
+    /**
+     * Returns the longest game length in actions.
+     *
+     * @return the longest game.
+     */
+    public long getMaxActions() {
+        return myActionsMax;
+    }
+
+    /**
+     * Returns the mean game length in actions.
+     *
+     * @return the mean game length, or 0 if there are no games.
+     */
+    public double getMeanActions() {
+        return mean(myActions);
+    }
+
+    /**
+     * Returns the mean pieces placed per game.
+     *
+     * @return the mean pieces placed, or 0 if there are no games.
+     */
+    public double getMeanPieces() {
+        return mean(myPieces);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("SimulationStats[games=");
+        sb.append(myGames).append(", over=").append(myGamesOver);
+        sb.append(", pieces=").append(myPieces).append(", lines=").append(myLines);
+        sb.append(", clears=");
+        for (int rows = 1; rows < myClears.length; rows++) {
+            sb.append(myClears[rows]);
+            if (rows < myClears.length - 1) {
+                sb.append('/');
+            }
+        }
+        sb.append(", score=").append(getMinScore()).append("..").append(getMaxScore());
+        sb.append(" mean ").append(getMeanScore());
+        sb.append(", actions=").append(myActions).append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Divides a total by the number of games.
+     *
+     * @param theTotal the total.
+     * @return the mean, or 0 if there are no games.
+     */
+    private double mean(final long theTotal) {
+        double result = 0;
+        if (myGames > 0) {
+            result = (double) theTotal / myGames;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Persists game snapshots on a background thread.
+ *
+ * submit() only swaps the snapshot into a pending slot and wakes the writer,
+ * so the game tick never waits for the disk. If snapshots arrive faster than
+ * they are written, the writer skips to the newest one. Each snapshot is
+ * appended to the journal file as a record holding its length, a CRC32 checksum
+ * and the bytes, and forced to the storage device. readLatest() returns the last
+ * complete record, so a crash in the middle of a write loses only that write;
+ * reopening the journal cuts the incomplete record off.
+ * When the file grows past a limit, it is replaced by a file holding only the
+ * newest record.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class SnapshotJournal implements Closeable {
+
+    /**
+     * The journal size at which it is compacted to its newest record.
+     */
+    public static final long DEFAULT_COMPACT_SIZE = 1 << 20;
+
+    /**
+     * The size of a record header: the length and the checksum.
+     */
+    private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+    /**
+     * The suffix of the file written during compaction.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The journal file.
+     */
+    private final Path myFile;
+
+    /**
+     * The journal size at which it is compacted.
+     */
+    private final long myCompactSize;
+
+    /**
+     * The newest snapshot not yet taken by the writer, or null.
+     */
+    private final AtomicReference<Pending> myPending;
+
+    /**
+     * The sequence number of the newest submitted snapshot.
+     */
+    private final AtomicLong mySubmitted;
+
+    /**
+     * The number of snapshots replaced before they were written.
+     */
+    private final AtomicLong mySkipped;
+
+    /**
+     * The writer thread.
+     */
+    private final Thread myWriter;
+
+    /**
+     * The channel of the journal file; used only by the writer.
+     */
+    private FileChannel myChannel;
+
+    /**
+     * The sequence number of the newest snapshot written; guarded by this.
+     */
+    private long myWritten;
+
+    /**
+     * The last write error not yet reported; guarded by this.
+     */
+    private IOException myError;
+
+    /**
+     * Whether the journal is open.
+     */
+    private volatile boolean myOpen;
+
+    /**
+     * Opens a journal with the default compaction size and starts its writer.
+     *
+     * @param theFile the journal file; created if missing.
+     * @throws IOException if the file cannot be opened.
+     */
+    public SnapshotJournal(final Path theFile) throws IOException {
+        this(theFile, DEFAULT_COMPACT_SIZE);
+    }
+
+    /**
+     * Opens a journal and starts its writer.
+     *
+     * @param theFile the journal file; created if missing.
+     * @param theCompactSize the journal size at which it is compacted.
+     * @throws IOException if the file cannot be opened.
+     */
+    public SnapshotJournal(final Path theFile, final long theCompactSize)
+        throws IOException {
+        myFile = theFile;
+        myCompactSize = theCompactSize;
+        myChannel = openChannel(theFile);
+        myPending = new AtomicReference<Pending>();
+        mySubmitted = new AtomicLong();
+        mySkipped = new AtomicLong();
+        myOpen = true;
+        myWriter = new Thread(new Writer(), "snapshot-journal");
+        myWriter.setDaemon(true);
+        myWriter.start();
+    }
+
+    /**
+     * Reads the newest complete snapshot of a journal file.
+     *
+     * @param theFile the journal file.
+     * @return the snapshot, or null if the file is missing or holds none.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] readLatest(final Path theFile) throws IOException {
+        byte[] result = null;
+        if (Files.exists(theFile)) {
+            final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(theFile));
+            final int last = scan(in);
+            if (last >= 0) {
+                result = Arrays.copyOfRange(in.array(), last + RECORD_HEADER, in.position());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queues a snapshot for writing without waiting for the disk. A snapshot
+     * still waiting from an earlier call is replaced.
+     *
+     * @param theSnapshot the snapshot; not modified afterwards by the caller.
+     * @throws IllegalStateException if the journal is closed.
+     */
+    public void submit(final byte[] theSnapshot) {
+        if (!myOpen) {
+            throw new IllegalStateException("The journal is closed");
+        }
+        final Pending pending = new Pending(mySubmitted.incrementAndGet(), theSnapshot);
+        if (myPending.getAndSet(pending) != null) {
+            mySkipped.incrementAndGet();
+        }
+        LockSupport.unpark(myWriter);
+    }
+
+    /**
+     * Waits until every snapshot submitted so far is written or skipped.
+     *
+     * @throws IOException if a write failed since the last flush.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void flush() throws IOException, InterruptedException {
+        final long target = mySubmitted.get();
+        synchronized (this) {
+            while (myWritten < target && myWriter.isAlive()) {
+                wait();
+            }
+            if (myError != null) {
+                final IOException error = myError;
+                myError = null;
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of snapshots replaced by newer ones before being written.
+     *
+     * @return the skipped snapshots.
+     */
+    public long getSkippedCount() {
+        return mySkipped.get();
+    }
+
+    /**
+     * Writes the pending snapshot, stops the writer and closes the file.
+     *
+     * @throws IOException if the last writes failed or the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (myOpen) {
+            myOpen = false;
+            LockSupport.unpark(myWriter);
+            try {
+                myWriter.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            myChannel.close();
+            synchronized (this) {
+                if (myError != null) {
+                    throw myError;
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a journal file for appending, first cutting off any record left
+     * incomplete by a crash so that new records follow the last valid one.
+     *
+     * @param theFile the file.
+     * @return the channel, positioned at the end of the valid records.
+     * @throws IOException if the file cannot be opened.
+     */
+    private static FileChannel openChannel(final Path theFile) throws IOException {
+        if (Files.exists(theFile)) {
+            final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(theFile));
+            scan(in);
+            if (in.hasRemaining()) {
+                try (FileChannel out = FileChannel.open(theFile, StandardOpenOption.WRITE)) {
+                    out.truncate(in.position());
+                }
+            }
+        }
+        return FileChannel.open(theFile, StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads the records of a journal up to the first incomplete or damaged one.
+     *
+     * @param theIn the journal bytes; left positioned after the last valid record.
+     * @return the offset of the last valid record, or -1 if there is none.
+     */
+    private static int scan(final ByteBuffer theIn) {
+        int last = -1;
+        boolean valid = true;
+        while (valid && theIn.remaining() >= RECORD_HEADER) {
+            final int start = theIn.position();
+            final int length = theIn.getInt();
+            final long checksum = theIn.getLong();
+            valid = length >= 0 && length <= theIn.remaining()
+                    && checksum(theIn.array(), theIn.position(), length) == checksum;
+            if (valid) {
+                theIn.position(theIn.position() + length);
+                last = start;
+            } else {
+                theIn.position(start);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Computes the checksum of a snapshot.
+     *
+     * @param theBytes the array holding the snapshot.
+     * @param theOffset the offset of the snapshot in the array.
+     * @param theLength the length of the snapshot.
+     * @return the CRC32 value.
+     */
+    private static long checksum(final byte[] theBytes, final int theOffset,
+                                 final int theLength) {
+        final CRC32 crc = new CRC32();
+        crc.update(theBytes, theOffset, theLength);
+        return crc.getValue();
+    }
+
+    /**
+     * Appends a snapshot record to the journal, compacting the journal first
+     * if it has grown past the limit.
+     *
+     * @param theSnapshot the snapshot.
+     * @throws IOException if the record cannot be written.
+     */
+    private void write(final byte[] theSnapshot) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + theSnapshot.length);
+        record.putInt(theSnapshot.length);
+        record.putLong(checksum(theSnapshot, 0, theSnapshot.length));
+        record.put(theSnapshot);
+        record.flip();
+        if (myChannel.size() + record.remaining() > myCompactSize) {
+            final Path temp = myFile.resolveSibling(myFile.getFileName() + TEMP_SUFFIX);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, record);
+            }
+            myChannel.close();
+            try {
+                Files.move(temp, myFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp, myFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            myChannel = openChannel(myFile);
+        } else {
+            writeFully(myChannel, record);
+        }
+    }
+
+    /**
+     * Writes a buffer to a channel and forces it to the storage device.
+     *
+     * @param theChannel the channel.
+     * @param theRecord the bytes to write.
+     * @throws IOException if the bytes cannot be written.
+     */
+    private static void writeFully(final FileChannel theChannel, final ByteBuffer theRecord)
+        throws IOException {
+        while (theRecord.hasRemaining()) {
+            theChannel.write(theRecord);
+        }
+        theChannel.force(false);
+    }
+
+    /**
+     * Records that a snapshot was written, or failed, and wakes waiting flushes.
+     *
+     * @param theSequence the sequence number of the snapshot.
+     * @param theError the write error, or null.
+     */
+    private synchronized void written(final long theSequence, final IOException theError) {
+        myWritten = theSequence;
+        if (theError != null) {
+            myError = theError;
+        }
+        notifyAll();
+    }
+
+
+    // Inner classes
+
+    /**
+     * A submitted snapshot with its sequence number.
+     */
+    private static final class Pending {
+
+        /**
+         * The sequence number.
+         */
+        private final long mySequence;
+
+        /**
+         * The snapshot.
+         */
+        private final byte[] mySnapshot;
+
+        /**
+         * Constructs a pending snapshot.
+         *
+         * @param theSequence the sequence number.
+         * @param theSnapshot the snapshot.
+         */
+        Pending(final long theSequence, final byte[] theSnapshot) {
+            mySequence = theSequence;
+            mySnapshot = theSnapshot;
+        }
+    }
+
+    /**
+     * The loop of the writer thread: writes the newest pending snapshot, or
+     * parks until one is submitted, until the journal is closed and drained.
+     */
+    private final class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            Pending pending = myPending.getAndSet(null);
+            while (myOpen || pending != null) {
+                if (pending == null) {
+                    LockSupport.park(this);
+                } else {
+                    IOException error = null;
+                    try {
+                        write(pending.mySnapshot);
+                    } catch (final IOException e) {
+                        error = e;
+                    }
+                    written(pending.mySequence, error);
+                }
+                pending = myPending.getAndSet(null);
+            }
+        }
+    }
+}
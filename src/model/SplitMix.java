@@ -0,0 +1,68 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * The parts of the SplitMix64 generator shared by the piece generator, the
+ * Zobrist keys and the seeds of simulation runs: the golden ratio increment
+ * and the finalizer that mixes each state into an output.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+final class SplitMix {
+
+    /**
+     * The increment of the SplitMix64 state (the 64-bit golden ratio).
+     */
+    static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * First multiplier of the finalizer.
+     */
+    private static final long MIX_1 = 0xBF58476D1CE4E5B9L;
+
+    /**
+     * Second multiplier of the finalizer.
+     */
+    private static final long MIX_2 = 0x94D049BB133111EBL;
+
+    /**
+     * First shift of the finalizer.
+     */
+    private static final int SHIFT_1 = 30;
+
+    /**
+     * Second shift of the finalizer.
+     */
+    private static final int SHIFT_2 = 27;
+
+    /**
+     * Third shift of the finalizer.
+     */
+    private static final int SHIFT_3 = 31;
+
+    /**
+     * Private constructor, to prevent instantiation of this class.
+     */
+    private SplitMix() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * The SplitMix64 finalizer: a bijective mix of all 64 bits.
+     *
+     * @param theValue the value to mix.
+     * @return the mixed value.
+     */
+    static long mix(final long theValue) {
+        long z = theValue;
+        z = (z ^ (z >>> SHIFT_1)) * MIX_1;
+        z = (z ^ (z >>> SHIFT_2)) * MIX_2;
+        return z ^ (z >>> SHIFT_3);
+    }
+}
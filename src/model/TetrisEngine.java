@@ -0,0 +1,1221 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rules of Tetris without any observer machinery.
+ *
+ * A TetrisEngine holds the frozen blocks, the current piece and the next piece
+ * and implements movement, wall kick rotation, freezing, line clearing and
+ * game over exactly as Board does; Board is a TetrisEngine plus notifications.
+ * On its own an engine is a headless game: the step loop allocates nothing,
+ * so batch jobs can play complete games at full speed.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class TetrisEngine {
+
+    /**
+     * The largest number of rows a single piece can clear.
+     */
+    public static final int MAX_CLEAR = PieceTable.SIZE;
+
+    /**
+     * Width of the board.
+     */
+    private final int myWidth;
+
+    /**
+     * Height of the board.
+     */
+    private final int myHeight;
+
+    /**
+     * The frozen blocks.
+     */
+    private final BitBoard myGrid;
+
+    /**
+     * Scratch buffer receiving the indexes of cleared rows.
+     */
+    private final int[] myClearedRows;
+
+    /**
+     * The number of clears of each size, indexed by rows cleared.
+     */
+    private final long[] myClears;
+
+    /**
+     * Receives engine events, or null when running headless.
+     */
+    private final EngineListener myListener;
+
+    /**
+     * The source of random pieces.
+     */
+    private final PieceGenerator myGenerator;
+
+    /**
+     * The game over state.
+     */
+    private boolean myGameOver;
+
+    /**
+     * Contains a non random sequence of TetrisPieces to loop through.
+     */
+    private List<TetrisPiece> myNonRandomPieces;
+
+    /**
+     * The current index in the non random piece sequence.
+     */
+    private int mySequenceIndex;
+
+    /**
+     * Piece that is next to play.
+     */
+    private TetrisPiece myNextPiece;
+
+    /**
+     * The current piece as a PieceState, or PieceState.NONE before the first piece.
+     */
+    private long myPiece;
+
+    /**
+     * The number of pieces frozen in this game.
+     */
+    private long myPiecesPlaced;
+
+    /**
+     * The number of rows cleared in this game.
+     */
+    private long myLinesCleared;
+
+    /**
+     * The number of actions applied in this game.
+     */
+    private long myActions;
+
+    /**
+     * The score of this game.
+     */
+    private final Scoring myScoring;
+
+    /**
+     * Receives every piece dealt, or null when not logging.
+     */
+    private List<TetrisPiece> myPieceLog;
+
+    /**
+     * Receives every action applied, or null when not logging.
+     */
+    private List<Action> myActionLog;
+
+    /**
+     * Constructs a headless engine drawing uniformly random pieces from a seed.
+     *
+     * @param theWidth Width of the board.
+     * @param theHeight Height of the board.
+     * @param theSeed the seed for the piece sequence.
+     */
+    public TetrisEngine(final int theWidth, final int theHeight, final long theSeed) {
+        this(theWidth, theHeight, new PieceGenerator(theSeed, PieceGenerator.Mode.UNIFORM));
+    }
+
+    /**
+     * Constructs a headless engine drawing pieces from a generator.
+     *
+     * @param theWidth Width of the board.
+     * @param theHeight Height of the board.
+     * @param theGenerator the source of random pieces, used only by this engine.
+     */
+    public TetrisEngine(final int theWidth, final int theHeight,
+                        final PieceGenerator theGenerator) {
+        this(theWidth, theHeight, theGenerator, null);
+    }
+
+    /**
+     * Constructs an engine.
+     *
+     * @param theWidth Width of the board.
+     * @param theHeight Height of the board.
+     * @param theGenerator the source of random pieces, used only by this engine.
+     * @param theListener the event listener, or null for none.
+     */
+    TetrisEngine(final int theWidth, final int theHeight, final PieceGenerator theGenerator,
+                 final EngineListener theListener) {
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myGrid = new BitBoard(theWidth, theHeight);
+        myClearedRows = new int[theHeight];
+        myClears = new long[MAX_CLEAR + 1];
+        myGenerator = theGenerator;
+        myListener = theListener;
+        myNonRandomPieces = new ArrayList<TetrisPiece>();
+        myScoring = new Scoring();
+        myPiece = PieceState.NONE;
+    }
+
+    /**
+     * Constructs a fork of an engine: the same game, continuing independently.
+     * The frozen rows are shared copy-on-write; nothing is logged.
+     *
+     * @param theParent the engine to fork.
+     * @param theListener the event listener of the fork, or null for none.
+     */
+    private TetrisEngine(final TetrisEngine theParent, final EngineListener theListener) {
+        myWidth = theParent.myWidth;
+        myHeight = theParent.myHeight;
+        myGrid = theParent.myGrid.fork();
+        myClearedRows = new int[myHeight];
+        myClears = theParent.myClears.clone();
+        myGenerator = new PieceGenerator(theParent.myGenerator);
+        myListener = theListener;
+        myScoring = new Scoring(theParent.myScoring);
+        copyPosition(theParent);
+    }
+
+
+    // public queries
+
+    /**
+     * Get the width of the board.
+     *
+     * @return Width of the board.
+     */
+    public int getWidth() {
+        return myWidth;
+    }
+
+    /**
+     * Get the height of the board.
+     *
+     * @return Height of the board.
+     */
+    public int getHeight() {
+        return myHeight;
+    }
+
+    /**
+     * Returns whether the game is over.
+     *
+     * @return true if the game is over.
+     */
+    public boolean isGameOver() {
+        return myGameOver;
+    }
+
+    /**
+     * Returns the type of the current piece.
+     *
+     * @return the current TetrisPiece, or null before the first game.
+     */
+    public TetrisPiece getCurrentPiece() {
+        TetrisPiece result = null;
+        if (PieceState.isPiece(myPiece)) {
+            result = PieceState.piece(myPiece);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rotation of the current piece.
+     *
+     * @return the current Rotation, or null before the first game.
+     */
+    public Rotation getRotation() {
+        Rotation result = null;
+        if (PieceState.isPiece(myPiece)) {
+            result = PieceState.rotation(myPiece);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the x position of the current piece.
+     *
+     * @return the x position.
+     */
+    public int getX() {
+        return PieceState.x(myPiece);
+    }
+
+    /**
+     * Returns the y position of the current piece.
+     *
+     * @return the y position.
+     */
+    public int getY() {
+        return PieceState.y(myPiece);
+    }
+
+    /**
+     * Returns the piece shown as next.
+     *
+     * @return the next TetrisPiece, or null before the first game.
+     */
+    public TetrisPiece getNextPiece() {
+        return myNextPiece;
+    }
+
+    /**
+     * Tests whether a frozen block occupies a cell.
+     *
+     * @param theX the column, 0 to getWidth() - 1.
+     * @param theY the row, 0 or greater.
+     * @return true if the cell holds a frozen block.
+     */
+    public boolean isOccupied(final int theX, final int theY) {
+        return myGrid.isOccupied(theX, theY);
+    }
+
+    /**
+     * Returns the height of a column of frozen blocks.
+     *
+     * @param theX the column, 0 to getWidth() - 1.
+     * @return one more than the highest frozen row in the column, or 0 if empty.
+     */
+    public int getColumnHeight(final int theX) {
+        return myGrid.getColumnHeight(theX);
+    }
+
+    /**
+     * Returns how many rows the current piece can fall before it lands.
+     *
+     * @return the drop distance, or 0 if there is no piece in play.
+     */
+    public int dropDistance() {
+        int result = 0;
+        if (PieceState.isPiece(myPiece) && !myGameOver) {
+            result = myGrid.dropDistance(PieceState.shape(myPiece), PieceState.x(myPiece),
+                                         PieceState.y(myPiece));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of pieces frozen in this game.
+     *
+     * @return the pieces placed.
+     */
+    public long getPiecesPlaced() {
+        return myPiecesPlaced;
+    }
+
+    /**
+     * Returns the number of rows cleared in this game.
+     *
+     * @return the lines cleared.
+     */
+    public long getLinesCleared() {
+        return myLinesCleared;
+    }
+
+    /**
+     * Returns how many times a given number of rows was cleared at once.
+     *
+     * @param theRows the clear size, 1 to MAX_CLEAR.
+     * @return the number of clears of that size in this game.
+     */
+    public long getClears(final int theRows) {
+        return myClears[theRows];
+    }
+
+    /**
+     * Returns the number of actions applied in this game.
+     *
+     * @return the game length in actions.
+     */
+    public long getActions() {
+        return myActions;
+    }
+
+    /**
+     * Returns a 64-bit Zobrist hash of the game state: the frozen blocks,
+     * the current piece and its position, and the next piece. The frozen block
+     * part is kept up to date on every freeze and line clear.
+     *
+     * @return the state hash.
+     */
+    public long getHash() {
+        return myGrid.getHash()
+               ^ Zobrist.pieceKey(PieceState.shape(myPiece), PieceState.x(myPiece),
+                                  PieceState.y(myPiece))
+               ^ Zobrist.nextKey(myNextPiece);
+    }
+
+    /**
+     * Returns a 64-bit Zobrist hash of the frozen blocks only.
+     *
+     * @return the hash of the frozen blocks; zero for an empty board.
+     */
+    public long getGridHash() {
+        return myGrid.getHash();
+    }
+
+    /**
+     * Returns the score of this game, computed as the score panel does.
+     *
+     * @return the score.
+     */
+    public long getScore() {
+        return myScoring.getScore();
+    }
+
+    /**
+     * Returns the level reached in this game.
+     *
+     * @return the level.
+     */
+    public int getLevel() {
+        return myScoring.getLevel();
+    }
+
+    /**
+     * Returns the number of rows left to clear for the next level.
+     *
+     * @return the lines to the next level.
+     */
+    public int getLinesToNextLevel() {
+        return myScoring.getLinesToNextLevel();
+    }
+
+    /**
+     * Changes the level of this game; the score is kept.
+     *
+     * @param theLevel the new level.
+     * @throws IllegalArgumentException if the level is not positive.
+     */
+    public void setLevel(final int theLevel) {
+        myScoring.setLevel(theLevel);
+    }
+
+
+    // game control
+
+    /**
+     * Resets the board for a new game.
+     * This method must be called before the first game
+     * and before each new game.
+     */
+    public void newGame() {
+        mySequenceIndex = 0;
+        myGrid.clear();
+        myGameOver = false;
+        myPiecesPlaced = 0;
+        myLinesCleared = 0;
+        myActions = 0;
+        myScoring.reset();
+        for (int i = 0; i < myClears.length; i++) {
+            myClears[i] = 0;
+        }
+        nextMovablePiece(true);
+    }
+
+    /**
+     * Reseeds the random pieces and resets the board for a new game.
+     *
+     * @param theSeed the seed for the piece sequence.
+     */
+    public void newGame(final long theSeed) {
+        myGenerator.reset(theSeed);
+        newGame();
+    }
+
+    /**
+     * Sets a non random sequence of pieces to loop through.
+     *
+     * @param thePieces the List of non random TetrisPieces.
+     */
+    public void setPieceSequence(final List<TetrisPiece> thePieces) {
+        myNonRandomPieces = new ArrayList<TetrisPiece>(thePieces);
+        mySequenceIndex = 0;
+        nextMovablePiece(true);
+    }
+
+    /**
+     * Encodes the game state in a compact binary snapshot: the frozen rows as
+     * occupancy masks with the colors of the occupied cells, the current piece
+     * and its position, the next piece, the position of the piece generator,
+     * the piece sequence, and the counters and score.
+     *
+     * @return the snapshot.
+     */
+    public byte[] saveSnapshot() {
+        return saveState().encode(myWidth, myHeight, myGenerator.getMode());
+    }
+
+    /**
+     * Returns the game to a snapshot taken by saveSnapshot. No events are sent.
+     *
+     * @param theSnapshot the snapshot.
+     * @throws IllegalArgumentException if the snapshot is not valid or was taken
+     *         from a game of another board size or generator mode.
+     */
+    public void restoreSnapshot(final byte[] theSnapshot) {
+        restoreState(State.decode(ByteBuffer.wrap(theSnapshot), myWidth, myHeight,
+                                  myGenerator.getMode()));
+    }
+
+    /**
+     * Plays until the game ends or an action limit is reached.
+     *
+     * @param theSource supplies the actions.
+     * @param theMaxActions the most actions to apply.
+     * @return the number of actions applied.
+     */
+    public long play(final InputSource theSource, final long theMaxActions) {
+        long count = 0;
+        while (!myGameOver && count < theMaxActions) {
+            apply(theSource.nextAction(this));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Applies one action.
+     *
+     * @param theAction the action to apply.
+     * @return true if the current piece moved; false if it could not move
+     *         or (for DOWN, STEP and DROP) it froze.
+     */
+    public boolean apply(final Action theAction) {
+        myActions++;
+        if (myActionLog != null) {
+            myActionLog.add(theAction);
+        }
+        boolean result = false;
+        switch (theAction) {
+            case LEFT:
+                result = left();
+                break;
+            case RIGHT:
+                result = right();
+                break;
+            case DOWN:
+            case STEP:
+                result = down();
+                break;
+            case DROP:
+                drop();
+                break;
+            case ROTATE_CW:
+                result = rotateCW();
+                break;
+            case ROTATE_CCW:
+                result = rotateCCW();
+                break;
+            default:
+        }
+        return result;
+    }
+
+    /**
+     * Try to move the movable piece down.
+     * Freeze the Piece in position if down tries to move into an illegal state.
+     * Clear full lines.
+     *
+     * @return true if the piece moved; false if it froze.
+     */
+    public boolean down() {
+        boolean result = false;
+        if (PieceState.isPiece(myPiece)) {
+            result = move(PieceState.moved(myPiece, 0, -1));
+            if (!result) {
+                freeze();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Try to move the movable piece left.
+     *
+     * @return true if the piece moved.
+     */
+    public boolean left() {
+        return PieceState.isPiece(myPiece) && move(PieceState.moved(myPiece, -1, 0));
+    }
+
+    /**
+     * Try to move the movable piece right.
+     *
+     * @return true if the piece moved.
+     */
+    public boolean right() {
+        return PieceState.isPiece(myPiece) && move(PieceState.moved(myPiece, 1, 0));
+    }
+
+    /**
+     * Try to rotate the movable piece in the clockwise direction.
+     *
+     * @return true if the piece rotated.
+     */
+    public boolean rotateCW() {
+        boolean result = false;
+        if (PieceState.isPiece(myPiece)) {
+            result = rotate(PieceState.rotation(myPiece).clockwise());
+        }
+        return result;
+    }
+
+    /**
+     * Try to rotate the movable piece in the counter-clockwise direction.
+     *
+     * @return true if the piece rotated.
+     */
+    public boolean rotateCCW() {
+        boolean result = false;
+        if (PieceState.isPiece(myPiece)) {
+            result = rotate(PieceState.rotation(myPiece).counterClockwise());
+        }
+        return result;
+    }
+
+    /**
+     * Drop the piece to its landing row and freeze it.
+     */
+    public void drop() {
+        if (!myGameOver && PieceState.isPiece(myPiece)) {
+            myPiece = PieceState.moved(myPiece, 0, -dropDistance());
+            down();  // move down one more time to freeze in place
+        }
+    }
+
+
+    // package-private helpers shared with Board and the search code
+
+    /**
+     * Returns the frozen blocks.
+     *
+     * @return the frozen blocks.
+     */
+    BitBoard getGrid() {
+        return myGrid;
+    }
+
+    /**
+     * Returns the source of random pieces.
+     *
+     * @return the piece generator.
+     */
+    PieceGenerator getGenerator() {
+        return myGenerator;
+    }
+
+    /**
+     * Returns the non random piece sequence.
+     *
+     * @return the sequence, empty if none was set.
+     */
+    List<TetrisPiece> getPieceSequence() {
+        return myNonRandomPieces;
+    }
+
+    /**
+     * Logs the pieces dealt and the actions applied through apply(), so a game
+     * played from a generator can be stored as a piece sequence and its inputs.
+     *
+     * @param thePieces receives each piece as it is dealt, or null to stop logging.
+     * @param theActions receives each applied action, or null to stop logging.
+     */
+    void setLog(final List<TetrisPiece> thePieces, final List<Action> theActions) {
+        myPieceLog = thePieces;
+        myActionLog = theActions;
+    }
+
+    /**
+     * Captures the complete game state. Only the rows up to the tallest column
+     * are stored, so states of low boards are small.
+     *
+     * @return the state.
+     */
+    State saveState() {
+        final State result = new State(myGrid.getTop(), myWidth);
+        myGrid.saveRows(result.myRows, result.myColors);
+        result.myPiece = myPiece;
+        result.myNextPiece = myNextPiece;
+        result.myGameOver = myGameOver;
+        result.myPieces = myNonRandomPieces;
+        result.mySequenceIndex = mySequenceIndex;
+        result.myBlockState = myGenerator.getBlockState();
+        result.myBlockIndex = myGenerator.getIndex();
+        result.myPiecesPlaced = myPiecesPlaced;
+        result.myLinesCleared = myLinesCleared;
+        result.myActions = myActions;
+        result.myClears = myClears.clone();
+        result.myScore = myScoring.getScore();
+        result.myLevel = myScoring.getLevel();
+        result.myCounter = myScoring.getCounter();
+        return result;
+    }
+
+    /**
+     * Returns the game to a state captured by saveState on an engine of the same
+     * size and generator mode. No events are sent.
+     *
+     * @param theState the state.
+     */
+    void restoreState(final State theState) {
+        myGrid.restoreRows(theState.myRows, theState.myColors);
+        myPiece = theState.myPiece;
+        myNextPiece = theState.myNextPiece;
+        myGameOver = theState.myGameOver;
+        myNonRandomPieces = theState.myPieces;
+        mySequenceIndex = theState.mySequenceIndex;
+        myGenerator.restore(theState.myBlockState, theState.myBlockIndex);
+        myPiecesPlaced = theState.myPiecesPlaced;
+        myLinesCleared = theState.myLinesCleared;
+        myActions = theState.myActions;
+        System.arraycopy(theState.myClears, 0, myClears, 0, myClears.length);
+        myScoring.restore(theState.myScore, theState.myLevel, theState.myCounter);
+    }
+
+    /**
+     * Creates an independent copy of this game for trying moves. The copy shares
+     * the frozen rows copy-on-write, so forking costs only the rows either game
+     * changes afterwards.
+     *
+     * @param theListener the event listener of the fork, or null for none.
+     * @return the fork.
+     */
+    TetrisEngine fork(final EngineListener theListener) {
+        return new TetrisEngine(this, theListener);
+    }
+
+    /**
+     * Returns the PieceTable shape of the current piece.
+     *
+     * @return the shape, or -1 before the first piece.
+     */
+    int getShape() {
+        return PieceState.shape(myPiece);
+    }
+
+    /**
+     * Returns the current piece.
+     *
+     * @return the PieceState, or PieceState.NONE before the first piece.
+     */
+    long getPiece() {
+        return myPiece;
+    }
+
+
+    // private helper methods
+
+    /**
+     * Copies the current piece, the piece sequence and the counters of another
+     * engine; part of forking.
+     *
+     * @param theOther the engine to copy.
+     */
+    private void copyPosition(final TetrisEngine theOther) {
+        myGameOver = theOther.myGameOver;
+        myNonRandomPieces = theOther.myNonRandomPieces;
+        mySequenceIndex = theOther.mySequenceIndex;
+        myNextPiece = theOther.myNextPiece;
+        myPiece = theOther.myPiece;
+        myPiecesPlaced = theOther.myPiecesPlaced;
+        myLinesCleared = theOther.myLinesCleared;
+        myActions = theOther.myActions;
+    }
+
+    /**
+     * Moves the current piece to a new shape and position if it is legal there.
+     *
+     * @param thePiece the new PieceState.
+     * @return true if the move succeeded.
+     */
+    private boolean move(final long thePiece) {
+        final boolean result = PieceState.fits(myGrid, thePiece);
+        if (result) {
+            myPiece = thePiece;
+        }
+        return result;
+    }
+
+    /**
+     * Rotates the current piece.
+     *
+     * @param theRotation the new rotation.
+     * @return true if the rotation succeeded.
+     */
+    private boolean rotate(final Rotation theRotation) {
+        final long rotated = PieceState.rotate(myGrid, myPiece, theRotation);
+        if (rotated != PieceState.NONE) {
+            myPiece = rotated;
+        }
+        return rotated != PieceState.NONE;
+    }
+
+    /**
+     * Freezes the current piece, clears full rows and brings in the next piece.
+     * The game is over if any block lands outside the board.
+     */
+    private void freeze() {
+        if (!myGrid.place(PieceState.shape(myPiece), PieceState.x(myPiece),
+                          PieceState.y(myPiece)) && !myGameOver) {
+            myGameOver = true;
+            if (myListener != null) {
+                myListener.gameOver();
+            }
+        }
+        myPiecesPlaced++;
+        if (myListener != null) {
+            myListener.pieceFrozen(PieceState.shape(myPiece), PieceState.x(myPiece),
+                                   PieceState.y(myPiece));
+        }
+        checkRows();
+        if (!myGameOver) {
+            myScoring.piecePlaced();
+            nextMovablePiece(false);
+        }
+    }
+
+    /**
+     * Checks the board for complete rows.
+     */
+    private void checkRows() {
+        final int count = myGrid.clearFullRows(myClearedRows);
+        if (count > 0) {
+            myLinesCleared += count;
+            myClears[Math.min(count, MAX_CLEAR)]++;
+            myScoring.rowsCleared(count);
+            if (myListener != null) {
+                myListener.rowsCleared(myClearedRows, count);
+            }
+        }
+    }
+
+    /**
+     * Brings the next piece into play.
+     *
+     * @param theRestart Restart the non random cycle.
+     */
+    private void nextMovablePiece(final boolean theRestart) {
+
+        if (myNextPiece == null || theRestart) {
+            prepareNextMovablePiece();
+        }
+
+        final TetrisPiece next = myNextPiece;
+
+        int startY = myHeight - 1;
+        if (myNextPiece == TetrisPiece.I) {
+            startY--;
+        }
+
+        prepareNextMovablePiece();
+        myPiece = PieceState.pack(next, Rotation.NONE,
+                                  (myWidth - myNextPiece.getWidth()) / 2, startY);
+        if (myListener != null) {
+            myListener.pieceSpawned();
+        }
+    }
+
+    /**
+     * Prepares the Next movable piece for preview.
+     */
+    private void prepareNextMovablePiece() {
+
+        final boolean share = myNextPiece != null;
+        if (myNonRandomPieces == null || myNonRandomPieces.isEmpty()) {
+            myNextPiece = myGenerator.next();
+        } else {
+            mySequenceIndex %= myNonRandomPieces.size();
+            myNextPiece = myNonRandomPieces.get(mySequenceIndex++);
+        }
+        if (myPieceLog != null) {
+            myPieceLog.add(myNextPiece);
+        }
+        if (share && !myGameOver && myListener != null) {
+            myListener.nextPiece(myNextPiece);
+        }
+    }
+
+
+    // Inner classes
+
+    /**
+     * A saved game state. The piece sequence is shared with the engine,
+     * which never modifies a sequence once it is set.
+     */
+    static final class State {
+
+        /**
+         * The first four bytes of a snapshot ("TSNP").
+         */
+        private static final int MAGIC = 0x54534E50;
+
+        /**
+         * The version of the snapshot format.
+         */
+        private static final byte VERSION = 1;
+
+        /**
+         * An upper bound of the size of the parts of a snapshot that do not
+         * depend on the board contents or the piece sequence.
+         */
+        private static final int FIXED_BYTES = 128;
+
+        /**
+         * The TetrisPiece values indexed by ordinal.
+         */
+        private static final TetrisPiece[] PIECES = TetrisPiece.values();
+
+        /**
+         * The Block values indexed by ordinal.
+         */
+        private static final Block[] BLOCKS = Block.values();
+
+        /**
+         * The number of counters stored as longs: the pieces placed, lines
+         * cleared and actions, the clears of each size, and the score.
+         */
+        private static final int COUNTERS = 3 + MAX_CLEAR + 1 + 1;
+
+        /**
+         * The occupancy masks of the rows up to the tallest column.
+         */
+        private final long[] myRows;
+
+        /**
+         * The Block ordinals of the saved rows, row by row.
+         */
+        private final byte[] myColors;
+
+        /**
+         * The current piece as a PieceState.
+         */
+        private long myPiece;
+
+        /**
+         * The next piece.
+         */
+        private TetrisPiece myNextPiece;
+
+        /**
+         * The game over state.
+         */
+        private boolean myGameOver;
+
+        /**
+         * The non random piece sequence.
+         */
+        private List<TetrisPiece> myPieces;
+
+        /**
+         * The index in the non random piece sequence.
+         */
+        private int mySequenceIndex;
+
+        /**
+         * The stream state of the current generator block.
+         */
+        private long myBlockState;
+
+        /**
+         * The index of the next piece in the generator block.
+         */
+        private int myBlockIndex;
+
+        /**
+         * The number of pieces frozen.
+         */
+        private long myPiecesPlaced;
+
+        /**
+         * The number of rows cleared.
+         */
+        private long myLinesCleared;
+
+        /**
+         * The number of actions applied.
+         */
+        private long myActions;
+
+        /**
+         * The number of clears of each size.
+         */
+        private long[] myClears;
+
+        /**
+         * The score.
+         */
+        private long myScore;
+
+        /**
+         * The level.
+         */
+        private int myLevel;
+
+        /**
+         * The rows cleared towards the next level.
+         */
+        private int myCounter;
+
+        /**
+         * Constructs a state with room for the given rows.
+         *
+         * @param theRows the number of saved rows.
+         * @param theWidth the board width.
+         */
+        State(final int theRows, final int theWidth) {
+            myRows = new long[theRows];
+            myColors = new byte[theRows * theWidth];
+        }
+
+        /**
+         * Encodes the state as a snapshot.
+         *
+         * @param theWidth the board width.
+         * @param theHeight the board height.
+         * @param theMode the generator mode.
+         * @return the snapshot bytes.
+         */
+        byte[] encode(final int theWidth, final int theHeight,
+                      final PieceGenerator.Mode theMode) {
+            int cells = 0;
+            for (final long row : myRows) {
+                cells += Long.bitCount(row);
+            }
+            final ByteBuffer out = ByteBuffer.allocate(FIXED_BYTES + myPieces.size()
+                                                       + myRows.length * Long.BYTES + cells);
+            out.putInt(MAGIC).put(VERSION);
+            out.putShort((short) theWidth).putShort((short) theHeight);
+            out.put((byte) theMode.ordinal());
+            out.put((byte) PieceState.shape(myPiece)).putShort((short) PieceState.x(myPiece))
+                .putShort((short) PieceState.y(myPiece));
+            out.put((byte) ordinal(myNextPiece)).put(flag(myGameOver));
+            out.putLong(myBlockState).putInt(myBlockIndex);
+            out.putInt(mySequenceIndex).putInt(myPieces.size());
+            for (final TetrisPiece piece : myPieces) {
+                out.put((byte) piece.ordinal());
+            }
+            out.putLong(myPiecesPlaced).putLong(myLinesCleared).putLong(myActions);
+            for (final long clears : myClears) {
+                out.putLong(clears);
+            }
+            out.putLong(myScore).putInt(myLevel).putInt(myCounter);
+            out.putShort((short) myRows.length);
+            for (int y = 0; y < myRows.length; y++) {
+                out.putLong(myRows[y]);
+                for (int x = 0; x < theWidth; x++) {
+                    if ((myRows[y] & 1L << x) != 0) {
+                        out.put(myColors[y * theWidth + x]);
+                    }
+                }
+            }
+            return Arrays.copyOf(out.array(), out.position());
+        }
+
+        /**
+         * Decodes a snapshot.
+         *
+         * @param theIn the snapshot bytes.
+         * @param theWidth the board width the snapshot must match.
+         * @param theHeight the board height the snapshot must match.
+         * @param theMode the generator mode the snapshot must match.
+         * @return the state.
+         * @throws IllegalArgumentException if the snapshot is not valid or does not match.
+         */
+        static State decode(final ByteBuffer theIn, final int theWidth, final int theHeight,
+                            final PieceGenerator.Mode theMode) {
+            try {
+                check(theIn.getInt() == MAGIC && theIn.get() == VERSION
+                      && theIn.getShort() == theWidth && theIn.getShort() == theHeight
+                      && theIn.get() == theMode.ordinal(),
+                      "The snapshot does not match this game");
+                final long piece = readPiece(theIn, theWidth);
+                final int next = theIn.get();
+                check(next >= -1 && next < PIECES.length, "Bad next piece");
+                final int gameOver = theIn.get();
+                check(gameOver == 0 || gameOver == 1, "Bad game over flag");
+                final long blockState = theIn.getLong();
+                final int blockIndex = theIn.getInt();
+                check(blockIndex >= 0 && blockIndex <= PieceGenerator.BLOCK_SIZE,
+                      "Bad generator position");
+                final int sequenceIndex = theIn.getInt();
+                final List<TetrisPiece> pieces = readPieces(theIn);
+                check(sequenceIndex >= 0 && sequenceIndex <= pieces.size(),
+                      "Bad sequence position");
+                final long[] counters = readCounters(theIn, COUNTERS);
+                final int level = theIn.getInt();
+                final int counter = theIn.getInt();
+                check(level >= 1 && counter >= 0 && counter < Scoring.DEFAULT_LINES_PER_LEVEL,
+                      "Bad level");
+                final State result = readRows(theIn, theWidth, theHeight);
+                check(!theIn.hasRemaining(), "The snapshot has trailing bytes");
+                result.myPiece = piece;
+                result.myGameOver = gameOver != 0;
+                result.myBlockState = blockState;
+                result.myBlockIndex = blockIndex;
+                result.mySequenceIndex = sequenceIndex;
+                result.myPieces = pieces;
+                result.setCounters(counters, level, counter);
+                if (next >= 0) {
+                    result.myNextPiece = PIECES[next];
+                }
+                return result;
+            } catch (final BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("The snapshot is truncated or corrupt", e);
+            }
+        }
+
+        /**
+         * Sets the counters and score read by readCounters.
+         *
+         * @param theCounters the pieces placed, lines cleared and actions, the
+         *        clears of each size and the score.
+         * @param theLevel the level.
+         * @param theCounter the rows cleared towards the next level.
+         */
+        private void setCounters(final long[] theCounters, final int theLevel,
+                                 final int theCounter) {
+            int i = 0;
+            myPiecesPlaced = theCounters[i++];
+            myLinesCleared = theCounters[i++];
+            myActions = theCounters[i++];
+            myClears = Arrays.copyOfRange(theCounters, i, i + MAX_CLEAR + 1);
+            myScore = theCounters[theCounters.length - 1];
+            myLevel = theLevel;
+            myCounter = theCounter;
+        }
+
+        /**
+         * Reads the current piece, checking that it lies within the walls.
+         *
+         * @param theIn the snapshot bytes.
+         * @param theWidth the board width.
+         * @return the piece as a PieceState.
+         */
+        private static long readPiece(final ByteBuffer theIn, final int theWidth) {
+            final int shape = theIn.get();
+            final int x = theIn.getShort();
+            final int y = theIn.getShort();
+            check(shape >= -1 && shape < PieceTable.SHAPES, "Bad piece");
+            if (shape >= 0) {
+                check(x + PieceTable.minX(shape) >= 0 && x + PieceTable.maxX(shape) < theWidth
+                      && y + PieceTable.minY(shape) >= 0, "The piece is off the board");
+            }
+            return PieceState.pack(shape, x, y);
+        }
+
+        /**
+         * Reads the non random piece sequence.
+         *
+         * @param theIn the snapshot bytes.
+         * @return the sequence.
+         */
+        private static List<TetrisPiece> readPieces(final ByteBuffer theIn) {
+            final int length = theIn.getInt();
+            check(length >= 0 && length <= theIn.remaining(), "Bad piece sequence");
+            final List<TetrisPiece> result = new ArrayList<TetrisPiece>(length);
+            for (int i = 0; i < length; i++) {
+                final int piece = theIn.get();
+                check(piece >= 0 && piece < PIECES.length, "Bad piece in the sequence");
+                result.add(PIECES[piece]);
+            }
+            return result;
+        }
+
+        /**
+         * Reads counters that can never be negative.
+         *
+         * @param theIn the snapshot bytes.
+         * @param theCount the number of counters.
+         * @return the counters.
+         */
+        private static long[] readCounters(final ByteBuffer theIn, final int theCount) {
+            final long[] result = new long[theCount];
+            for (int i = 0; i < theCount; i++) {
+                result[i] = theIn.getLong();
+                check(result[i] >= 0, "Negative counter");
+            }
+            return result;
+        }
+
+        /**
+         * Reads the saved rows, checking that they fit the board and that every
+         * occupied cell has a Block.
+         *
+         * @param theIn the snapshot bytes.
+         * @param theWidth the board width.
+         * @param theHeight the board height.
+         * @return a state holding the rows.
+         */
+        private static State readRows(final ByteBuffer theIn, final int theWidth,
+                                      final int theHeight) {
+            final int rows = theIn.getShort();
+            check(rows >= 0 && rows <= theHeight, "Bad row count");
+            final long outside = -1L << theWidth;
+            final State result = new State(rows, theWidth);
+            for (int row = 0; row < rows; row++) {
+                result.myRows[row] = theIn.getLong();
+                check(theWidth == Long.SIZE || (result.myRows[row] & outside) == 0,
+                      "A row is wider than the board");
+                for (int column = 0; column < theWidth; column++) {
+                    if ((result.myRows[row] & 1L << column) != 0) {
+                        final byte color = theIn.get();
+                        check(color > 0 && color < BLOCKS.length, "Bad block");
+                        result.myColors[row * theWidth + column] = color;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Rejects a snapshot that fails a check.
+         *
+         * @param theCondition the check.
+         * @param theMessage what is wrong if the check fails.
+         * @throws IllegalArgumentException if the check fails.
+         */
+        private static void check(final boolean theCondition, final String theMessage) {
+            if (!theCondition) {
+                throw new IllegalArgumentException(theMessage);
+            }
+        }
+
+        /**
+         * Encodes a flag as a byte.
+         *
+         * @param theFlag the flag.
+         * @return 1 for true, 0 for false.
+         */
+        private static byte flag(final boolean theFlag) {
+            byte result = 0;
+            if (theFlag) {
+                result = 1;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the ordinal of a piece.
+         *
+         * @param thePiece the piece, or null.
+         * @return the ordinal, or -1 for null.
+         */
+        private static int ordinal(final TetrisPiece thePiece) {
+            int result = -1;
+            if (thePiece != null) {
+                result = thePiece.ordinal();
+            }
+            return result;
+        }
+    }
+}
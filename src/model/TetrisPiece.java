@@ -59,6 +59,11 @@ public enum TetrisPiece {
      */
     private static final Random RANDOM = new Random();
 
+    /**
+     * The TetrisPiece values, cached so picking a piece does not clone values().
+     */
+    private static final TetrisPiece[] VALUES = values();
+
     
     // instance fields
     /**
@@ -139,6 +144,6 @@ public enum TetrisPiece {
      * @return a random TetrisPiece.
      */
     public static TetrisPiece getRandomPiece() {
-        return values()[RANDOM.nextInt(values().length)];
+        return VALUES[RANDOM.nextInt(VALUES.length)];
     }
 }
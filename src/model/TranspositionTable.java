@@ -0,0 +1,280 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of results keyed by 64-bit state hashes, such as the Zobrist
+ * hashes of TetrisEngine and Board, so a position reached again is not
+ * evaluated again.
+ *
+ * The table is split into stripes chosen by the key, each guarded by its own
+ * lock and holding an equal share of the capacity, so threads working on
+ * different positions rarely wait for each other. When a stripe is full the
+ * eviction policy chooses the entry to drop.
+ *
+ * @param <V> the type of the cached results.
+ * @author Jon Anderson
+ * @version 1.3
+ */
+public final class TranspositionTable<V> {
+
+    /**
+     * The ways a full stripe chooses the entry to drop.
+     */
+    public enum EvictionPolicy {
+        /** Drop the entry that was used least recently. */
+        LRU,
+        /** Drop the entry that was stored first. */
+        FIFO
+    }
+
+    /**
+     * The default number of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * The shift folding the high half of a key into the low half.
+     */
+    private static final int HALF = 32;
+
+    /**
+     * The stripes.
+     */
+    private final List<Stripe<V>> myStripes;
+
+    /**
+     * The mask selecting a stripe from a key.
+     */
+    private final int myStripeMask;
+
+    /**
+     * The policy used by every stripe.
+     */
+    private final EvictionPolicy myPolicy;
+
+    /**
+     * The most entries the table holds.
+     */
+    private final int myCapacity;
+
+    /**
+     * Constructs a table with the default number of stripes.
+     *
+     * @param theCapacity the most entries the table holds.
+     * @param thePolicy the eviction policy.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public TranspositionTable(final int theCapacity, final EvictionPolicy thePolicy) {
+        this(theCapacity, thePolicy, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructs a table.
+     *
+     * @param theCapacity the most entries the table holds.
+     * @param thePolicy the eviction policy.
+     * @param theStripes the number of independently locked stripes,
+     *        rounded up to a power of two.
+     * @throws IllegalArgumentException if the capacity or stripe count is not positive.
+     */
+    public TranspositionTable(final int theCapacity, final EvictionPolicy thePolicy,
+                              final int theStripes) {
+        if (theCapacity < 1 || theStripes < 1) {
+            throw new IllegalArgumentException("Capacity and stripes must be positive");
+        }
+        final int stripes = Integer.highestOneBit(Math.min(theStripes, theCapacity) * 2 - 1);
+        final int stripeCapacity = (theCapacity + stripes - 1) / stripes;
+        myStripes = new ArrayList<Stripe<V>>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            myStripes.add(new Stripe<V>(stripeCapacity, thePolicy == EvictionPolicy.LRU));
+        }
+        myStripeMask = stripes - 1;
+        myPolicy = thePolicy;
+        myCapacity = stripeCapacity * stripes;
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param theKey the state hash.
+     * @return the cached result, or null if there is none.
+     */
+    public V get(final long theKey) {
+        final Stripe<V> stripe = stripe(theKey);
+        synchronized (stripe) {
+            final V result = stripe.get(theKey);
+            if (result == null) {
+                stripe.myMisses++;
+            } else {
+                stripe.myHits++;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Stores a result, evicting another entry of the stripe if it is full.
+     *
+     * @param theKey the state hash.
+     * @param theValue the result.
+     * @throws NullPointerException if the value is null.
+     */
+    public void put(final long theKey, final V theValue) {
+        if (theValue == null) {
+            throw new NullPointerException("Cached results must not be null");
+        }
+        final Stripe<V> stripe = stripe(theKey);
+        synchronized (stripe) {
+            stripe.put(theKey, theValue);
+        }
+    }
+
+    /**
+     * Removes every entry and resets the hit and miss counts.
+     */
+    public void clear() {
+        for (final Stripe<V> stripe : myStripes) {
+            synchronized (stripe) {
+                stripe.clear();
+                stripe.myHits = 0;
+                stripe.myMisses = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of cached results.
+     */
+    public int size() {
+        int result = 0;
+        for (final Stripe<V> stripe : myStripes) {
+            synchronized (stripe) {
+                result += stripe.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of lookups that found a result.
+     *
+     * @return the hits since the table was created or cleared.
+     */
+    public long getHits() {
+        long result = 0;
+        for (final Stripe<V> stripe : myStripes) {
+            synchronized (stripe) {
+                result += stripe.myHits;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of lookups that found nothing.
+     *
+     * @return the misses since the table was created or cleared.
+     */
+    public long getMisses() {
+        long result = 0;
+        for (final Stripe<V> stripe : myStripes) {
+            synchronized (stripe) {
+                result += stripe.myMisses;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most entries the table holds.
+     *
+     * @return the capacity, rounded up to a whole number of entries per stripe.
+     */
+    public int getCapacity() {
+        return myCapacity;
+    }
+
+    /**
+     * Returns the eviction policy.
+     *
+     * @return the policy.
+     */
+    public EvictionPolicy getPolicy() {
+        return myPolicy;
+    }
+
+    /**
+     * Returns the stripe holding a key.
+     *
+     * @param theKey the state hash.
+     * @return the stripe.
+     */
+    private Stripe<V> stripe(final long theKey) {
+        return myStripes.get((int) (theKey ^ (theKey >>> HALF)) & myStripeMask);
+    }
+
+
+    // Inner classes
+
+    /**
+     * One independently locked part of the table.
+     *
+     * @param <V> the type of the cached results.
+     */
+    private static final class Stripe<V> extends LinkedHashMap<Long, V> {
+
+        /**
+         * A generated serial version UID for object Serialization.
+         */
+        private static final long serialVersionUID = 4471316934529614218L;
+
+        /**
+         * The load factor of the map.
+         */
+        private static final float LOAD_FACTOR = 0.75f;
+
+        /**
+         * The most entries the stripe holds.
+         */
+        private final int myStripeCapacity;
+
+        /**
+         * The number of lookups that found a result.
+         */
+        private long myHits;
+
+        /**
+         * The number of lookups that found nothing.
+         */
+        private long myMisses;
+
+        /**
+         * Constructs a stripe.
+         *
+         * @param theCapacity the most entries the stripe holds.
+         * @param theAccessOrder true to order entries by use (LRU),
+         *        false by insertion (FIFO).
+         */
+        Stripe(final int theCapacity, final boolean theAccessOrder) {
+            super((int) (theCapacity / LOAD_FACTOR) + 1, LOAD_FACTOR, theAccessOrder);
+            myStripeCapacity = theCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, V> theEldest) {
+            return size() > myStripeCapacity;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * TCSS 305
+ *
+ * An implementation of the classic game "Tetris".
+ */
+
+package model;
+
+/**
+ * Zobrist style keys for hashing game states.
+ *
+ * A state hash is the XOR of one key per non-empty row of frozen blocks, a key
+ * for the current piece and a key for the next piece, so each part can be
+ * updated on its own when it changes. Row keys depend on the row index and the
+ * row occupancy mask; colors are not part of the state. Keys are fixed functions
+ * of their inputs, so hashes are the same in every run and on every board size.
+ *
+ * @author Jon Anderson
+ * @version 1.3
+ */
+final class Zobrist {
+
+    /**
+     * Salt of the current piece keys.
+     */
+    private static final long PIECE_SALT = 0x5DEECE66DL;
+
+    /**
+     * Salt of the next piece keys.
+     */
+    private static final long NEXT_SALT = 0x2545F4914F6CDD1DL;
+
+    /**
+     * The number of bits used for each coordinate of a piece key.
+     */
+    private static final int COORDINATE_BITS = 16;
+
+    /**
+     * The mask of one coordinate of a piece key.
+     */
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    /**
+     * Private constructor, to prevent instantiation of this class.
+     */
+    private Zobrist() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Returns the key of a row.
+     *
+     * @param theY the row index.
+     * @param theMask the occupancy mask of the row.
+     * @return the key, zero for an empty row.
+     */
+    static long rowKey(final int theY, final long theMask) {
+        long result = 0L;
+        if (theMask != 0L) {
+            result = SplitMix.mix(SplitMix.mix(theMask) + (theY + 1) * SplitMix.GAMMA);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the current piece.
+     *
+     * @param theShape the PieceTable shape, or -1 for no piece.
+     * @param theX the x position of the piece.
+     * @param theY the y position of the piece.
+     * @return the key, zero for no piece.
+     */
+    static long pieceKey(final int theShape, final int theX, final int theY) {
+        long result = 0L;
+        if (theShape >= 0) {
+            final long packed = ((long) theShape << (2 * COORDINATE_BITS))
+                                | ((theX & COORDINATE_MASK) << COORDINATE_BITS)
+                                | (theY & COORDINATE_MASK);
+            result = SplitMix.mix(packed * SplitMix.GAMMA + PIECE_SALT);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the next piece.
+     *
+     * @param thePiece the next piece, or null for none.
+     * @return the key, zero for no piece.
+     */
+    static long nextKey(final TetrisPiece thePiece) {
+        long result = 0L;
+        if (thePiece != null) {
+            result = SplitMix.mix((thePiece.ordinal() + 1) * SplitMix.GAMMA + NEXT_SALT);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a key derived from a small count, for extending other keys.
+     *
+     * @param theCount the count.
+     * @return the key.
+     */
+    static long countKey(final long theCount) {
+        return SplitMix.mix(theCount * SplitMix.GAMMA);
+    }
+}
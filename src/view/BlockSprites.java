@@ -0,0 +1,184 @@
+/*
+ * TCSS 305 - Tetris
+ */
+package view;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import model.Block;
+
+/**
+ * Pre-rendered images of the blocks, one set per block size. Each block is
+ * painted once, filled in its color and outlined in black with antialiasing,
+ * into an image compatible with the screen, so drawing a cell is one image
+ * copy that Java2D can keep in video memory.
+ *
+ * @author Jon Anderson
+ * @version June 3
+ */
+public final class BlockSprites {
+
+    /**
+     * Color of MURICA (blue).
+     */
+    private static final Color MURICA_BLUE = new Color(0, 82, 165);
+
+    /**
+     * Color of MURICA (red).
+     */
+    private static final Color MURICA_RED = new Color(224, 22, 43);
+
+    /**
+     * The transparent border around each sprite, for the antialiased outline.
+     */
+    private static final int MARGIN = 1;
+
+    /**
+     * The fill color of each block; EMPTY blocks are only outlined.
+     */
+    private static final Map<Block, Color> COLORS = new EnumMap<Block, Color>(Block.class);
+
+    /**
+     * The sprite sets made so far, by block size; used only on the EDT.
+     */
+    private static final Map<Integer, BlockSprites> CACHE =
+        new HashMap<Integer, BlockSprites>();
+
+    static {
+        COLORS.put(Block.I, Color.WHITE);
+        COLORS.put(Block.O, Color.WHITE);
+        COLORS.put(Block.J, MURICA_BLUE);
+        COLORS.put(Block.L, MURICA_RED);
+        COLORS.put(Block.S, MURICA_BLUE);
+        COLORS.put(Block.Z, MURICA_RED);
+        COLORS.put(Block.T, Color.YELLOW);
+    }
+
+    /**
+     * The sprite of each block.
+     */
+    private final Map<Block, BufferedImage> mySprites;
+
+    /**
+     * The width and height of each sprite.
+     */
+    private final int mySpriteSize;
+
+    /**
+     * Renders the sprites of one block size.
+     *
+     * @param theBlockSize the size of a block in pixels.
+     */
+    private BlockSprites(final int theBlockSize) {
+        mySprites = new EnumMap<Block, BufferedImage>(Block.class);
+        mySpriteSize = theBlockSize + 1 + 2 * MARGIN;
+        for (final Block block : Block.values()) {
+            mySprites.put(block, render(block, theBlockSize));
+        }
+    }
+
+    /**
+     * Returns the sprites of a block size, rendering them the first time.
+     *
+     * @param theBlockSize the size of a block in pixels.
+     * @return the sprites.
+     */
+    public static BlockSprites forSize(final int theBlockSize) {
+        BlockSprites result = CACHE.get(theBlockSize);
+        if (result == null) {
+            result = new BlockSprites(theBlockSize);
+            CACHE.put(theBlockSize, result);
+        }
+        return result;
+    }
+
+    /**
+     * Draws a block.
+     *
+     * @param theGraphics to draw with.
+     * @param theBlock to draw.
+     * @param theX of the top left corner of the block.
+     * @param theY of the top left corner of the block.
+     */
+    public void draw(final Graphics theGraphics, final Block theBlock,
+                     final int theX, final int theY) {
+        theGraphics.drawImage(mySprites.get(theBlock), theX - MARGIN, theY - MARGIN, null);
+    }
+
+    /**
+     * Returns the area a block drawn at a point covers, outline included.
+     *
+     * @param theX of the top left corner of the block.
+     * @param theY of the top left corner of the block.
+     * @return the area.
+     */
+    public Rectangle getBounds(final int theX, final int theY) {
+        return new Rectangle(theX - MARGIN, theY - MARGIN, mySpriteSize, mySpriteSize);
+    }
+
+    /**
+     * Whether a block drawn at a point would reach the area being painted, so
+     * a partial repaint can skip the blocks outside it.
+     *
+     * @param theGraphics to draw with.
+     * @param theX of the top left corner of the block.
+     * @param theY of the top left corner of the block.
+     * @return true if the block needs drawing.
+     */
+    public boolean isVisible(final Graphics theGraphics, final int theX, final int theY) {
+        return theGraphics.hitClip(theX - MARGIN, theY - MARGIN, mySpriteSize, mySpriteSize);
+    }
+
+    /**
+     * Paints the sprite of a block.
+     *
+     * @param theBlock to paint.
+     * @param theBlockSize the size of a block in pixels.
+     * @return the sprite.
+     */
+    private static BufferedImage render(final Block theBlock, final int theBlockSize) {
+        // the outline reaches one pixel past the fill on the right and bottom
+        final int size = theBlockSize + 1 + 2 * MARGIN;
+        final BufferedImage result = createImage(size);
+        final Graphics2D g2d = result.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        final Color color = COLORS.get(theBlock);
+        if (color != null) {
+            g2d.setColor(color);
+            g2d.fillRect(MARGIN, MARGIN, theBlockSize, theBlockSize);
+        }
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(MARGIN, MARGIN, theBlockSize, theBlockSize);
+        g2d.dispose();
+        return result;
+    }
+
+    /**
+     * Creates a transparent image in the format of the screen, or a plain ARGB
+     * image when there is no screen.
+     *
+     * @param theSize of the image in pixels.
+     * @return the image.
+     */
+    private static BufferedImage createImage(final int theSize) {
+        BufferedImage result;
+        if (GraphicsEnvironment.isHeadless()) {
+            result = new BufferedImage(theSize, theSize, BufferedImage.TYPE_INT_ARGB);
+        } else {
+            result = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration()
+                .createCompatibleImage(theSize, theSize, Transparency.TRANSLUCENT);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * TCSS 305 - Tetris
+ */
+package view;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.GlyphVector;
+import javax.swing.JComponent;
+import javax.swing.UIManager;
+
+/**
+ * A column of numeric counters painted by one component, in place of a
+ * JLabel per counter. Changing a JLabel's text revalidates and lays out
+ * every container above it; changing a counter only repaints the digits
+ * that changed.
+ *
+ * Every digit gets a cell as wide as the widest digit, so a digit that
+ * changes never moves the others, and each digit is laid out once, as a
+ * cached GlyphVector.
+ *
+ * @author Jon Anderson
+ * @version June 5
+ */
+public class CounterPanel extends JComponent {
+
+    /**
+     * Auto generated serial ID.
+     */
+    private static final long serialVersionUID = -6180563297407212865L;
+
+    /**
+     * The characters a counter can show.
+     */
+    private static final String CHARACTERS = "0123456789-";
+
+    /**
+     * The most digits the preferred size leaves room for.
+     */
+    private static final int PREFERRED_DIGITS = 8;
+
+    /**
+     * The text of each counter.
+     */
+    private final String[] myText;
+
+    /**
+     * The laid out glyphs of each character, in the order of CHARACTERS.
+     */
+    private final GlyphVector[] myGlyphs;
+
+    /**
+     * The width of a digit cell.
+     */
+    private final int myCellWidth;
+
+    /**
+     * The ascent of the font.
+     */
+    private final int myAscent;
+
+    /**
+     * The height of a line of the font.
+     */
+    private final int myLineHeight;
+
+    /**
+     * Creates the counters, each showing zero.
+     * @param theCount the number of counters, shown top to bottom.
+     * @param theFont for the digits.
+     */
+    public CounterPanel(final int theCount, final Font theFont) {
+        super();
+        myText = new String[theCount];
+        myGlyphs = new GlyphVector[CHARACTERS.length()];
+        final FontMetrics metrics = getFontMetrics(theFont);
+        int width = 0;
+        for (int i = 0; i < myGlyphs.length; i++) {
+            myGlyphs[i] = theFont.createGlyphVector(metrics.getFontRenderContext(),
+                                                    CHARACTERS.substring(i, i + 1));
+            width = Math.max(width, metrics.charWidth(CHARACTERS.charAt(i)));
+        }
+        myCellWidth = width;
+        myAscent = metrics.getAscent();
+        myLineHeight = metrics.getHeight();
+        initCounters(theFont);
+    }
+
+    /**
+     * Sets every counter to zero and the look of the component.
+     * @param theFont for the digits.
+     */
+    private void initCounters(final Font theFont) {
+        for (int i = 0; i < myText.length; i++) {
+            myText[i] = "0";
+        }
+        setFont(theFont);
+        setForeground(UIManager.getColor("Label.foreground"));
+        setPreferredSize(new Dimension(myCellWidth * PREFERRED_DIGITS,
+                                       myLineHeight * myText.length));
+    }
+
+    /**
+     * Sets the value of a counter, repainting its digits from the first one
+     * that changed.
+     * @param theCounter the counter, counted from the top.
+     * @param theValue the value to show.
+     */
+    public void setValue(final int theCounter, final long theValue) {
+        final String text = Long.toString(theValue);
+        final String old = myText[theCounter];
+        int first = 0;
+        while (first < text.length() && first < old.length()
+               && text.charAt(first) == old.charAt(first)) {
+            first++;
+        }
+        if (first < Math.max(text.length(), old.length())) {
+            myText[theCounter] = text;
+            // to the right edge, for italic glyphs leaning past their cells
+            repaint(first * myCellWidth, getRowTop(theCounter),
+                    getWidth() - first * myCellWidth, getRowHeight());
+        }
+    }
+
+    /**
+     * Gets the value a counter shows.
+     * @param theCounter the counter, counted from the top.
+     * @return the value.
+     */
+    public long getValue(final int theCounter) {
+        return Long.parseLong(myText[theCounter]);
+    }
+
+    @Override
+    protected void paintComponent(final Graphics theGraphics) {
+        final Graphics2D g2d = (Graphics2D) theGraphics;
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                             RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setColor(getForeground());
+        for (int i = 0; i < myText.length; i++) {
+            final int top = getRowTop(i);
+            if (g2d.hitClip(0, top, getWidth(), getRowHeight())) {
+                // centered in the row as a JLabel centers its text
+                final int baseline = top + (getRowHeight() - myLineHeight) / 2 + myAscent;
+                drawCounter(g2d, myText[i], baseline);
+            }
+        }
+    }
+
+    /**
+     * Draws the digits of a counter.
+     * @param theGraphics to draw with.
+     * @param theText the digits.
+     * @param theBaseline of the digits.
+     */
+    private void drawCounter(final Graphics2D theGraphics, final String theText,
+                             final int theBaseline) {
+        for (int j = 0; j < theText.length(); j++) {
+            theGraphics.drawGlyphVector(myGlyphs[CHARACTERS.indexOf(theText.charAt(j))],
+                                        j * myCellWidth, theBaseline);
+        }
+    }
+
+    /**
+     * Gets the top of a counter's row; the rows share the height equally, as
+     * in a GridLayout.
+     * @param theCounter the counter.
+     * @return the top of its row.
+     */
+    private int getRowTop(final int theCounter) {
+        return theCounter * getRowHeight();
+    }
+
+    /**
+     * Gets the height of a counter's row.
+     * @return the row height.
+     */
+    private int getRowHeight() {
+        return getHeight() / myText.length;
+    }
+}
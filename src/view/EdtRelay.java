@@ -0,0 +1,183 @@
+/*
+ * TCSS 305 - Tetris
+ */
+package view;
+
+import javax.swing.SwingUtilities;
+import model.GameOverListener;
+import model.NextPieceListener;
+import model.RowsClearedListener;
+import model.TetrisPiece;
+
+/**
+ * Passes board events on to a listener on the event dispatch thread.
+ * Events sent on the EDT are passed on at once; events sent by the game loop
+ * thread are queued with invokeLater, in the order they happened.
+ *
+ * Each kind of event has its own relay, made by the factory method for its
+ * listener type. Relays of the same kind are equal when they relay to the
+ * same listener, so registering a listener twice through new relays still
+ * registers it once.
+ *
+ * @author Jon Anderson
+ * @version June 4
+ */
+public abstract class EdtRelay {
+
+    /**
+     * The listener receiving the events, compared by identity.
+     */
+    private final Object myTarget;
+
+    /**
+     * Creates a relay to a listener.
+     * @param theTarget the listener receiving the events.
+     */
+    private EdtRelay(final Object theTarget) {
+        myTarget = theTarget;
+    }
+
+    /**
+     * Creates a relay of next piece events.
+     * @param theTarget the listener receiving the events.
+     * @return the relay.
+     */
+    public static NextPieceListener nextPiece(final NextPieceListener theTarget) {
+        return new NextPieceRelay(theTarget);
+    }
+
+    /**
+     * Creates a relay of rows cleared events.
+     * @param theTarget the listener receiving the events.
+     * @return the relay.
+     */
+    public static RowsClearedListener rowsCleared(final RowsClearedListener theTarget) {
+        return new RowsClearedRelay(theTarget);
+    }
+
+    /**
+     * Creates a relay of game over events.
+     * @param theTarget the listener receiving the events.
+     * @return the relay.
+     */
+    public static GameOverListener gameOver(final GameOverListener theTarget) {
+        return new GameOverRelay(theTarget);
+    }
+
+    /**
+     * Runs code on the event dispatch thread: at once if called there,
+     * otherwise later.
+     * @param theCode to run.
+     */
+    public static void onEdt(final Runnable theCode) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            theCode.run();
+        } else {
+            SwingUtilities.invokeLater(theCode);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object theOther) {
+        return theOther != null && theOther.getClass() == getClass()
+               && ((EdtRelay) theOther).myTarget == myTarget;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(myTarget);
+    }
+
+    /**
+     * Relays next piece events.
+     */
+    private static final class NextPieceRelay extends EdtRelay
+        implements NextPieceListener {
+
+        /**
+         * The listener receiving the events.
+         */
+        private final NextPieceListener myListener;
+
+        /**
+         * Creates the relay.
+         * @param theTarget the listener receiving the events.
+         */
+        NextPieceRelay(final NextPieceListener theTarget) {
+            super(theTarget);
+            myListener = theTarget;
+        }
+
+        @Override
+        public void nextPiece(final TetrisPiece thePiece) {
+            onEdt(new Runnable() {
+                @Override
+                public void run() {
+                    myListener.nextPiece(thePiece);
+                }
+            });
+        }
+    }
+
+    /**
+     * Relays rows cleared events.
+     */
+    private static final class RowsClearedRelay extends EdtRelay
+        implements RowsClearedListener {
+
+        /**
+         * The listener receiving the events.
+         */
+        private final RowsClearedListener myListener;
+
+        /**
+         * Creates the relay.
+         * @param theTarget the listener receiving the events.
+         */
+        RowsClearedRelay(final RowsClearedListener theTarget) {
+            super(theTarget);
+            myListener = theTarget;
+        }
+
+        @Override
+        public void rowsCleared(final int[] theRows) {
+            onEdt(new Runnable() {
+                @Override
+                public void run() {
+                    myListener.rowsCleared(theRows);
+                }
+            });
+        }
+    }
+
+    /**
+     * Relays game over events.
+     */
+    private static final class GameOverRelay extends EdtRelay
+        implements GameOverListener {
+
+        /**
+         * The listener receiving the events.
+         */
+        private final GameOverListener myListener;
+
+        /**
+         * Creates the relay.
+         * @param theTarget the listener receiving the events.
+         */
+        GameOverRelay(final GameOverListener theTarget) {
+            super(theTarget);
+            myListener = theTarget;
+        }
+
+        @Override
+        public void gameOver() {
+            onEdt(new Runnable() {
+                @Override
+                public void run() {
+                    myListener.gameOver();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * TCSS 305 - Tetris
+ */
+package view;
+
+import java.awt.BasicStroke;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import model.Block;
+import model.BoardFrame;
+import model.Handoff;
+
+/**
+ * The play area of the game loop mode. Instead of waiting for Swing to
+ * repaint it, the game loop draws it through a page flipping BufferStrategy
+ * at a steady frame rate.
+ *
+ * It draws the newest frame the game loop published, on the game loop
+ * thread, or on the EDT when the window is exposed; the two never share the
+ * buffers at once, as drawing is synchronized on the canvas.
+ *
+ * @author Jon Anderson
+ * @version June 4
+ */
+public class GameCanvas extends Canvas {
+
+    /**
+     * Auto generated serial ID number.
+     */
+    private static final long serialVersionUID = -4106627453015958436L;
+
+    /**
+     * Wide of stroke for border.
+     */
+    private static final int STROKE_SIZE = 3;
+
+    /**
+     * The number of buffers to flip between.
+     */
+    private static final int BUFFERS = 2;
+
+    /**
+     * Width of the board in blocks.
+     */
+    private static final int WIDTH = 10;
+
+    /**
+     * Height of the play area in blocks.
+     */
+    private static final int HEIGHT = 21;
+
+    /**
+     * Size of the block.
+     */
+    private final int myBlockSize;
+
+    /**
+     * The height of the board.
+     */
+    private final int myBoardHeight;
+
+    /**
+     * The pre-rendered blocks for this block size.
+     */
+    private final BlockSprites mySprites;
+
+    /**
+     * The frames of the board.
+     */
+    private final Handoff<BoardFrame> myFrames;
+
+    /**
+     * Creates the play area.
+     * @param theBlockSize in this game.
+     * @param theBoardHeight of this board.
+     * @param theFrames the frames of the board to draw.
+     */
+    public GameCanvas(final int theBlockSize, final int theBoardHeight,
+                      final Handoff<BoardFrame> theFrames) {
+        super();
+        myBlockSize = theBlockSize;
+        myBoardHeight = theBoardHeight;
+        myFrames = theFrames;
+        mySprites = BlockSprites.forSize(theBlockSize);
+        setPreferredSize(new Dimension(theBlockSize * WIDTH, theBlockSize * HEIGHT));
+        setBackground(Color.LIGHT_GRAY);
+        setIgnoreRepaint(true);
+        // the frame handles the keys
+        setFocusable(false);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(BUFFERS);
+    }
+
+    /**
+     * Draws a frame and shows it, drawing it again if the buffers lose their
+     * contents meanwhile. Does nothing until the canvas is on the screen.
+     */
+    public synchronized void render() {
+        final BufferStrategy strategy = getBufferStrategy();
+        if (strategy != null) {
+            do {
+                do {
+                    final Graphics graphics = strategy.getDrawGraphics();
+                    try {
+                        draw(graphics);
+                    } finally {
+                        graphics.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            // flushes the frame to the screen on window systems that buffer drawing
+            Toolkit.getDefaultToolkit().sync();
+        }
+    }
+
+    @Override
+    public void paint(final Graphics theGraphics) {
+        render();
+    }
+
+    @Override
+    public void update(final Graphics theGraphics) {
+        render();
+    }
+
+    /**
+     * Draws the background, the blocks of the newest frame and the border.
+     * @param theGraphics to draw with.
+     */
+    private void draw(final Graphics theGraphics) {
+        theGraphics.setColor(getBackground());
+        theGraphics.fillRect(0, 0, getWidth(), getHeight());
+        final BoardFrame frame = myFrames.peek();
+        if (frame != null) {
+            drawBlocks(theGraphics, frame);
+        }
+        final Graphics2D g2d = (Graphics2D) theGraphics;
+        g2d.setColor(Color.BLACK);
+        g2d.setStroke(new BasicStroke(STROKE_SIZE));
+        g2d.drawRect(STROKE_SIZE / 2, STROKE_SIZE / 2,
+                     getWidth() - STROKE_SIZE, getHeight() - STROKE_SIZE);
+    }
+
+    /**
+     * Draws the blocks of a frame.
+     * @param theGraphics to draw with.
+     * @param theFrame to draw.
+     */
+    private void drawBlocks(final Graphics theGraphics, final BoardFrame theFrame) {
+        for (int i = theFrame.getRowCount() - 1; i >= 0; i--) {
+            final int y = (myBoardHeight - i) * myBlockSize;
+            for (int j = 0; j < theFrame.getWidth(); j++) {
+                final Block block = theFrame.getBlock(j, i);
+                if (block != null) {
+                    mySprites.draw(theGraphics, block, j * myBlockSize, y);
+                }
+            }
+        }
+    }
+}
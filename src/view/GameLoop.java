@@ -0,0 +1,360 @@
+/*
+ * TCSS 305 - Tetris
+ */
+package view;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import model.Board;
+import model.BoardFrame;
+import model.CommandQueue;
+import model.Handoff;
+
+/**
+ * Runs the game on its own thread instead of the Swing Timer.
+ *
+ * Every frame the loop applies the queued key inputs, advances the board by
+ * as many fixed gravity steps as the elapsed System.nanoTime() covers,
+ * publishes a BoardFrame if the board changed and draws the GameCanvas, if
+ * there is one, then sleeps until the next frame is due. Gravity does not
+ * depend on when frames happen to run, and frames are not at the mercy of
+ * the EDT.
+ *
+ * The Swing panels read the newest frame from the handoff when they paint.
+ * The loop asks the EDT to refresh them only when it has taken the previous
+ * frame, so a busy EDT gets one refresh for any number of frames and never
+ * holds up the loop.
+ *
+ * Falling behind is handled explicitly: a frame woken more than a frame late
+ * is dropped rather than drawn late, and a backlog of more than
+ * MAX_STEPS_PER_FRAME gravity steps is discarded rather than run all at
+ * once. Both are counted, along with the frames drawn and the slowest frame,
+ * to show how well the loop keeps its pace.
+ *
+ * While the loop runs, its thread owns the board; start(), stop() and
+ * setLevel() are called on the EDT, which owns the board while the loop is
+ * stopped.
+ *
+ * @author Jon Anderson
+ * @version June 4
+ */
+public final class GameLoop implements Runnable {
+
+    /**
+     * The frames drawn per second.
+     */
+    public static final int FRAME_RATE = 60;
+
+    /**
+     * The most gravity steps run in one frame.
+     */
+    public static final int MAX_STEPS_PER_FRAME = 5;
+
+    /**
+     * The board.
+     */
+    private final Board myBoard;
+
+    /**
+     * The key inputs waiting for the board.
+     */
+    private final CommandQueue myInputs;
+
+    /**
+     * The frames for the Swing thread.
+     */
+    private final Handoff<BoardFrame> myHandoff;
+
+    /**
+     * Refreshes the panels from the newest frame; run on the EDT.
+     */
+    private final Runnable myRefresh;
+
+    /**
+     * The play area drawn by the loop, or null if Swing paints it.
+     */
+    private final GameCanvas myCanvas;
+
+    /**
+     * The timer whose delay is the time between gravity steps.
+     */
+    private final Timer myGravity;
+
+    /**
+     * The time between frames in nanoseconds.
+     */
+    private final long myFramePeriod;
+
+    /**
+     * The level set by the slider for the loop to apply, or 0 if none.
+     */
+    private final AtomicInteger myPendingLevel = new AtomicInteger();
+
+    /**
+     * The loop thread, or null while stopped; used only on the EDT.
+     */
+    private Thread myThread;
+
+    /**
+     * The board hash when the last frame was published.
+     */
+    private long myPublishedHash;
+
+    /**
+     * Whether the loop should keep running.
+     */
+    private volatile boolean myRunning;
+
+    /**
+     * The number of frames drawn; written only by the loop thread.
+     */
+    private volatile long myFrames;
+
+    /**
+     * The number of frames dropped; written only by the loop thread.
+     */
+    private volatile long myDroppedFrames;
+
+    /**
+     * The number of gravity steps run; written only by the loop thread.
+     */
+    private volatile long mySteps;
+
+    /**
+     * The number of gravity steps discarded; written only by the loop thread.
+     */
+    private volatile long mySkippedSteps;
+
+    /**
+     * The longest time from waking to showing a frame, in nanoseconds; written
+     * only by the loop thread.
+     */
+    private volatile long myMaxFrameTime;
+
+    /**
+     * Creates a stopped game loop.
+     * @param theBoard to run.
+     * @param theInputs the key inputs for the board.
+     * @param theFrames the handoff the loop publishes the frames of the board to.
+     * @param theRefresh run on the EDT when a frame is published that the
+     *        panels have not been asked to show yet.
+     * @param theCanvas to draw each frame, or null if Swing paints the play area.
+     * @param theGravity the timer whose delay is the time between gravity steps;
+     *        the loop only reads its delay.
+     */
+    public GameLoop(final Board theBoard, final CommandQueue theInputs,
+                    final Handoff<BoardFrame> theFrames, final Runnable theRefresh,
+                    final GameCanvas theCanvas, final Timer theGravity) {
+        myBoard = theBoard;
+        myInputs = theInputs;
+        myHandoff = theFrames;
+        myRefresh = theRefresh;
+        myCanvas = theCanvas;
+        myGravity = theGravity;
+        myFramePeriod = TimeUnit.SECONDS.toNanos(1) / FRAME_RATE;
+    }
+
+    /**
+     * Starts the loop if it is not running. The first gravity step comes one
+     * gravity delay later, as with a restarted Timer.
+     */
+    public void start() {
+        if (myThread == null) {
+            myRunning = true;
+            // the EDT may have changed the board while the loop was stopped
+            publish();
+            myThread = new Thread(this, "game-loop");
+            myThread.setDaemon(true);
+            myThread.start();
+        }
+    }
+
+    /**
+     * Stops the loop and waits for its thread to finish, so the caller owns the
+     * board afterwards. Inputs still queued are discarded.
+     */
+    public void stop() {
+        if (myThread != null) {
+            myRunning = false;
+            LockSupport.unpark(myThread);
+            try {
+                myThread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            myThread = null;
+            myInputs.drain();
+        }
+    }
+
+    /**
+     * Changes the level of the board; applied by the loop at its next frame,
+     * or by the next start() if the loop is stopped.
+     * @param theLevel the new level.
+     */
+    public void setLevel(final int theLevel) {
+        myPendingLevel.set(theLevel);
+        if (myThread == null) {
+            applyLevel();
+        }
+    }
+
+    /**
+     * Gets whether the loop is running.
+     * @return if the loop is running.
+     */
+    public boolean isRunning() {
+        return myThread != null;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long deadline = previous;
+        long elapsed = 0;
+        while (myRunning) {
+            final long now = System.nanoTime();
+            elapsed += now - previous;
+            previous = now;
+            applyLevel();
+            myInputs.drainTo(myBoard);
+            elapsed = simulate(elapsed);
+            if (isChanged()) {
+                publish();
+            }
+            deadline = present(now, deadline);
+            LockSupport.parkNanos(this, deadline - System.nanoTime());
+        }
+    }
+
+    /**
+     * Sets the level the slider asked for, if any.
+     */
+    private void applyLevel() {
+        final int level = myPendingLevel.getAndSet(0);
+        if (level > 0) {
+            myBoard.setLevel(level);
+        }
+    }
+
+    /**
+     * Whether the board changed since the last frame was published. Every move
+     * changes the hash; the level and the end of the game do not.
+     * @return true if the board needs a new frame.
+     */
+    private boolean isChanged() {
+        final BoardFrame last = myHandoff.peek();
+        return last == null || myBoard.getHash() != myPublishedHash
+               || myBoard.isGameOver() != last.isGameOver()
+               || myBoard.getLevel() != last.getLevel();
+    }
+
+    /**
+     * Publishes a frame of the board, and asks the EDT to refresh the panels
+     * unless it has yet to take the previous frame.
+     */
+    private void publish() {
+        final BoardFrame frame = myBoard.getFrame();
+        myPublishedHash = myBoard.getHash();
+        if (myHandoff.publish(frame)) {
+            SwingUtilities.invokeLater(myRefresh);
+        }
+    }
+
+    /**
+     * Runs the gravity steps the elapsed time covers.
+     * @param theElapsed the time not yet simulated, in nanoseconds.
+     * @return the time left over, less than one gravity step.
+     */
+    private long simulate(final long theElapsed) {
+        // gravity is never faster than the frame rate
+        final long period = Math.max(myFramePeriod,
+                                     TimeUnit.MILLISECONDS.toNanos(myGravity.getDelay()));
+        long elapsed = theElapsed;
+        int steps = 0;
+        while (elapsed >= period && steps < MAX_STEPS_PER_FRAME) {
+            myBoard.step();
+            elapsed -= period;
+            steps++;
+        }
+        mySteps += steps;
+        if (elapsed >= period) {
+            // too far behind to catch up; running the backlog would only fall further behind
+            mySkippedSteps += elapsed / period;
+            elapsed %= period;
+        }
+        return elapsed;
+    }
+
+    /**
+     * Draws the frame that is due, or drops it if the loop woke a whole frame late.
+     * @param theNow the time the loop woke.
+     * @param theDeadline the time the frame was due.
+     * @return the time the next frame is due.
+     */
+    private long present(final long theNow, final long theDeadline) {
+        final long late = theNow - theDeadline;
+        long result = theDeadline + myFramePeriod;
+        if (late > myFramePeriod) {
+            myDroppedFrames += late / myFramePeriod;
+            result = theNow + myFramePeriod;
+        } else {
+            if (myCanvas != null) {
+                myCanvas.render();
+            }
+            myFrames++;
+            myMaxFrameTime = Math.max(myMaxFrameTime, System.nanoTime() - theNow);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of frames drawn.
+     * @return the frames drawn.
+     */
+    public long getFrameCount() {
+        return myFrames;
+    }
+
+    /**
+     * Gets the number of frames dropped because the loop fell behind.
+     * @return the frames dropped.
+     */
+    public long getDroppedFrameCount() {
+        return myDroppedFrames;
+    }
+
+    /**
+     * Gets the number of gravity steps run.
+     * @return the steps run.
+     */
+    public long getStepCount() {
+        return mySteps;
+    }
+
+    /**
+     * Gets the number of gravity steps discarded because the loop fell too far behind.
+     * @return the steps discarded.
+     */
+    public long getSkippedStepCount() {
+        return mySkippedSteps;
+    }
+
+    /**
+     * Gets the longest time a frame took to simulate and draw.
+     * @return the longest frame in nanoseconds.
+     */
+    public long getMaxFrameTime() {
+        return myMaxFrameTime;
+    }
+
+    @Override
+    public String toString() {
+        return "GameLoop: " + myFrames + " frames, " + myDroppedFrames + " dropped, "
+               + mySteps + " steps, " + mySkippedSteps + " skipped, longest frame "
+               + TimeUnit.NANOSECONDS.toMicros(myMaxFrameTime) + " us";
+    }
+}
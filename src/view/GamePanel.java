@@ -7,25 +7,27 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 import javax.swing.BorderFactory;
 import javax.swing.JPanel;
 import model.Block;
-import model.Board;
+import model.BoardDelta;
+import model.BoardDeltaListener;
+import model.BoardFrame;
 
 /**
  * Constructs a panel where the user will play the Tetris game.
+ *
+ * Only the cells that changed since the last board state are repainted, as
+ * one rectangle around them; line clears and new games repaint everything.
  * 
  * @author Jon Anderson
  * @version May 18
  *
  */
-public class GamePanel extends JPanel implements Observer {
+public class GamePanel extends JPanel implements BoardDeltaListener {
 
     /**
      * Auto generated serial ID number.
@@ -37,16 +39,6 @@ public class GamePanel extends JPanel implements Observer {
      */
     private static final int STROKE_SIZE = 3;
     
-    /**
-     * Color of MURICA (blue).
-     */
-    private static final Color MURICA_BLUE = new Color(0, 82, 165);
-    
-    /**
-     * Color of MURICA (red).
-     */
-    private static final Color MURICA_RED = new Color(224, 22, 43);
-    
     /**
      * Size of the block.
      */
@@ -58,20 +50,21 @@ public class GamePanel extends JPanel implements Observer {
     private final int myBoardHeight;
     
     /**
-     * The X value to draw onto.
+     * The pre-rendered blocks for this block size.
      */
-    private int myX;
-    
-    /**
-     * The Y value to draw to.
-     */
-    private int myY;
+    private final BlockSprites mySprites;
     
     /**
      * My tetris pieces.
      */
     private List<Block[]> myPieces = new ArrayList<Block[]>();
 
+    /**
+     * The frame of a board run by a game loop thread last shown, or null if
+     * the board changes on the EDT and sends its deltas here.
+     */
+    private BoardFrame myFrame;
+
     /**
      * Creates the tetris game area with default features.
      * @param theBlockSize in this game.
@@ -85,32 +78,131 @@ public class GamePanel extends JPanel implements Observer {
         //pack();
         myBlockSize = theBlockSize;
         myBoardHeight = theBoardHeight;
+        mySprites = BlockSprites.forSize(theBlockSize);
         final Dimension preferredSize = new Dimension(theBlockSize * 10, theBlockSize * 21);
         setPreferredSize(preferredSize);
         setBorder(BorderFactory.createStrokeBorder(new BasicStroke(STROKE_SIZE)));
         setBackground(Color.LIGHT_GRAY);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public void update(final Observable theObserv, final Object theObject) {
-
-        if (theObserv instanceof Board) {
-            if (theObject instanceof ArrayList) {
-                myPieces = (ArrayList<Block[]>) theObject;
+    public void boardChanged(final BoardDelta theDelta) {
+        theDelta.applyTo(myPieces);
+        if (theDelta.isReset() || theDelta.isLineClear()) {
+            repaint();
+        } else {
+            Rectangle cells = null;
+            for (int i = 0; i < theDelta.getChangeCount(); i++) {
+                cells = addCell(cells, theDelta.getX(i), theDelta.getY(i));
             }
+            repaintCells(cells);
+        }
+    }
+
+    /**
+     * Shows a frame of a board run by a game loop thread instead of the
+     * deltas, repainting the cells that differ from the frame shown before.
+     * @param theFrame the newest frame.
+     */
+    public void showFrame(final BoardFrame theFrame) {
+        final BoardFrame previous = myFrame;
+        myFrame = theFrame;
+        if (previous == null || theFrame.getRowCount() != previous.getRowCount()
+            || theFrame.getLinesCleared() != previous.getLinesCleared()
+            || theFrame.getScore() < previous.getScore()) {
+            // the first frame, a line clear or a new game
             repaint();
+        } else {
+            Rectangle cells = null;
+            for (int i = 0; i < theFrame.getRowCount(); i++) {
+                if (!theFrame.isSameRow(previous, i)) {
+                    cells = addChangedCells(cells, previous, theFrame, i);
+                }
+            }
+            repaintCells(cells);
         }
-       
     }
 
     @Override
     public void paintComponent(final Graphics theGraphics) {
         super.paintComponent(theGraphics);
-        final Graphics2D g2d = (Graphics2D) theGraphics;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                             RenderingHints.VALUE_ANTIALIAS_ON);
-        iterateLists(g2d);
+        if (myFrame == null) {
+            iterateLists(theGraphics);
+        } else {
+            drawFrame(theGraphics, myFrame);
+        }
+    }
+
+    /**
+     * Adds the cells of a row that differ between two frames to an area of cells.
+     * @param theCells the area so far, or null if empty.
+     * @param theOld the frame shown before.
+     * @param theNew the frame to show.
+     * @param theRow the row to compare.
+     * @return the area including the changed cells, or null if still empty.
+     */
+    private static Rectangle addChangedCells(final Rectangle theCells,
+                                             final BoardFrame theOld,
+                                             final BoardFrame theNew, final int theRow) {
+        Rectangle result = theCells;
+        for (int j = 0; j < theNew.getWidth(); j++) {
+            if (theNew.getBlock(j, theRow) != theOld.getBlock(j, theRow)) {
+                result = addCell(result, j, theRow);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a cell to an area of cells.
+     * @param theCells the area so far, or null if empty.
+     * @param theX the column of the cell.
+     * @param theY the row of the cell.
+     * @return the area including the cell.
+     */
+    private static Rectangle addCell(final Rectangle theCells, final int theX,
+                                     final int theY) {
+        Rectangle result = theCells;
+        if (result == null) {
+            result = new Rectangle(theX, theY, 0, 0);
+        } else {
+            result.add(theX, theY);
+        }
+        return result;
+    }
+
+    /**
+     * Repaints the pixels covering an area of cells, outlines included.
+     * @param theCells the area, from its lowest, leftmost cell to its highest,
+     *        rightmost cell; null if no cell changed.
+     */
+    private void repaintCells(final Rectangle theCells) {
+        if (theCells != null) {
+            final int left = theCells.x * myBlockSize;
+            // rows count up from the bottom, pixels down from the top
+            final Rectangle area =
+                mySprites.getBounds(left, (myBoardHeight - theCells.y) * myBlockSize);
+            area.add(mySprites.getBounds((theCells.x + theCells.width) * myBlockSize,
+                (myBoardHeight - theCells.y - theCells.height) * myBlockSize));
+            repaint(area);
+        }
+    }
+
+    /**
+     * Draws the blocks of a frame.
+     * @param theGraphics I will be painting.
+     * @param theFrame to draw.
+     */
+    private void drawFrame(final Graphics theGraphics, final BoardFrame theFrame) {
+        for (int i = theFrame.getRowCount() - 1; i >= 0; i--) {
+            final int y = (myBoardHeight - i) * myBlockSize;
+            for (int j = 0; j < theFrame.getWidth(); j++) {
+                final Block block = theFrame.getBlock(j, i);
+                if (block != null && mySprites.isVisible(theGraphics, j * myBlockSize, y)) {
+                    mySprites.draw(theGraphics, block, j * myBlockSize, y);
+                }
+            }
+        }
     }
     
     /**
@@ -119,68 +211,15 @@ public class GamePanel extends JPanel implements Observer {
      */
     private void iterateLists(final Graphics theGraphics) {
         for (int i = myPieces.size() - 1; i >= 0; i--) {
-            final Block[] blockArrays;
-            blockArrays = myPieces.get(i);
-            myY = i;
-            for (int j = 0; j <= blockArrays.length - 1; j++) {
-                myX = j * myBlockSize;
-                if (blockArrays[j] != null) {
-                    determineColor(blockArrays[j], theGraphics);
-                    theGraphics.setColor(Color.BLACK);
-                    theGraphics.drawRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                         myBlockSize, myBlockSize);
+            final Block[] blockArrays = myPieces.get(i);
+            final int y = (myBoardHeight - i) * myBlockSize;
+            for (int j = 0; j < blockArrays.length; j++) {
+                if (blockArrays[j] != null
+                    && mySprites.isVisible(theGraphics, j * myBlockSize, y)) {
+                    mySprites.draw(theGraphics, blockArrays[j], j * myBlockSize, y);
                 }
             }   
         }   
     }
-    
-    /**
-     * Determines the color for this block.
-     * @param thePiece of we will check.
-     * @param theGraphics to draw.
-     */
-    private void determineColor(final Block thePiece, final Graphics theGraphics) {
-        
-        switch (thePiece) {
-            case I:
-                theGraphics.setColor(Color.WHITE);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                     myBlockSize, myBlockSize);
-                break;
-            case O:
-                theGraphics.setColor(Color.WHITE);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                     myBlockSize, myBlockSize);
-                break;
-            case J:
-                theGraphics.setColor(MURICA_BLUE);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                                     myBlockSize, myBlockSize);
-                break;
-            case L:
-                theGraphics.setColor(MURICA_RED);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                     myBlockSize, myBlockSize);
-                break;
-            case S:
-                theGraphics.setColor(MURICA_BLUE);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                                     myBlockSize, myBlockSize);
-                break;
-            case Z:
-                theGraphics.setColor(MURICA_RED);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                                     myBlockSize, myBlockSize);
-                break;
-            case T:
-                theGraphics.setColor(Color.YELLOW);
-                theGraphics.fillRect(myX, (myBoardHeight - myY) * myBlockSize, 
-                                                     myBlockSize, myBlockSize);
-                break;
-            default:
-                break;
-        }
-
-    }
 
 }
@@ -4,15 +4,13 @@
 package view;
 
 import java.awt.BasicStroke;
-import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.util.Observable;
-import java.util.Observer;
 import javax.swing.BorderFactory;
 import javax.swing.JPanel;
 import model.Block;
+import model.BoardFrame;
+import model.Handoff;
+import model.NextPieceListener;
 import model.Point;
 import model.TetrisPiece;
 
@@ -22,7 +20,7 @@ import model.TetrisPiece;
  * @author Jon Anderson
  * @version May 26
  */
-public class NextPiecePanel extends JPanel implements Observer {
+public class NextPiecePanel extends JPanel implements NextPieceListener {
 
     /**
      * Auto generated serial ID number.
@@ -48,16 +46,6 @@ public class NextPiecePanel extends JPanel implements Observer {
      */
     private static final int Y_COORD = 7;
     
-    /**
-     * Color of MURICA (red).
-     */
-    private static final Color MURICA_RED = new Color(224, 22, 43);
-    
-    /**
-     * Color of MURICA (blue).
-     */
-    private static final Color MURICA_BLUE = new Color(0, 82, 165);
-
     /**
      * Checks to see if the object is an I block.
      */
@@ -84,9 +72,25 @@ public class NextPiecePanel extends JPanel implements Observer {
     private final int myBlockSize;
 
     /**
-     * The color of my block.
+     * The block of the next piece.
+     */
+    private Block myBlock;
+
+    /**
+     * The pre-rendered blocks for this block size.
      */
-    private Color myBlockColor;
+    private final BlockSprites mySprites;
+
+    /**
+     * The frames published by a game loop thread, or null if the board sends
+     * the next pieces here.
+     */
+    private Handoff<BoardFrame> myFrames;
+
+    /**
+     * The next piece last shown from a frame.
+     */
+    private TetrisPiece myFramePiece;
 
     /**
      * Creates a next piece panel which will display the appropriate next piece in the
@@ -97,102 +101,73 @@ public class NextPiecePanel extends JPanel implements Observer {
     public NextPiecePanel(final int theBlockSize) {
         super();
         myBlockSize = theBlockSize;
+        mySprites = BlockSprites.forSize(theBlockSize);
         setBorder(BorderFactory.createStrokeBorder(new BasicStroke(X_MOD)));
     }
 
+    /**
+     * Shows the next piece of the newest frame of a board run by a game loop
+     * thread; the loop has the panel repainted when it publishes one.
+     * @param theFrames the frames of the board.
+     */
+    public void setFrames(final Handoff<BoardFrame> theFrames) {
+        myFrames = theFrames;
+    }
+
     @Override
     public void paintComponent(final Graphics theGraphics) {
         super.paintComponent(theGraphics);
-        final Graphics2D g2d = (Graphics2D) theGraphics;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                             RenderingHints.VALUE_ANTIALIAS_ON);
-
+        if (myFrames != null) {
+            takeNextPiece();
+        }
         if (myPlaying) {
+            int x = X_MOD * myBlockSize;
+            int y = (int) (Y_MOD * myBlockSize);
+            if (myO) {
+                x = (int) (O_MOD * myBlockSize);
+            } else if (myI) {
+                x = (int) (Y_MOD * myBlockSize);
+                y = 2 * myBlockSize;
+            }
             for (final Point p : myDrawPoint) {
-                if (myO) {
-                    g2d.setPaint(myBlockColor);
-                    theGraphics.fillRect((p.x() * myBlockSize) + (int) (O_MOD * myBlockSize),
-                                 (Y_COORD - p.y()) * myBlockSize - (int) (Y_MOD * myBlockSize),
-                                         myBlockSize, myBlockSize);
-                    g2d.setPaint(Color.BLACK);
-                    theGraphics.drawRect((p.x() * myBlockSize) + (int) (O_MOD * myBlockSize),
-                                 (Y_COORD - p.y()) * myBlockSize - (int) (Y_MOD * myBlockSize),
-                                         myBlockSize, myBlockSize);
-                } else if (myI) {
-                    g2d.setPaint(myBlockColor);
-                    theGraphics.fillRect((p.x() * myBlockSize) + (int) (Y_MOD * myBlockSize),
-                                 (Y_COORD - p.y()) * myBlockSize - (int) (2.0 * myBlockSize),
-                                         myBlockSize, myBlockSize);
-                    g2d.setPaint(Color.BLACK);
-                    theGraphics.drawRect((p.x() * myBlockSize) + (int) (Y_MOD * myBlockSize),
-                                 (Y_COORD - p.y()) * myBlockSize - (int) (2.0 * myBlockSize),
-                                         myBlockSize, myBlockSize);
-                } else {
-                    g2d.setPaint(myBlockColor);
-                    theGraphics.fillRect((p.x() * myBlockSize) + (X_MOD * myBlockSize),
-                                 (Y_COORD - p.y()) * myBlockSize - (int) (Y_MOD * myBlockSize),
-                                         myBlockSize, myBlockSize);
-                    g2d.setPaint(Color.BLACK);
-                    theGraphics.drawRect((p.x() * myBlockSize) + (X_MOD * myBlockSize),
-                                 (Y_COORD - p.y()) * myBlockSize - (int) (Y_MOD * myBlockSize),
-                                         myBlockSize, myBlockSize);
-                }
+                mySprites.draw(theGraphics, myBlock, p.x() * myBlockSize + x,
+                               (Y_COORD - p.y()) * myBlockSize - y);
             }
         }
     }
 
-    @Override
-    public void update(final Observable theObserv, final Object theObject) {
-        if (theObject instanceof TetrisPiece) {
-            determineColor(((TetrisPiece) theObject).getBlock());
-            myDrawPoint = ((TetrisPiece) theObject).getPoints();
-            if (((TetrisPiece) theObject).getBlock() == Block.I) {
-                myI = true;
-                myO = false;
-            } else if (((TetrisPiece) theObject).getBlock() == Block.O) {
-                myO = true;
-                myI = true;
-            }
-            myPlaying = true;
-            repaint();
+    /**
+     * Takes up the next piece of the newest frame, if it is a new one.
+     */
+    private void takeNextPiece() {
+        final BoardFrame frame = myFrames.peek();
+        if (frame != null && frame.getNextPiece() != null
+            && frame.getNextPiece() != myFramePiece) {
+            myFramePiece = frame.getNextPiece();
+            showPiece(myFramePiece);
         }
     }
 
+    @Override
+    public void nextPiece(final TetrisPiece thePiece) {
+        showPiece(thePiece);
+        repaint();
+    }
+
     /**
-     * Determines the color of the block.
-     * @param theBlock we will color.
+     * Sets up the panel to show a piece.
+     * @param thePiece to show.
      */
-    private void determineColor(final Block theBlock) {
-        switch (theBlock) {
-            case I:
-                myBlockColor = Color.WHITE;
-                break;
-            case O:
-                myBlockColor = Color.WHITE;
-
-                break;
-            case J:
-                myBlockColor = MURICA_BLUE;
-
-                break;
-            case L:
-                myBlockColor = MURICA_RED;
-
-                break;
-            case S:
-                myBlockColor = MURICA_BLUE;
-
-                break;
-            case Z:
-                myBlockColor = MURICA_RED;
-
-                break;
-            case T:
-                myBlockColor = Color.YELLOW;
-
-                break;
-            default:
-                break;
+    private void showPiece(final TetrisPiece thePiece) {
+        myBlock = thePiece.getBlock();
+        myDrawPoint = thePiece.getPoints();
+        if (thePiece.getBlock() == Block.I) {
+            myI = true;
+            myO = false;
+        } else if (thePiece.getBlock() == Block.O) {
+            myO = true;
+            myI = true;
         }
+        myPlaying = true;
     }
 }
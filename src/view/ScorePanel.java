@@ -4,14 +4,13 @@
 package view;
 
 import java.awt.BasicStroke;
+import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.BorderFactory;
@@ -20,6 +19,11 @@ import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JSplitPane;
 import javax.swing.Timer;
+import model.Board;
+import model.BoardFrame;
+import model.Handoff;
+import model.NextPieceListener;
+import model.RowsClearedListener;
 import model.TetrisPiece;
 
 /**
@@ -29,7 +33,8 @@ import model.TetrisPiece;
  * @author Jon Anderson
  * @version June 1
  */
-public class ScorePanel extends JSplitPane implements Observer {
+public class ScorePanel extends JSplitPane
+    implements NextPieceListener, RowsClearedListener {
 
     /**
      * Auto generated serial ID.
@@ -37,9 +42,9 @@ public class ScorePanel extends JSplitPane implements Observer {
     private static final long serialVersionUID = 118141119856970403L;
 
     /**
-     * Amount of plain font JLabel's.
+     * Wide of stroke for border.
      */
-    private static final int PLAIN_FONTS = 3;
+    private static final int STROKE_SIZE = 3;
 
     /**
      * Increments score by this much when a piece is dropped.
@@ -87,29 +92,39 @@ public class ScorePanel extends JSplitPane implements Observer {
     private static final int FOUR_MULT = 1200;
 
     /**
-     * List of the labels in this panel.
+     * The counter showing the score.
      */
-    private final List<JLabel> myLabels = new ArrayList<JLabel>();
+    private static final int SCORE = 0;
+
+    /**
+     * The counter showing the lines cleared.
+     */
+    private static final int CLEARED = 1;
 
     /**
-     * Label for displaying the score.
+     * The counter showing the level.
      */
-    private final JLabel myScore = addLabel("0");
+    private static final int LEVEL = 2;
 
     /**
-     * Label for lines currently cleared.
+     * The counter showing the lines needed for the next level.
      */
-    private final JLabel myCleared = addLabel("0 ");
+    private static final int NEXT_LEVEL = 3;
 
     /**
-     * Label displaying the current level.
+     * The number of counters.
      */
-    private final JLabel myCurrentLevel = addLabel("1");
+    private static final int COUNTERS = 4;
 
     /**
-     * Amount of lines to get to the next level.
+     * List of the labels in this panel.
      */
-    private final JLabel myNextLevel;
+    private final List<JLabel> myLabels = new ArrayList<JLabel>();
+
+    /**
+     * The score, lines cleared, level and lines for the next level.
+     */
+    private final CounterPanel myCounters;
 
     /**
      * The block size for this game.
@@ -171,6 +186,27 @@ public class ScorePanel extends JSplitPane implements Observer {
      */
     private final Music myMusic;
 
+    /**
+     * The frames published by the game loop, or null if the board sends its
+     * events here and the panel keeps the score itself.
+     */
+    private Handoff<BoardFrame> myFrames;
+
+    /**
+     * The game loop running the board, which the slider's level goes to, or null.
+     */
+    private GameLoop myLoop;
+
+    /**
+     * The board the slider's level goes to while the Swing Timer runs it, or null.
+     */
+    private Board myBoard;
+
+    /**
+     * The frame the labels show, or null.
+     */
+    private BoardFrame myShown;
+
     /**
      * Constructs a score panel to keep track of various information pertaining to the game.
      * @param theBlockSize to base this panel size on.
@@ -182,14 +218,15 @@ public class ScorePanel extends JSplitPane implements Observer {
     public ScorePanel(final int theBlockSize, final int theLineRequirement,
                       final Timer theTimer, final int theTimerDelay, final Music theMusic) {
         super();
-        myNextLevel = addLabel(String.valueOf(theLineRequirement));
         myBlockSize = theBlockSize;
+        myCounters = new CounterPanel(COUNTERS, new Font("Osaka", Font.ITALIC,
+                                      (int) (theBlockSize / LABEL_SIZE_MODIFIER)));
         myTimer = theTimer;
         myTimerDelay = theTimerDelay;
         myRequirement = theLineRequirement;
         myMusic = theMusic;
         modSize();
-        setBorder(BorderFactory.createStrokeBorder(new BasicStroke(PLAIN_FONTS)));
+        setBorder(BorderFactory.createStrokeBorder(new BasicStroke(STROKE_SIZE)));
     }
 
     /**
@@ -202,7 +239,7 @@ public class ScorePanel extends JSplitPane implements Observer {
         setDividerLocation(myBlockSize * DIVIDER_MOD);
         setOrientation(JSplitPane.HORIZONTAL_SPLIT);
         setLeftComponent(boldLabelPanel());
-        setRightComponent(plainLabelPanel());
+        setRightComponent(counterPanel());
     }
 
     /**
@@ -219,15 +256,14 @@ public class ScorePanel extends JSplitPane implements Observer {
     }
 
     /**
-     * Adds the plain labels to the east panel.
+     * Adds the counters to the east panel.
      * @return the created east panel.
      */
-    private JPanel plainLabelPanel() {
-        final JPanel panel = new JPanel(new GridLayout(4, 1));
-        panel.add(myScore);
-        panel.add(myCleared);
-        panel.add(myCurrentLevel);
-        panel.add(myNextLevel);
+    private JPanel counterPanel() {
+        final JPanel panel = new JPanel(new BorderLayout());
+        myCounters.setValue(LEVEL, myLevel);
+        myCounters.setValue(NEXT_LEVEL, myRequirement);
+        panel.add(myCounters, BorderLayout.CENTER);
         setFont();
         return panel;
     }
@@ -249,28 +285,65 @@ public class ScorePanel extends JSplitPane implements Observer {
     private void setFont() {
         final Font boldFont = new Font(Font.SERIF, Font.BOLD,
                                        (int) (myBlockSize / LABEL_SIZE_MODIFIER));
-        final Font plainFont = new Font("Osaka", Font.ITALIC,
-                                        (int) (myBlockSize / LABEL_SIZE_MODIFIER));
-        int count = 0;
         for (final JLabel label: myLabels) {
-            label.setFont(plainFont);
-            if (count > PLAIN_FONTS) {
-                label.setFont(boldFont);
+            label.setFont(boldFont);
+        }
+    }
+
+    /**
+     * Shows the score, lines and level of the frames a game loop thread
+     * publishes, as the board keeps them, instead of keeping the score from
+     * the board's events; the slider's level goes to the loop.
+     * @param theFrames the frames of the board.
+     * @param theLoop the game loop running the board.
+     */
+    protected void setFrames(final Handoff<BoardFrame> theFrames, final GameLoop theLoop) {
+        myFrames = theFrames;
+        myLoop = theLoop;
+    }
+
+    /**
+     * Sends the slider's level to a board the Swing Timer runs on the EDT, so
+     * the board's score keeping stays in step with this panel.
+     * @param theBoard the board.
+     */
+    protected void setBoard(final Board theBoard) {
+        myBoard = theBoard;
+    }
+
+    /**
+     * Brings the labels up to date with the newest frame, playing the sound
+     * for any rows cleared since the last frame shown.
+     */
+    protected void refresh() {
+        final BoardFrame frame = myFrames.peek();
+        if (frame != null && frame != myShown) {
+            final long lines = frame.getLinesCleared() - myLinesCleared;
+            if (lines > 0 && myShown != null) {
+                playClearSound((int) lines);
             }
-            count++;
+            myCounters.setValue(SCORE, frame.getScore());
+            myLinesCleared = (int) frame.getLinesCleared();
+            myCounters.setValue(CLEARED, myLinesCleared);
+            myCounters.setValue(NEXT_LEVEL, frame.getLinesToNextLevel());
+            if (frame.getLevel() != myLevel) {
+                myLevel = frame.getLevel();
+                setLevel(myLevel, mySlider);
+            }
+            myShown = frame;
         }
     }
 
     @Override
-    public void update(final Observable theObserv, final Object theObject) {
-        if (theObject instanceof TetrisPiece) {
-            myScoreValue += SCORE_MOD;
-            myScore.setText(String.valueOf(myScoreValue));
-        }
-        if (theObject instanceof Integer[]) {
-            updateDisplay(((Integer[]) theObject).length);
-            calculateScore(((Integer[]) theObject).length);
-        }
+    public void nextPiece(final TetrisPiece thePiece) {
+        myScoreValue += SCORE_MOD;
+        myCounters.setValue(SCORE, myScoreValue);
+    }
+
+    @Override
+    public void rowsCleared(final int[] theRows) {
+        updateDisplay(theRows.length);
+        calculateScore(theRows.length);
     }
 
     /**
@@ -279,13 +352,29 @@ public class ScorePanel extends JSplitPane implements Observer {
      * @param theSlider for the level.
      */
     protected void setLevel(final int theLevel, final JSlider theSlider) {
+        if (theLevel != myLevel) {
+            sendLevel(theLevel);
+        }
         myLevel = theLevel;
         mySlider = theSlider;
         mySlider.setValue(myLevel);
-        myCurrentLevel.setText(String.valueOf(myLevel));
+        myCounters.setValue(LEVEL, myLevel);
         myTimer.setDelay(myTimerDelay - INCREMENT_TIMER * myLevel);
     }
 
+    /**
+     * Sends a level to the board: through the game loop if one runs the
+     * board, otherwise straight to the board.
+     * @param theLevel of the game.
+     */
+    private void sendLevel(final int theLevel) {
+        if (myLoop != null) {
+            myLoop.setLevel(theLevel);
+        } else if (myBoard != null) {
+            myBoard.setLevel(theLevel);
+        }
+    }
+
     /**
      * Updates all the labels except for the score.
      * @param theLines that have been cleared.
@@ -293,15 +382,15 @@ public class ScorePanel extends JSplitPane implements Observer {
     private void updateDisplay(final int theLines) {
         myCounter += theLines;
         myLinesCleared += theLines;
-        myCleared.setText(String.valueOf(myLinesCleared));
+        myCounters.setValue(CLEARED, myLinesCleared);
         if (myCounter >= myRequirement) {
             myLevel++;
             setLevel(myLevel, mySlider);
             myCounter = myCounter % myRequirement;
         }
-        myCurrentLevel.setText(String.valueOf(myLevel));
+        myCounters.setValue(LEVEL, myLevel);
         myTimer.setDelay(myTimerDelay - INCREMENT_TIMER * myLevel);
-        myNextLevel.setText(String.valueOf(myRequirement - myCounter));
+        myCounters.setValue(NEXT_LEVEL, myRequirement - myCounter);
     }
 
     /**
@@ -309,6 +398,16 @@ public class ScorePanel extends JSplitPane implements Observer {
      * @param theLines that were cleared.
      */
     private void calculateScore(final int theLines) {
+        playClearSound(theLines);
+        myScoreValue += myScores[theLines] * myLevel;
+        myCounters.setValue(SCORE, myScoreValue);
+    }
+
+    /**
+     * Plays the sound for clearing lines.
+     * @param theLines that were cleared.
+     */
+    private void playClearSound(final int theLines) {
         if (theLines < SCORE_MOD) {
             try {
                 myMusic.playSonicBoom();
@@ -330,8 +429,6 @@ public class ScorePanel extends JSplitPane implements Observer {
                 e.printStackTrace();
             }
         }
-        myScoreValue += myScores[theLines] * myLevel;
-        myScore.setText(String.valueOf(myScoreValue));
     }
 
     /**
@@ -342,16 +439,35 @@ public class ScorePanel extends JSplitPane implements Observer {
         if (myGamesPlayed > 0) {
             myScoreValue -= SCORE_MOD;
         }
-        myScore.setText("0   ");
+        myCounters.setValue(SCORE, 0);
         myTimer.setDelay(myTimerDelay);
         myCounter = 0;
         myLinesCleared = 0;
-        myCleared.setText("0  ");
+        myCounters.setValue(CLEARED, 0);
         myLevel = 1;
         mySlider.setValue(myLevel);
-        myCurrentLevel.setText(String.valueOf(myLevel));
-        myNextLevel.setText(String.valueOf(myRequirement));
+        myCounters.setValue(LEVEL, myLevel);
+        myCounters.setValue(NEXT_LEVEL, myRequirement);
         myGamesPlayed++;
     }
 
+    /**
+     * Sets the values and texts of the labels to those of a resumed game.
+     * @param theScore of the resumed game.
+     * @param theLines cleared in the resumed game.
+     * @param theLevel of the resumed game.
+     * @param theLinesToNextLevel the lines the resumed game needs for the next level.
+     */
+    protected void restoreValues(final int theScore, final int theLines, final int theLevel,
+                                 final int theLinesToNextLevel) {
+        myScoreValue = theScore;
+        myCounters.setValue(SCORE, myScoreValue);
+        myLinesCleared = theLines;
+        myCounters.setValue(CLEARED, myLinesCleared);
+        // the slider may have changed the level, so the lines do not give the counter
+        myCounter = myRequirement - theLinesToNextLevel;
+        setLevel(theLevel, mySlider);
+        myCounters.setValue(NEXT_LEVEL, myRequirement - myCounter);
+    }
+
 }
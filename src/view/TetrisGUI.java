@@ -5,12 +5,14 @@ package view;
 
 import com.sun.glass.events.KeyEvent;
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyListener;
 import java.io.IOException;
-import java.util.Observable;
-import java.util.Observer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.ImageIcon;
@@ -18,8 +20,17 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
 import javax.swing.Timer;
+import model.Action;
 import model.Board;
+import model.BoardFrame;
+import model.CommandQueue;
+import model.GameOverListener;
+import model.Handoff;
+import model.NextPieceListener;
+import model.SnapshotJournal;
+import model.TetrisPiece;
 
 /**
  * Class which holds my GUI and all the panels within.
@@ -27,7 +38,7 @@ import model.Board;
  * @author Jon Anderson
  * @version May 19
  */
-public class TetrisGUI implements Observer {
+public class TetrisGUI implements GameOverListener, NextPieceListener {
 
     /**
      * Delay for timer.
@@ -63,6 +74,17 @@ public class TetrisGUI implements Observer {
      * Game title.
      */
     private static final String TITLE = "Tetris";
+
+    /**
+     * The file the game in progress is saved to, in the user's home directory.
+     */
+    private static final Path AUTOSAVE = Paths.get(System.getProperty("user.home"),
+                                                   ".tetris", "autosave.journal");
+
+    /**
+     * The number of key inputs the game loop can have waiting.
+     */
+    private static final int INPUT_CAPACITY = 64;
     
     /**
      * Default size for the game set to medium.
@@ -117,7 +139,47 @@ public class TetrisGUI implements Observer {
     /**
      * Field for if music is playing.
      */
-    private boolean myPlaying;
+    private volatile boolean myPlaying;
+
+    /**
+     * The journal the game in progress is saved to, or null if it could not be opened.
+     */
+    private SnapshotJournal myJournal;
+
+    /**
+     * How the game runs and is drawn.
+     */
+    private final Mode myMode;
+
+    /**
+     * The frames the game loop publishes for the panels.
+     */
+    private final Handoff<BoardFrame> myFrames = new Handoff<BoardFrame>();
+
+    /**
+     * The key inputs waiting for the game loop.
+     */
+    private final CommandQueue myInputs = new CommandQueue(INPUT_CAPACITY);
+
+    /**
+     * The game loop, or null when the Swing Timer runs the game.
+     */
+    private GameLoop myLoop;
+
+    /**
+     * Creates a game run by the Swing Timer.
+     */
+    public TetrisGUI() {
+        this(Mode.TIMER);
+    }
+
+    /**
+     * Creates a game.
+     * @param theMode how the game runs and is drawn.
+     */
+    public TetrisGUI(final Mode theMode) {
+        myMode = theMode;
+    }
 
     /**
      * Starts the Frame with all of the game panels.
@@ -139,16 +201,24 @@ public class TetrisGUI implements Observer {
         myFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         myFrame.setResizable(false);
 
-        final GamePanel gamePanel = new GamePanel(blockSize, myBoard.getHeight());
         final NextPiecePanel nextPiecePanel = new NextPiecePanel(blockSize);
-        myBoard.addObserver(nextPiecePanel);
-        myBoard.addObserver(myScorePanel);
-        myBoard.addObserver(menuBar);
+        final Component gamePanel = createPlayArea(blockSize, nextPiecePanel);
+        if (myLoop == null) {
+            myBoard.addNextPieceListener(nextPiecePanel);
+            myBoard.addNextPieceListener(myScorePanel);
+            myBoard.addRowsClearedListener(myScorePanel);
+            myScorePanel.setBoard(myBoard);
+        } else {
+            nextPiecePanel.setFrames(myFrames);
+            myScorePanel.setFrames(myFrames, myLoop);
+        }
+        // the game loop sends events from its own thread; the relay brings them to the EDT
+        myBoard.addGameOverListener(EdtRelay.gameOver(menuBar));
         final SidePanel sidePanel = new SidePanel(blockSize, nextPiecePanel,
                                                   myScorePanel);
 
-        myBoard.addObserver(this);
-        myBoard.addObserver(gamePanel);
+        myBoard.addGameOverListener(this);
+        myBoard.addNextPieceListener(this);
         
         final JPanel temp = new JPanel();
         temp.add(gamePanel);
@@ -172,16 +242,145 @@ public class TetrisGUI implements Observer {
         myFrame.setLocationRelativeTo(null);
         myFrame.setVisible(true);
         gamePanel.repaint();
+        if (myJournal == null) {
+            openJournal();
+            offerResume(menuBar);
+        }
+    }
+
+
+    /**
+     * Creates the play area, and the game loop unless the Swing Timer runs
+     * the game: a GameCanvas the game loop draws, or a GamePanel repainted by
+     * Swing from the board's deltas or from the game loop's frames.
+     * @param theBlockSize in this game.
+     * @param theNextPiecePanel repainted with the play area by the game loop.
+     * @return the play area.
+     */
+    private Component createPlayArea(final int theBlockSize,
+                                     final NextPiecePanel theNextPiecePanel) {
+        final Component result;
+        if (myMode == Mode.ACTIVE) {
+            final GameCanvas canvas = new GameCanvas(theBlockSize, myBoard.getHeight(),
+                                                     myFrames);
+            myLoop = new GameLoop(myBoard, myInputs, myFrames,
+                                  new Refresh(null, theNextPiecePanel), canvas, myTimer);
+            // menus must be heavyweight to show over the canvas
+            JPopupMenu.setDefaultLightWeightPopupEnabled(false);
+            result = canvas;
+        } else {
+            final GamePanel panel = new GamePanel(theBlockSize, myBoard.getHeight());
+            if (myMode == Mode.THREADED) {
+                myLoop = new GameLoop(myBoard, myInputs, myFrames,
+                                      new Refresh(panel, theNextPiecePanel), null, myTimer);
+            } else {
+                // the new game panel starts empty; its first delta is a reset
+                myBoard.addBoardDeltaListener(panel);
+            }
+            result = panel;
+        }
+        return result;
     }
 
+    @Override
+    public void gameOver() {
+        // sent by the thread running the board, which saves it before the EDT takes over
+        saveGame();
+        EdtRelay.onEdt(new Runnable() {
+            @Override
+            public void run() {
+                endGame();
+                JOptionPane.showMessageDialog(myFrame, myGameOver);
+            }
+        });
+    }
 
     @Override
-    public void update(final Observable theObserv, final Object theObject) {
-        if (theObject instanceof Boolean) {
-            endGame();
-            JOptionPane.showMessageDialog(myFrame, myGameOver);
+    public void nextPiece(final TetrisPiece thePiece) {
+        saveGame();
+    }
+
+    /**
+     * Opens the autosave journal, and closes it when the program exits so the
+     * last save reaches the disk. The game runs without saving if it cannot be opened.
+     */
+    private void openJournal() {
+        try {
+            Files.createDirectories(AUTOSAVE.getParent());
+            myJournal = new SnapshotJournal(AUTOSAVE);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        myJournal.close();
+                    } catch (final IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Queues a snapshot of the game in progress for the autosave journal; the
+     * journal writes it in the background.
+     */
+    private void saveGame() {
+        if (myJournal != null && myPlaying) {
+            myJournal.submit(myBoard.saveSnapshot());
         }
     }
+
+    /**
+     * Offers to resume the game saved when the program last closed, if it was
+     * not over.
+     * @param theMenu the menu bar, updated if the game is resumed.
+     */
+    private void offerResume(final TetrisMenu theMenu) {
+        final Board saved = readSavedGame();
+        if (saved != null && !saved.isGameOver()
+            && JOptionPane.showConfirmDialog(myFrame, "Resume the saved game?", TITLE,
+                                             JOptionPane.YES_NO_OPTION)
+               == JOptionPane.YES_OPTION) {
+            try {
+                startNewGame();
+            } catch (final UnsupportedAudioFileException e) {
+                e.printStackTrace();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            } catch (final LineUnavailableException e) {
+                e.printStackTrace();
+            }
+            stopTicks();
+            myBoard.restoreSnapshot(saved.saveSnapshot());
+            myScorePanel.restoreValues((int) saved.getScore(), (int) saved.getLinesCleared(),
+                                       saved.getLevel(), saved.getLinesToNextLevel());
+            startTicks();
+            theMenu.gameStarted();
+        }
+    }
+
+    /**
+     * Reads the game saved in the autosave journal onto a board of the default size.
+     * @return the saved game, or null if there is none or it cannot be read.
+     */
+    private Board readSavedGame() {
+        Board result = null;
+        try {
+            final byte[] snapshot = SnapshotJournal.readLatest(AUTOSAVE);
+            if (snapshot != null) {
+                result = new Board();
+                result.restoreSnapshot(snapshot);
+            }
+        } catch (final IOException e) {
+            result = null;
+        } catch (final IllegalArgumentException e) {
+            result = null;
+        }
+        return result;
+    }
     
     /**
      * JOptionPane dialogue that determines the size for this game.
@@ -230,9 +429,10 @@ public class TetrisGUI implements Observer {
         }
         myPause = false;
         myKeyListener.setDisabled(false);
-        myTimer.restart();
+        stopTicks();
         myScorePanel.resetValues();
         myBoard.newGame();
+        startTicks();
         myPlaying = true;
         myMusic.setMute(false);
         myMusic.startMusic();
@@ -244,7 +444,7 @@ public class TetrisGUI implements Observer {
     protected void endGame() {
         myPause = true;
         myMusic.stop();
-        myTimer.stop();
+        stopTicks();
         myFrame.removeKeyListener(myKeyListener);
     }
     
@@ -303,7 +503,7 @@ public class TetrisGUI implements Observer {
      */
     protected void startGame() {
         myPause = false;
-        myTimer.start();
+        startTicks();
         myKeyListener.setDisabled(false);
     }
 
@@ -312,10 +512,43 @@ public class TetrisGUI implements Observer {
      */
     protected void pauseGame() {
         myPause = true;
-        myTimer.stop();  
+        stopTicks();
         myKeyListener.setDisabled(true);
     }
 
+    /**
+     * Starts advancing the game: the game loop, or the Swing Timer.
+     */
+    private void startTicks() {
+        if (myLoop == null) {
+            myTimer.start();
+        } else {
+            myLoop.start();
+        }
+    }
+
+    /**
+     * Stops advancing the game. Once the game loop has stopped, the EDT owns the board.
+     */
+    private void stopTicks() {
+        myTimer.stop();
+        if (myLoop != null) {
+            myLoop.stop();
+        }
+    }
+
+    /**
+     * Sends a key input to the board: queued for the game loop, or applied at once.
+     * @param theAction the input.
+     */
+    private void input(final Action theAction) {
+        if (myLoop == null) {
+            myBoard.apply(theAction);
+        } else {
+            myInputs.offer(theAction);
+        }
+    }
+
     /**
      * Gets the pause state of the game.
      * @return if the game is paused.
@@ -324,6 +557,66 @@ public class TetrisGUI implements Observer {
         return myPause;
     }
     
+    /**
+     * How the game runs and is drawn.
+     */
+    public enum Mode {
+        /**
+         * The Swing Timer runs the board on the EDT, and the panels follow its events.
+         */
+        TIMER,
+
+        /**
+         * A game loop thread runs the board and publishes its frames, which
+         * Swing paints in the panels.
+         */
+        THREADED,
+
+        /**
+         * A game loop thread runs the board and draws the play area itself;
+         * Swing paints the other panels from its frames.
+         */
+        ACTIVE
+    }
+
+    /**
+     * Refreshes the panels from the newest frame the game loop published; run on the EDT.
+     * @author Jon Anderson
+     */
+    private final class Refresh implements Runnable {
+
+        /**
+         * The play area painted by Swing, or null if the game loop draws it.
+         */
+        private final GamePanel myPlayArea;
+
+        /**
+         * The next piece panel.
+         */
+        private final Component myNextPiece;
+
+        /**
+         * Creates the refresh.
+         * @param thePlayArea painted by Swing, or null if the game loop draws it.
+         * @param theNextPiece the next piece panel.
+         */
+        private Refresh(final GamePanel thePlayArea, final Component theNextPiece) {
+            myPlayArea = thePlayArea;
+            myNextPiece = theNextPiece;
+        }
+
+        @Override
+        public void run() {
+            // lets the loop ask for the next refresh; the panels paint the newest frame
+            final BoardFrame frame = myFrames.take();
+            if (myPlayArea != null) {
+                myPlayArea.showFrame(frame);
+            }
+            myNextPiece.repaint();
+            myScorePanel.refresh();
+        }
+    }
+
     /**
      * Inner class with actions for Timer.
      * @author Jon Anderson
@@ -377,7 +670,7 @@ public class TetrisGUI implements Observer {
         private void moveLeft(final java.awt.event.KeyEvent arg0) {
             if (arg0.getKeyCode() == KeyEvent.VK_A
                             || arg0.getKeyCode() == KeyEvent.VK_LEFT) {
-                myBoard.left();
+                input(Action.LEFT);
             }
         }
 
@@ -387,7 +680,7 @@ public class TetrisGUI implements Observer {
         private void moveRight(final java.awt.event.KeyEvent arg0) {
             if (arg0.getKeyCode() == KeyEvent.VK_D
                             || arg0.getKeyCode() == KeyEvent.VK_RIGHT) {
-                myBoard.right();
+                input(Action.RIGHT);
             }
         }
 
@@ -398,7 +691,7 @@ public class TetrisGUI implements Observer {
         private void moveDown(final java.awt.event.KeyEvent arg0) {
             if (arg0.getKeyCode() == KeyEvent.VK_S
                             || arg0.getKeyCode() == KeyEvent.VK_DOWN) {
-                myBoard.down();
+                input(Action.DOWN);
             }
         }
 
@@ -408,7 +701,7 @@ public class TetrisGUI implements Observer {
          */
         private void moveDrop(final java.awt.event.KeyEvent arg0) {
             if (arg0.getKeyCode() == KeyEvent.VK_SPACE) {
-                myBoard.drop();
+                input(Action.DROP);
             }
         }
 
@@ -419,7 +712,7 @@ public class TetrisGUI implements Observer {
         private void moveCW(final java.awt.event.KeyEvent arg0) {
             if (arg0.getKeyCode() == KeyEvent.VK_W
                             || arg0.getKeyCode() == KeyEvent.VK_UP) {
-                myBoard.rotateCW();
+                input(Action.ROTATE_CW);
             }
         }
 
@@ -430,7 +723,7 @@ public class TetrisGUI implements Observer {
         private void moveCCW(final java.awt.event.KeyEvent arg0) {
             if (arg0.getKeyCode() == KeyEvent.VK_TAB
                             || arg0.getKeyCode() == KeyEvent.VK_SHIFT) {
-                myBoard.rotateCCW();
+                input(Action.ROTATE_CCW);
             }
         }
 
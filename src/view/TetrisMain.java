@@ -5,6 +5,8 @@
 package view;
 
 import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
@@ -16,6 +18,16 @@ import javax.swing.UnsupportedLookAndFeelException;
  */
 public final class TetrisMain {
 
+    /**
+     * The command line argument selecting the game loop mode.
+     */
+    private static final String GAME_LOOP = "-loop";
+
+    /**
+     * The command line argument selecting the threaded mode.
+     */
+    private static final String THREADED = "-threaded";
+
     /**
      * Private constructor, to prevent instantiation of this class.
      */
@@ -24,12 +36,22 @@ public final class TetrisMain {
     }
 
     /**
-     * The main method, invokes the Tetris GUI. Command line arguments are
-     * ignored.
+     * The main method, invokes the Tetris GUI. The command line argument
+     * -loop runs the game on a game loop thread instead of the Swing Timer,
+     * and -threaded runs it there but leaves the painting to Swing; other
+     * arguments are ignored.
      * 
      * @param theArgs Command line arguments.
      */
     public static void main(final String[] theArgs) {
+        final List<String> args = Arrays.asList(theArgs);
+        TetrisGUI.Mode mode = TetrisGUI.Mode.TIMER;
+        if (args.contains(GAME_LOOP)) {
+            mode = TetrisGUI.Mode.ACTIVE;
+        } else if (args.contains(THREADED)) {
+            mode = TetrisGUI.Mode.THREADED;
+        }
+        final TetrisGUI.Mode gameMode = mode;
         try {
             UIManager.setLookAndFeel("javax.swing.plaf.metal.MetalLookAndFeel");
         } catch (final ClassNotFoundException e) {
@@ -45,7 +67,7 @@ public final class TetrisMain {
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                new TetrisGUI().start();
+                new TetrisGUI(gameMode).start();
             }
         });
     }
@@ -9,8 +9,6 @@ import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
-import java.util.Observable;
-import java.util.Observer;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.JMenu;
@@ -18,6 +16,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JSlider;
+import model.GameOverListener;
 
 /**
  * Constructs a Menu Bar item to be used in my tetris game.
@@ -25,7 +24,7 @@ import javax.swing.JSlider;
  * @version May 18
  *
  */
-public class TetrisMenu extends JMenuBar implements Observer {
+public class TetrisMenu extends JMenuBar implements GameOverListener {
 
     /**
      * Auto Generated serial ID number.
@@ -232,14 +231,20 @@ public class TetrisMenu extends JMenuBar implements Observer {
         return mySlider;
     }
 
+    /**
+     * Enables the menu items of a game in progress, for a game started outside the menu.
+     */
+    protected void gameStarted() {
+        myMute.setEnabled(true);
+        myEndGame.setEnabled(true);
+        myNewGame.setEnabled(false);
+    }
+
     @Override
-    public void update(final Observable theObservable, final Object theObject) {
-        if (theObject instanceof Boolean) {
-            myNewGame.setEnabled(true);
-            myEndGame.setEnabled(false);
-            myMute.setEnabled(false);
-        }
-        
+    public void gameOver() {
+        myNewGame.setEnabled(true);
+        myEndGame.setEnabled(false);
+        myMute.setEnabled(false);
     }
 
 }